@@ -1,7 +1,5 @@
 package ru.practicum.service.impl;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -10,11 +8,8 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import ru.practicum.StatsClient;
-import ru.practicum.ViewStats;
 import ru.practicum.dto.*;
 import ru.practicum.exceptions.ConflictException;
 import ru.practicum.exceptions.CorrelationException;
@@ -43,9 +38,9 @@ public class EventServiceImpl implements EventService {
     private final UserRepository userRepository;
     private final CategoryRepository categoryRepository;
     private final StatsClient statsClient;
+    private final EventViewsCache eventViewsCache;
     private final RequestRepository requestRepository;
     private final LocationRepository locationRepository;
-    private final ObjectMapper viewStatsMapper;
 
 
     private static final ConflictException MAX_LIMIT_CONFLICT_EXCEPTION = new ConflictException("Событие не обновлено.",
@@ -369,39 +364,7 @@ public class EventServiceImpl implements EventService {
     }
 
     private Map<Long, Long> getViewsAllEvents(List<Event> events) {
-        List<String> uris = events.stream()
-                .map(event -> String.format("/events/%s", event.getId()))
-                .collect(Collectors.toList());
-
-        List<LocalDateTime> startDates = events.stream()
-                .map(Event::getCreatedDate)
-                .toList();
-        LocalDateTime earliestDate = startDates.stream()
-                .min(LocalDateTime::compareTo)
-                .orElse(null);
-        Map<Long, Long> viewStatsMap = new HashMap<>();
-        if (earliestDate != null) {
-            ResponseEntity<Object> response = statsClient.getStats(earliestDate, LocalDateTime.now().plusSeconds(1),
-                    uris, true);
-            List<ViewStats> viewStatsList;
-            try {
-                viewStatsList = viewStatsMapper.convertValue(response.getBody(), new TypeReference<>() {
-                });
-            } catch (IllegalArgumentException e) {
-                if (response.getStatusCode() == HttpStatus.BAD_REQUEST) {
-                    throw new IncorrectParametersException("Ошибка параметров запроса.", "Некорректный статус - " + response.getStatusCode());
-                }
-                return Collections.emptyMap();
-            }
-
-            viewStatsMap = viewStatsList.stream()
-                    .filter(statsDto -> statsDto.getUri().startsWith("/events/"))
-                    .collect(Collectors.toMap(
-                            statsDto -> Long.parseLong(statsDto.getUri().substring("/events/".length())),
-                            ViewStats::getHits
-                    ));
-        }
-        return viewStatsMap;
+        return eventViewsCache.getViews(events, true);
     }
 
     private UpdatedStatusDto updatedStatusConfirmed(Event event, UpdatedStatusDto updatedStatus,
@@ -0,0 +1,163 @@
+package ru.practicum.service.impl;
+
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.StatsClient;
+import ru.practicum.StatsClientException;
+import ru.practicum.StatsQuery;
+import ru.practicum.StatsQueryResult;
+import ru.practicum.exceptions.IncorrectParametersException;
+import ru.practicum.model.Event;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Кэш просмотров событий перед сервисом статистики, по (id события, unique). Промахи одного вызова загружаются
+ * одним запросом /stats/batch, одновременные промахи по тем же событиям ждут уже начатой загрузки.
+ * Значение старше views-cache.refresh-ms отдается сразу и обновляется в фоне, старше views-cache.ttl-ms -
+ * загружается заново. Если сервис статистики недоступен, просмотры не кэшируются и считаются нулевыми.
+ * Включается явно: пока значение не устарело, ответ не видит просмотров, сделанных после его загрузки
+ **/
+@Slf4j
+@Component
+public class EventViewsCache {
+    private static final String EVENT_URI_PREFIX = "/events/";
+
+    private final StatsClient statsClient;
+    private final boolean enabled;
+    private final Executor executor;
+    private final AsyncLoadingCache<Key, Long> cache;
+
+    @Autowired
+    public EventViewsCache(StatsClient statsClient, MeterRegistry meterRegistry,
+                           @Value("${views-cache.enabled:false}") boolean enabled,
+                           @Value("${views-cache.max-size:10000}") long maxSize,
+                           @Value("${views-cache.ttl-ms:60000}") long ttlMs,
+                           @Value("${views-cache.refresh-ms:5000}") long refreshMs,
+                           @Value("${views-cache.threads:2}") int threads) {
+        this(statsClient, meterRegistry, enabled, maxSize, ttlMs, refreshMs,
+                Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("event-views-", 0).daemon().factory()),
+                Ticker.systemTicker());
+    }
+
+    EventViewsCache(StatsClient statsClient, MeterRegistry meterRegistry, boolean enabled, long maxSize, long ttlMs,
+                    long refreshMs, Executor executor, Ticker ticker) {
+        this.statsClient = statsClient;
+        this.enabled = enabled;
+        this.executor = executor;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .refreshAfterWrite(Duration.ofMillis(refreshMs))
+                .executor(executor)
+                .ticker(ticker)
+                .recordStats()
+                .buildAsync(new ViewsLoader());
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "event.views");
+    }
+
+    /**
+     * Просмотры событий по id; события без даты создания пропускаются
+     **/
+    public Map<Long, Long> getViews(List<Event> events, boolean unique) {
+        List<Key> keys = events.stream()
+                .filter(event -> event.getCreatedDate() != null)
+                .map(event -> new Key(event.getId(), event.getCreatedDate(), unique))
+                .distinct()
+                .toList();
+        if (keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Key, Long> views;
+        try {
+            views = enabled ? cache.getAll(keys).join() : load(keys);
+        } catch (CompletionException | StatsClientException e) {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof StatsClientException statsException && statsException.isClientError()) {
+                throw new IncorrectParametersException("Ошибка параметров запроса.",
+                        "Некорректный статус - " + statsException.getStatus());
+            }
+            log.warn("Статистика просмотров не получена: {}", cause.getMessage());
+            return Collections.emptyMap();
+        }
+        return views.entrySet().stream()
+                .collect(Collectors.toMap(entry -> entry.getKey().eventId(), Map.Entry::getValue, (first, second) -> first));
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor instanceof ExecutorService service) {
+            service.shutdownNow();
+        }
+    }
+
+    /**
+     * Один запрос /stats/batch на все ключи; события без просмотров получают 0, чтобы тоже попасть в кэш
+     **/
+    private Map<Key, Long> load(Iterable<? extends Key> keys) {
+        LocalDateTime end = LocalDateTime.now().plusSeconds(1);
+        List<Key> ordered = new ArrayList<>();
+        List<StatsQuery> queries = new ArrayList<>();
+        for (Key key : keys) {
+            ordered.add(key);
+            queries.add(StatsQuery.builder()
+                    .uri(EVENT_URI_PREFIX + key.eventId())
+                    .start(key.created())
+                    .end(end)
+                    .unique(key.unique())
+                    .build());
+        }
+        List<StatsQueryResult> results = statsClient.getStatsBatch(queries);
+        Map<Key, Long> views = new HashMap<>();
+        for (int i = 0; i < ordered.size(); i++) {
+            Long hits = i < results.size() ? results.get(i).getHits() : null;
+            views.put(ordered.get(i), hits == null ? 0L : hits);
+        }
+        return views;
+    }
+
+    private record Key(Long eventId, LocalDateTime created, boolean unique) {
+    }
+
+    private class ViewsLoader implements AsyncCacheLoader<Key, Long> {
+        @Override
+        public CompletableFuture<Long> asyncLoad(Key key, Executor executor) {
+            return CompletableFuture.supplyAsync(() -> load(List.of(key)).get(key), executor);
+        }
+
+        /**
+         * Промахи загружаются в потоке запроса: кэш к этому моменту уже выставил незавершенные значения,
+         * и одновременные запросы тех же событий ждут их, а пул остается для фоновых обновлений
+         **/
+        @Override
+        public CompletableFuture<Map<Key, Long>> asyncLoadAll(Set<? extends Key> keys, Executor executor) {
+            try {
+                return CompletableFuture.completedFuture(load(keys));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+    }
+}
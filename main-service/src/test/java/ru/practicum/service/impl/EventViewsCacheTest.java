@@ -0,0 +1,98 @@
+package ru.practicum.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import ru.practicum.StatsClient;
+import ru.practicum.StatsClientException;
+import ru.practicum.StatsQuery;
+import ru.practicum.StatsQueryResult;
+import ru.practicum.exceptions.IncorrectParametersException;
+import ru.practicum.model.Event;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EventViewsCacheTest {
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 6, 1, 12, 0, 0);
+
+    private final StatsClient statsClient = mock(StatsClient.class);
+    private final AtomicLong nanos = new AtomicLong();
+    private final Map<String, Long> views = new HashMap<>();
+
+    private EventViewsCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        cache = new EventViewsCache(statsClient, new SimpleMeterRegistry(), true, 100, 60_000, 5_000,
+                Runnable::run, nanos::get);
+        when(statsClient.getStatsBatch(anyList())).thenAnswer(invocation -> {
+            List<StatsQuery> queries = invocation.getArgument(0);
+            return queries.stream()
+                    .map(query -> StatsQueryResult.builder()
+                            .uri(query.getUri())
+                            .hits(views.get(query.getUri()))
+                            .build())
+                    .toList();
+        });
+    }
+
+    @Test
+    public void testMissesLoadedInOneBatchThenCached() {
+        views.put("/events/1", 3L);
+
+        assertEquals(Map.of(1L, 3L, 2L, 0L), cache.getViews(List.of(event(1), event(2)), true));
+        assertEquals(Map.of(1L, 3L, 2L, 0L), cache.getViews(List.of(event(2), event(1)), true));
+
+        verify(statsClient, times(1)).getStatsBatch(anyList());
+    }
+
+    @Test
+    public void testStaleValueRefreshed() {
+        views.put("/events/1", 3L);
+        cache.getViews(List.of(event(1)), true);
+        views.put("/events/1", 4L);
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(Map.of(1L, 3L), cache.getViews(List.of(event(1)), true));
+        verify(statsClient, times(1)).getStatsBatch(anyList());
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        cache.getViews(List.of(event(1)), true);
+        verify(statsClient, times(2)).getStatsBatch(anyList());
+        assertEquals(Map.of(1L, 4L), cache.getViews(List.of(event(1)), true));
+    }
+
+    @Test
+    public void testStatsFailureNotCached() {
+        when(statsClient.getStatsBatch(anyList()))
+                .thenThrow(new StatsClientException("Сервис статистики недоступен", HttpStatus.SERVICE_UNAVAILABLE, null))
+                .thenThrow(new StatsClientException("Некорректный запрос", HttpStatus.BAD_REQUEST, null))
+                .thenReturn(List.of(StatsQueryResult.builder().uri("/events/1").hits(7L).build()));
+
+        assertTrue(cache.getViews(List.of(event(1)), true).isEmpty());
+        assertThrows(IncorrectParametersException.class, () -> cache.getViews(List.of(event(1)), true));
+        assertEquals(Map.of(1L, 7L), cache.getViews(List.of(event(1)), true));
+    }
+
+    private Event event(long id) {
+        return Event.builder()
+                .id(id)
+                .createdDate(CREATED)
+                .build();
+    }
+}
@@ -17,7 +17,11 @@ public class BaseClient {
     }
 
     protected <T> ResponseEntity<Object> post(T body) {
-        return makeAndSendRequest(HttpMethod.POST, "/hit", null, body);
+        return post("/hit", body);
+    }
+
+    protected <T> ResponseEntity<Object> post(String path, T body) {
+        return makeAndSendRequest(HttpMethod.POST, path, null, body);
     }
 
     protected <T> ResponseEntity<Object> get(String path, @Nullable Map<String, Object> parameters) {
@@ -0,0 +1,161 @@
+package ru.practicum;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Накопитель hit на стороне клиента: ограниченная неблокирующая очередь и один поток, который отправляет
+ * накопленное одной пачкой раз в flushIntervalMs или по набору batchSize hit. При переполнении очереди
+ * действует политика {@link Overflow}. При остановке очередь досылается до истечения времени ожидания
+ **/
+@Slf4j
+public class HitBatcher {
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final int capacity;
+    private final Overflow overflow;
+    private final long offerTimeoutNanos;
+    private final Consumer<List<StatRequest>> sender;
+    private final ConcurrentLinkedQueue<StatRequest> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Thread senderThread;
+    private final DistributionSummary batchSizes;
+    private final Timer sendTimer;
+    private final Counter droppedCounter;
+
+    private volatile boolean running = true;
+
+    /**
+     * Что делать с hit, если очередь заполнена: отбросить новый, вытеснить самый старый
+     * или ждать места до offer-timeout-ms, после чего отбросить новый
+     **/
+    public enum Overflow {
+        DROP_NEWEST, DROP_OLDEST, BLOCK;
+
+        public static Overflow of(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase().replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Политика переполнения должна быть drop-newest, drop-oldest или block, "
+                        + "получено " + value);
+            }
+        }
+    }
+
+    public HitBatcher(MeterRegistry meterRegistry, int batchSize, long flushIntervalMs, int capacity, Overflow overflow,
+                      long offerTimeoutMs, Consumer<List<StatRequest>> sender) {
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.capacity = capacity;
+        this.overflow = overflow;
+        this.offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMs);
+        this.sender = sender;
+        Gauge.builder("stats.client.queue.depth", size, AtomicInteger::get)
+                .description("Hit в очереди на отправку в сервис статистики")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("stats.client.batch.size")
+                .description("Число hit в отправленной пачке")
+                .register(meterRegistry);
+        this.sendTimer = Timer.builder("stats.client.send")
+                .description("Время отправки пачки hit в сервис статистики")
+                .register(meterRegistry);
+        this.droppedCounter = StatsClient.hitCounter(meterRegistry, "dropped");
+        this.senderThread = Thread.ofPlatform().name("stats-client-batcher").daemon().start(this::run);
+    }
+
+    /**
+     * Ставит hit в очередь; false, если hit отброшен
+     **/
+    public boolean add(StatRequest hit) {
+        if (!running) {
+            droppedCounter.increment();
+            return false;
+        }
+        long deadline = System.nanoTime() + offerTimeoutNanos;
+        while (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            if (overflow == Overflow.DROP_OLDEST) {
+                if (queue.poll() != null) {
+                    size.decrementAndGet();
+                    droppedCounter.increment();
+                }
+            } else if (overflow == Overflow.BLOCK && System.nanoTime() < deadline) {
+                LockSupport.unpark(senderThread);
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+            } else {
+                droppedCounter.increment();
+                return false;
+            }
+        }
+        queue.offer(hit);
+        if (size.get() >= batchSize) {
+            LockSupport.unpark(senderThread);
+        }
+        return true;
+    }
+
+    /**
+     * Останавливает прием и ждет до timeoutMs, пока поток отправки дошлет очередь
+     **/
+    public void close(long timeoutMs) throws InterruptedException {
+        running = false;
+        LockSupport.unpark(senderThread);
+        senderThread.join(timeoutMs);
+        if (senderThread.isAlive()) {
+            senderThread.interrupt();
+            log.warn("Очередь hit не успела опустеть при остановке, отброшено {}", size.get());
+            droppedCounter.increment(size.get());
+        }
+    }
+
+    private void run() {
+        long nextFlush = System.nanoTime() + flushIntervalNanos;
+        while (running || size.get() > 0) {
+            long now = System.nanoTime();
+            if (size.get() >= batchSize || now >= nextFlush || !running) {
+                if (size.get() > 0) {
+                    flush();
+                }
+                nextFlush = System.nanoTime() + flushIntervalNanos;
+            } else {
+                LockSupport.parkNanos(nextFlush - now);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    private void flush() {
+        List<StatRequest> batch = new ArrayList<>(Math.min(size.get(), batchSize));
+        StatRequest hit;
+        while (batch.size() < batchSize && (hit = queue.poll()) != null) {
+            size.decrementAndGet();
+            batch.add(hit);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        batchSizes.record(batch.size());
+        long started = System.nanoTime();
+        try {
+            sender.accept(batch);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось отправить пачку из {} hit в сервис статистики: {}", batch.size(), e.getMessage());
+        } finally {
+            sendTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Журнал hit, которые не удалось отправить: файлы-сегменты NDJSON в stats-client.spool.dir, дописываемые
+ * только в конец. fsync выполняется не чаще раза в fsync-interval-ms, поэтому при падении процесса теряются
+ * лишь hit последнего интервала. Сегменты досылаются по порядку пачками; позиция в сегменте сохраняется
+ * в файле .pos после каждой принятой пачки, повторы после сбоя сервер отсеивает по hitId.
+ * При превышении max-bytes удаляются самые старые сегменты. Включается заданием stats-client.spool.dir
+ **/
+@Slf4j
+@Component
+@ConditionalOnProperty("stats-client.spool.dir")
+public class HitSpool {
+    private static final String SEGMENT_PREFIX = "hits-";
+    private static final String SEGMENT_SUFFIX = ".ndjson";
+    private static final String POSITION_SUFFIX = ".pos";
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final long fsyncIntervalNanos;
+    private final int replayChunk;
+    private final ObjectMapper objectMapper;
+    private final Deque<Path> segments = new ArrayDeque<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final Counter spooledCounter;
+    private final Counter replayedCounter;
+    private final Counter droppedCounter;
+
+    private FileChannel writer;
+    private Path writerPath;
+    private long nextSegment;
+    private long lastSync = System.nanoTime();
+    private boolean dirty;
+    private long replayPosition;
+
+    public HitSpool(MeterRegistry meterRegistry, ObjectMapper objectMapper,
+                    @Value("${stats-client.spool.dir}") Path dir,
+                    @Value("${stats-client.spool.segment-bytes:4194304}") long segmentBytes,
+                    @Value("${stats-client.spool.max-bytes:268435456}") long maxBytes,
+                    @Value("${stats-client.spool.fsync-interval-ms:200}") long fsyncIntervalMs,
+                    @Value("${stats-client.spool.replay-chunk:500}") int replayChunk) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs);
+        this.replayChunk = replayChunk;
+        this.objectMapper = objectMapper;
+        try {
+            Files.createDirectories(dir);
+            try (Stream<Path> files = Files.list(dir)) {
+                files.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                                && file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                        .sorted()
+                        .forEach(segments::add);
+            }
+            for (Path segment : segments) {
+                pendingBytes.addAndGet(Files.size(segment));
+                nextSegment = Math.max(nextSegment, sequence(segment) + 1);
+            }
+            if (!segments.isEmpty()) {
+                replayPosition = readPosition(segments.peekFirst());
+                pendingBytes.addAndGet(-replayPosition);
+                log.info("В спуле статистики {} сегментов, {} байт к досылке", segments.size(), pendingBytes.get());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть спул статистики " + dir, e);
+        }
+        Gauge.builder("stats.client.spool.bytes", pendingBytes, AtomicLong::get)
+                .description("Объем hit в спуле, ожидающих досылки")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.spooledCounter = StatsClient.hitCounter(meterRegistry, "spooled");
+        this.replayedCounter = StatsClient.hitCounter(meterRegistry, "replayed");
+        this.droppedCounter = StatsClient.hitCounter(meterRegistry, "dropped");
+    }
+
+    /**
+     * В спуле есть недосланные hit; пока это так, новые hit тоже пишутся в спул, чтобы сохранить порядок
+     **/
+    public boolean hasBacklog() {
+        return pendingBytes.get() > 0;
+    }
+
+    /**
+     * Дописывает hit в текущий сегмент; false, если hit не поместились в maxBytes и отброшены
+     **/
+    public synchronized boolean append(List<StatRequest> hits) {
+        StringBuilder lines = new StringBuilder();
+        try {
+            for (StatRequest hit : hits) {
+                lines.append(objectMapper.writeValueAsString(hit)).append('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            while (pendingBytes.get() + bytes.length > maxBytes && segments.size() > 1) {
+                dropOldest();
+            }
+            if (pendingBytes.get() + bytes.length > maxBytes) {
+                droppedCounter.increment(hits.size());
+                log.warn("Спул статистики заполнен ({} байт), отброшено {} hit", maxBytes, hits.size());
+                return false;
+            }
+            if (writer == null || writer.size() >= segmentBytes) {
+                roll();
+            }
+            writer.write(ByteBuffer.wrap(bytes));
+            pendingBytes.addAndGet(bytes.length);
+            dirty = true;
+            if (System.nanoTime() - lastSync >= fsyncIntervalNanos) {
+                sync();
+            }
+        } catch (IOException e) {
+            droppedCounter.increment(hits.size());
+            log.warn("Не удалось записать {} hit в спул статистики: {}", hits.size(), e.getMessage());
+            return false;
+        }
+        spooledCounter.increment(hits.size());
+        return true;
+    }
+
+    /**
+     * Сбрасывает на диск записанное после последнего fsync
+     **/
+    public synchronized void sync() throws IOException {
+        if (dirty && writer != null) {
+            writer.force(false);
+            dirty = false;
+        }
+        lastSync = System.nanoTime();
+    }
+
+    /**
+     * Досылает спул по порядку пачками до первой неудачи; sender возвращает true, если сервер принял пачку.
+     * Вызывается из одного потока
+     **/
+    public void replay(Predicate<List<StatRequest>> sender) throws IOException {
+        while (true) {
+            Path segment;
+            synchronized (this) {
+                sync();
+                segment = segments.peekFirst();
+                if (segment == null) {
+                    return;
+                }
+                if (segment.equals(writerPath)) {
+                    closeWriter();
+                }
+            }
+            if (!replaySegment(segment, sender)) {
+                return;
+            }
+            synchronized (this) {
+                if (segment.equals(segments.peekFirst())) {
+                    segments.pollFirst();
+                    deleteSegment(segment);
+                    replayPosition = segments.isEmpty() ? 0 : readPosition(segments.peekFirst());
+                    if (segments.isEmpty()) {
+                        pendingBytes.set(0);
+                    }
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        sync();
+        closeWriter();
+    }
+
+    private boolean replaySegment(Path segment, Predicate<List<StatRequest>> sender) throws IOException {
+        long position = replayPosition;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            channel.position(position);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            List<StatRequest> chunk = new ArrayList<>(replayChunk);
+            long chunkBytes = 0;
+            int read;
+            while ((read = readLine(in, line)) > 0) {
+                chunkBytes += read;
+                StatRequest hit = parse(segment, line.toString(StandardCharsets.UTF_8));
+                if (hit != null) {
+                    chunk.add(hit);
+                }
+                if (chunk.size() >= replayChunk) {
+                    position += chunkBytes;
+                    if (!sendChunk(segment, chunk, sender, position, chunkBytes)) {
+                        return false;
+                    }
+                    chunk.clear();
+                    chunkBytes = 0;
+                }
+            }
+            return chunkBytes == 0 || sendChunk(segment, chunk, sender, position + chunkBytes, chunkBytes);
+        } catch (IOException e) {
+            if (!Files.exists(segment)) {
+                return true;
+            }
+            throw e;
+        }
+    }
+
+    private boolean sendChunk(Path segment, List<StatRequest> chunk, Predicate<List<StatRequest>> sender, long position,
+                              long chunkBytes) throws IOException {
+        if (!chunk.isEmpty() && !sender.test(chunk)) {
+            return false;
+        }
+        synchronized (this) {
+            if (!segment.equals(segments.peekFirst())) {
+                return true;
+            }
+            replayPosition = position;
+            writePosition(segment, position);
+            pendingBytes.addAndGet(-chunkBytes);
+        }
+        replayedCounter.increment(chunk.size());
+        return true;
+    }
+
+    /**
+     * Строка сегмента; недописанная при падении процесса строка пропускается
+     **/
+    private StatRequest parse(Path segment, String line) {
+        if (line.isBlank()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(line, StatRequest.class);
+        } catch (IOException e) {
+            droppedCounter.increment();
+            log.warn("Пропущена поврежденная строка спула {}: {}", segment.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Читает строку в line и возвращает число прочитанных байт вместе с переводом строки, а в конце файла - 0.
+     * У недописанной последней строки перевода строки нет, и он не учитывается
+     **/
+    private static int readLine(InputStream in, ByteArrayOutputStream line) throws IOException {
+        line.reset();
+        int read = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            read++;
+            if (b == '\n') {
+                break;
+            }
+            line.write(b);
+        }
+        return read;
+    }
+
+    private void roll() throws IOException {
+        closeWriter();
+        writerPath = dir.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, nextSegment++, SEGMENT_SUFFIX));
+        writer = FileChannel.open(writerPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        segments.addLast(writerPath);
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            writer.force(false);
+            writer.close();
+            writer = null;
+            writerPath = null;
+            dirty = false;
+        }
+    }
+
+    /**
+     * Удаляет самый старый сегмент; потерянными считаются только строки после позиции досылки
+     **/
+    private void dropOldest() throws IOException {
+        Path segment = segments.pollFirst();
+        long lost = 0;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            channel.position(replayPosition);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            while (readLine(in, line) > 0) {
+                if (!line.toString(StandardCharsets.UTF_8).isBlank()) {
+                    lost++;
+                }
+            }
+        }
+        pendingBytes.addAndGet(-(Files.size(segment) - replayPosition));
+        deleteSegment(segment);
+        replayPosition = segments.isEmpty() ? 0 : readPosition(segments.peekFirst());
+        droppedCounter.increment(lost);
+        log.warn("Спул статистики превысил {} байт, удален сегмент {} ({} строк)", maxBytes, segment.getFileName(), lost);
+    }
+
+    private void deleteSegment(Path segment) throws IOException {
+        Files.deleteIfExists(segment);
+        Files.deleteIfExists(positionFile(segment));
+    }
+
+    private long readPosition(Path segment) throws IOException {
+        Path file = positionFile(segment);
+        return Files.exists(file) ? Long.parseLong(Files.readString(file).trim()) : 0;
+    }
+
+    private void writePosition(Path segment, long position) throws IOException {
+        Path file = positionFile(segment);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, Long.toString(position));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path positionFile(Path segment) {
+        return segment.resolveSibling(segment.getFileName() + POSITION_SUFFIX);
+    }
+
+    private static long sequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
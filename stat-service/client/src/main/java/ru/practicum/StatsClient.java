@@ -1,27 +1,91 @@
 package ru.practicum;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.util.DefaultUriBuilderFactory;
 
 import java.sql.Timestamp;
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Клиент сервиса статистики. При stats-client.async.enabled=true saveStats только снимает поля запроса
+ * и ставит отправку hit в ограниченную очередь отдельного пула, не дожидаясь ответа сервера:
+ * при переполнении очереди hit отбрасывается, ошибки отправки только считаются. При stats-client.batch.enabled=true
+ * hit копятся в {@link HitBatcher} и уходят в POST /hit/batch пачками; этот режим главнее асинхронного.
+ * Если задан stats-client.spool.dir, hit, не принятые из-за недоступности сервера или ответа 5xx, пишутся
+ * в {@link HitSpool} и досылаются оттуда раз в stats-client.spool.replay-interval-ms; пока спул не пуст,
+ * новые hit идут в его конец. Каждый hit получает hitId, по которому сервер отсеивает повторы
+ **/
+@Slf4j
 @Service(value = "statsClient")
 public class StatsClient extends BaseClient {
     private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern(Formatter.DATE_FORMAT);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final Map<String, String> HIT_RESULTS = Map.of(
+            "sent", "Hit, принятые сервисом статистики",
+            "dropped", "Hit, отброшенные из-за переполнения очереди отправки",
+            "failed", "Hit, которые не удалось отправить в сервис статистики",
+            "spooled", "Hit, записанные в спул до восстановления сервиса статистики",
+            "replayed", "Hit, досланные из спула");
 
     private String applicationName;
+    private final ThreadPoolExecutor sender;
+    private final HitBatcher batcher;
+    private final HitSpool spool;
+    private final ScheduledExecutorService replayer;
+    private final long shutdownTimeoutMs;
+    private final Counter sentCounter;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
 
-    public StatsClient(@Value("${stats-server.url}") String serverUrl, @Value("${application.name}") String applicationName, RestTemplateBuilder builder) {
+    public StatsClient(@Value("${stats-server.url}") String serverUrl, @Value("${application.name}") String applicationName,
+                       RestTemplateBuilder builder, MeterRegistry meterRegistry, ObjectProvider<HitSpool> spool,
+                       @Value("${stats-client.async.enabled:false}") boolean async,
+                       @Value("${stats-client.async.threads:2}") int threads,
+                       @Value("${stats-client.async.queue-capacity:1000}") int queueCapacity,
+                       @Value("${stats-client.async.shutdown-timeout-ms:2000}") long shutdownTimeoutMs,
+                       @Value("${stats-client.batch.enabled:false}") boolean batch,
+                       @Value("${stats-client.batch.max-size:500}") int batchSize,
+                       @Value("${stats-client.batch.flush-interval-ms:200}") long flushIntervalMs,
+                       @Value("${stats-client.batch.queue-capacity:10000}") int batchCapacity,
+                       @Value("${stats-client.batch.overflow:drop-newest}") String overflow,
+                       @Value("${stats-client.batch.offer-timeout-ms:50}") long offerTimeoutMs,
+                       @Value("${stats-client.spool.replay-interval-ms:1000}") long replayIntervalMs) {
         super(
                 builder
                         .uriTemplateHandler(new DefaultUriBuilderFactory(serverUrl))
@@ -29,25 +93,257 @@ public class StatsClient extends BaseClient {
                         .build()
         );
         this.applicationName = applicationName;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.spool = spool.getIfAvailable();
+        this.sentCounter = hitCounter(meterRegistry, "sent");
+        this.droppedCounter = hitCounter(meterRegistry, "dropped");
+        this.failedCounter = hitCounter(meterRegistry, "failed");
+        this.batcher = batch
+                ? new HitBatcher(meterRegistry, batchSize, flushIntervalMs, batchCapacity, HitBatcher.Overflow.of(overflow),
+                offerTimeoutMs, this::deliver)
+                : null;
+        this.sender = async && !batch
+                ? new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("stats-client-", 0).daemon().factory(), new ThreadPoolExecutor.AbortPolicy())
+                : null;
+        if (sender != null) {
+            Gauge.builder("stats.client.queue.depth", sender, executor -> executor.getQueue().size())
+                    .description("Hit в очереди на отправку в сервис статистики")
+                    .register(meterRegistry);
+        }
+        this.replayer = this.spool != null
+                ? Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("stats-client-spool").daemon().factory())
+                : null;
+        if (replayer != null) {
+            replayer.scheduleWithFixedDelay(this::replaySpool, replayIntervalMs, replayIntervalMs, TimeUnit.MILLISECONDS);
+        }
     }
 
+    /**
+     * Синхронно возвращает ответ сервера, асинхронно и пачками - 202 сразу после постановки в очередь
+     * или 503, если очередь переполнена
+     **/
     public ResponseEntity<Object> saveStats(HttpServletRequest request) {
         final StatRequest hit = StatRequest.builder()
                 .app(applicationName)
                 .uri(request.getRequestURI())
                 .ip(request.getRemoteAddr())
                 .timestamp(Timestamp.from(Instant.now()).toLocalDateTime())
+                .hitId(UUID.randomUUID().toString())
                 .build();
-        return post(hit);
+        if (batcher != null) {
+            return batcher.add(hit)
+                    ? ResponseEntity.accepted().build()
+                    : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        if (sender == null) {
+            return spool == null ? send(hit) : sendOrSpool(hit);
+        }
+        try {
+            sender.execute(() -> {
+                try {
+                    if (spool == null) {
+                        send(hit);
+                    } else {
+                        sendOrSpool(hit);
+                    }
+                } catch (RestClientException e) {
+                    // уже учтено в stats.client.hits{result=failed}
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            droppedCounter.increment();
+            log.debug("Очередь отправки статистики переполнена, hit {} отброшен", hit);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.accepted().build();
     }
 
-    public ResponseEntity<Object> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
-        Map<String, Object> parameters = Map.of(
-                "start", start.format(formatter),
-                "end", end.format(formatter),
-                "uris", String.join(",", uris),
-                "unique", unique
-        );
-        return get("/stats?start={start}&end={end}&uris={uris}&unique={unique}", parameters);
+    /**
+     * Просмотры по uri за интервал, суммированные по приложениям. Ответ потоковой выдачи /stats разбирается
+     * по токенам прямо из тела, без промежуточного дерева объектов. Ошибки сервера и сети, в том числе оборванный
+     * ответ, - StatsClientException
+     **/
+    public Map<String, Long> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("start", start.format(formatter));
+        parameters.put("end", end.format(formatter));
+        parameters.put("unique", unique);
+        String path = "/stats?stream=true&start={start}&end={end}&unique={unique}";
+        if (!uris.isEmpty()) {
+            parameters.put("uris", String.join(",", uris));
+            path += "&uris={uris}";
+        }
+        try {
+            return restTemplate.execute(path, HttpMethod.GET,
+                    request -> request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON)),
+                    response -> readViews(response.getBody()), parameters);
+        } catch (RestClientException e) {
+            throw toStatsClientException(e);
+        }
+    }
+
+    /**
+     * Ответы на запросы со своими интервалами за один вызов POST /stats/batch, в порядке запросов.
+     * Ошибки сервера и сети - StatsClientException
+     **/
+    public List<StatsQueryResult> getStatsBatch(List<StatsQuery> queries) {
+        List<StatsQueryResult> results;
+        try {
+            results = restTemplate.exchange("/stats/batch", HttpMethod.POST, new HttpEntity<>(queries),
+                    new ParameterizedTypeReference<List<StatsQueryResult>>() {
+                    }).getBody();
+        } catch (RestClientException e) {
+            throw toStatsClientException(e);
+        }
+        return results == null ? List.of() : results;
+    }
+
+    /**
+     * Дает очереди отправки или накопителю пачек до stats-client.async.shutdown-timeout-ms на отправку накопленных hit
+     **/
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (replayer != null) {
+            replayer.shutdownNow();
+        }
+        if (batcher != null) {
+            batcher.close(shutdownTimeoutMs);
+        }
+        if (sender == null) {
+            return;
+        }
+        sender.shutdown();
+        if (!sender.awaitTermination(shutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+            int lost = sender.shutdownNow().size();
+            droppedCounter.increment(lost);
+            log.warn("Очередь отправки статистики не успела опустеть при остановке, отброшено {} hit", lost);
+        }
+    }
+
+    private ResponseEntity<Object> send(StatRequest hit) {
+        ResponseEntity<Object> response;
+        try {
+            response = post(hit);
+        } catch (RestClientException e) {
+            failedCounter.increment();
+            log.warn("Не удалось отправить hit в сервис статистики: {}", e.getMessage());
+            throw e;
+        }
+        if (response.getStatusCode().is2xxSuccessful()) {
+            sentCounter.increment();
+        } else {
+            failedCounter.increment();
+            log.warn("Сервис статистики отклонил hit {} со статусом {}", hit, response.getStatusCode());
+        }
+        return response;
+    }
+
+    /**
+     * Пачка hit для накопителя: при непустом спуле сразу в спул, иначе в /hit/batch, а при неудаче - в спул
+     **/
+    private void deliver(List<StatRequest> hits) {
+        if (spool != null && spool.hasBacklog()) {
+            spool.append(hits);
+        } else if (!sendBatch(hits) && spool != null) {
+            spool.append(hits);
+        }
+    }
+
+    /**
+     * Отправляет пачку в /hit/batch; false, если ее стоит повторить позже: сервер недоступен или ответил 5xx.
+     * Пачку, отклоненную с 4xx, повторять бесполезно
+     **/
+    private boolean sendBatch(List<StatRequest> hits) {
+        ResponseEntity<Object> response;
+        try {
+            response = post("/hit/batch", hits);
+        } catch (RestClientException e) {
+            failedCounter.increment(hits.size());
+            log.warn("Не удалось отправить пачку из {} hit в сервис статистики: {}", hits.size(), e.getMessage());
+            return false;
+        }
+        if (response.getStatusCode().is2xxSuccessful()) {
+            sentCounter.increment(hits.size());
+            return true;
+        }
+        failedCounter.increment(hits.size());
+        log.warn("Сервис статистики отклонил пачку из {} hit со статусом {}", hits.size(), response.getStatusCode());
+        return !response.getStatusCode().is5xxServerError();
+    }
+
+    private ResponseEntity<Object> sendOrSpool(StatRequest hit) {
+        if (!spool.hasBacklog()) {
+            try {
+                ResponseEntity<Object> response = send(hit);
+                if (!response.getStatusCode().is5xxServerError()) {
+                    return response;
+                }
+            } catch (RestClientException e) {
+                // hit уходит в спул
+            }
+        }
+        spool.append(List.of(hit));
+        return ResponseEntity.accepted().build();
+    }
+
+    private void replaySpool() {
+        try {
+            spool.replay(this::sendBatch);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось дослать спул статистики: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Суммирует hits по uri. Ответ, оборванный до закрывающей скобки массива, - ошибка, а не неполный результат:
+     * сервер обрывает потоковую выдачу при сбое посреди нее
+     **/
+    static Map<String, Long> readViews(InputStream body) throws IOException {
+        Map<String, Long> views = new HashMap<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Ожидался массив статистики");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                String uri = null;
+                long hits = 0;
+                while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "uri" -> uri = parser.getText();
+                        case "hits" -> hits = parser.getLongValue();
+                        default -> parser.skipChildren();
+                    }
+                }
+                if (token != JsonToken.END_OBJECT) {
+                    throw new JsonParseException(parser, "Ответ статистики оборван посреди записи");
+                }
+                if (uri != null) {
+                    views.merge(uri, hits, Long::sum);
+                }
+            }
+            if (token != JsonToken.END_ARRAY) {
+                throw new JsonParseException(parser, "Ответ статистики оборван до конца массива");
+            }
+        }
+        return views;
+    }
+
+    static StatsClientException toStatsClientException(RestClientException e) {
+        if (e instanceof HttpStatusCodeException statusException) {
+            return new StatsClientException("Сервис статистики ответил " + statusException.getStatusCode() + ": "
+                    + statusException.getResponseBodyAsString(), statusException.getStatusCode(), e);
+        }
+        return new StatsClientException("Сервис статистики недоступен: " + e.getMessage(), null, e);
+    }
+
+    static Counter hitCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("stats.client.hits")
+                .tag("result", result)
+                .description(HIT_RESULTS.get(result))
+                .register(meterRegistry);
     }
 }
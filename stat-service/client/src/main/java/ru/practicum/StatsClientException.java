@@ -0,0 +1,24 @@
+package ru.practicum;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatusCode;
+
+/**
+ * Ошибка обращения к сервису статистики; status - код ответа сервера или null, если ответа не было
+ **/
+@Getter
+public class StatsClientException extends RuntimeException {
+    private final HttpStatusCode status;
+
+    public StatsClientException(String message, HttpStatusCode status, Throwable cause) {
+        super(message, cause);
+        this.status = status;
+    }
+
+    /**
+     * Сервер отклонил параметры запроса (4xx): повтор того же запроса не поможет
+     **/
+    public boolean isClientError() {
+        return status != null && status.is4xxClientError();
+    }
+}
@@ -0,0 +1,202 @@
+package ru.practicum;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HitBatcherTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BlockingQueue<List<StatRequest>> batches = new LinkedBlockingQueue<>();
+    private final CountDownLatch sending = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<HitBatcher> batchers = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        release.countDown();
+        for (HitBatcher batcher : batchers) {
+            batcher.close(1000);
+        }
+    }
+
+    @Test
+    public void testFlushedOnBatchSize() throws InterruptedException {
+        HitBatcher batcher = batcher(3, 60_000, 100, HitBatcher.Overflow.DROP_NEWEST, 0, batches::add);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(batcher.add(hit(i)));
+        }
+
+        assertEquals(List.of("/events/0", "/events/1", "/events/2"), uris(batches.poll(5, TimeUnit.SECONDS)));
+        assertEquals(1, meterRegistry.get("stats.client.batch.size").summary().count());
+    }
+
+    @Test
+    public void testFlushedOnInterval() throws InterruptedException {
+        HitBatcher batcher = batcher(100, 50, 100, HitBatcher.Overflow.DROP_NEWEST, 0, batches::add);
+
+        batcher.add(hit(0));
+        batcher.add(hit(1));
+
+        assertEquals(List.of("/events/0", "/events/1"), uris(batches.poll(5, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void testDropNewestWhenFull() throws InterruptedException {
+        HitBatcher batcher = blockedBatcher(HitBatcher.Overflow.DROP_NEWEST, 0);
+
+        assertFalse(batcher.add(hit(3)));
+
+        assertEquals(1.0, dropped());
+        assertEquals(List.of("/events/0", "/events/1", "/events/2"), sentAfterClose(batcher));
+    }
+
+    @Test
+    public void testDropOldestWhenFull() throws InterruptedException {
+        HitBatcher batcher = blockedBatcher(HitBatcher.Overflow.DROP_OLDEST, 0);
+
+        assertTrue(batcher.add(hit(3)));
+
+        assertEquals(1.0, dropped());
+        assertEquals(List.of("/events/0", "/events/2", "/events/3"), sentAfterClose(batcher));
+    }
+
+    @Test
+    public void testBlockGivesUpAfterOfferTimeout() throws InterruptedException {
+        HitBatcher batcher = blockedBatcher(HitBatcher.Overflow.BLOCK, 50);
+
+        long started = System.nanoTime();
+        assertFalse(batcher.add(hit(3)));
+
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1.0, dropped());
+    }
+
+    @Test
+    public void testBlockWaitsForRoom() throws InterruptedException {
+        HitBatcher batcher = blockedBatcher(HitBatcher.Overflow.BLOCK, 5000);
+        Thread.ofPlatform().start(() -> {
+            sleep(50);
+            release.countDown();
+        });
+
+        assertTrue(batcher.add(hit(3)));
+
+        assertEquals(0.0, dropped());
+    }
+
+    @Test
+    public void testCloseDrainsQueue() throws InterruptedException {
+        HitBatcher batcher = batcher(2, 60_000, 100, HitBatcher.Overflow.DROP_NEWEST, 0, batches::add);
+        for (int i = 0; i < 5; i++) {
+            batcher.add(hit(i));
+        }
+
+        batcher.close(5000);
+
+        List<String> sent = new ArrayList<>();
+        batches.forEach(batch -> sent.addAll(uris(batch)));
+        assertEquals(List.of("/events/0", "/events/1", "/events/2", "/events/3", "/events/4"), sent);
+        assertEquals(0.0, dropped());
+        assertFalse(batcher.add(hit(5)));
+        assertEquals(1.0, dropped());
+    }
+
+    @Test
+    public void testCloseTimeoutCountsLostHits() throws InterruptedException {
+        HitBatcher batcher = blockedBatcher(HitBatcher.Overflow.DROP_NEWEST, 0);
+
+        batcher.close(100);
+
+        assertEquals(2.0, dropped());
+        assertEquals(2.0, meterRegistry.get("stats.client.queue.depth").gauge().value());
+    }
+
+    @Test
+    public void testUnknownOverflowRejected() {
+        assertEquals(HitBatcher.Overflow.DROP_OLDEST, HitBatcher.Overflow.of(" drop-oldest"));
+        assertThrows(IllegalArgumentException.class, () -> HitBatcher.Overflow.of("drop-random"));
+    }
+
+    /**
+     * Накопитель с емкостью 2, чей поток отправки занят первой пачкой из одного hit до release,
+     * а в очереди ждут еще два hit
+     **/
+    private HitBatcher blockedBatcher(HitBatcher.Overflow overflow, long offerTimeoutMs) throws InterruptedException {
+        HitBatcher batcher = batcher(1, 60_000, 2, overflow, offerTimeoutMs, batch -> {
+            sending.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            batches.add(batch);
+        });
+        assertTrue(batcher.add(hit(0)));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        assertTrue(batcher.add(hit(1)));
+        assertTrue(batcher.add(hit(2)));
+        return batcher;
+    }
+
+    private List<String> sentAfterClose(HitBatcher batcher) throws InterruptedException {
+        release.countDown();
+        batcher.close(5000);
+        List<String> sent = new ArrayList<>();
+        List<StatRequest> batch;
+        while ((batch = batches.poll()) != null) {
+            sent.addAll(uris(batch));
+        }
+        return sent;
+    }
+
+    private HitBatcher batcher(int batchSize, long flushIntervalMs, int capacity, HitBatcher.Overflow overflow,
+                               long offerTimeoutMs, Consumer<List<StatRequest>> sender) {
+        HitBatcher batcher = new HitBatcher(meterRegistry, batchSize, flushIntervalMs, capacity, overflow, offerTimeoutMs,
+                sender);
+        batchers.add(batcher);
+        return batcher;
+    }
+
+    private double dropped() {
+        return meterRegistry.get("stats.client.hits").tag("result", "dropped").counter().count();
+    }
+
+    private static List<String> uris(List<StatRequest> batch) {
+        assertNotNull(batch);
+        return batch.stream().map(StatRequest::getUri).toList();
+    }
+
+    private static StatRequest hit(int i) {
+        return StatRequest.builder()
+                .app("ewm-main-service")
+                .uri("/events/" + i)
+                .ip("10.0.0.1")
+                .timestamp(LocalDateTime.of(2024, 1, 1, 10, 0, 0))
+                .build();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
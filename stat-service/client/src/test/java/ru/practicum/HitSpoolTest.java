@@ -0,0 +1,187 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HitSpoolTest {
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 1, 1, 10, 0, 0);
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final List<HitSpool> spools = new ArrayList<>();
+    private SimpleMeterRegistry meterRegistry;
+
+    @TempDir
+    private Path dir;
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        for (HitSpool spool : spools) {
+            spool.close();
+        }
+    }
+
+    @Test
+    public void testReplayResumesFromSavedPositionAfterRestart() throws IOException {
+        HitSpool spool = spool(4194304, 268435456, 4);
+        List<StatRequest> hits = hits(1, 10);
+        spool.append(hits);
+
+        List<StatRequest> sent = new ArrayList<>();
+        spool.replay(chunk -> sent.isEmpty() && sent.addAll(chunk));
+        assertEquals(ids(hits.subList(0, 4)), ids(sent));
+        spool.close();
+
+        HitSpool restarted = spool(4194304, 268435456, 4);
+        assertTrue(restarted.hasBacklog());
+        assertEquals(6 * lineBytes(), pendingBytes());
+
+        List<StatRequest> resent = new ArrayList<>();
+        restarted.replay(resent::addAll);
+
+        assertEquals(ids(hits.subList(4, 10)), ids(resent));
+        assertFalse(restarted.hasBacklog());
+        assertEquals(6.0, counter("replayed"));
+    }
+
+    @Test
+    public void testTornLastLineNotCountedAsNewline() throws IOException {
+        List<StatRequest> hits = hits(1, 3);
+        String first = line(hits.get(0)) + line(hits.get(1));
+        String torn = line(hits.get(2)).substring(0, 20);
+        Files.writeString(dir.resolve(String.format("hits-%019d.ndjson", 0)), first + torn, StandardCharsets.UTF_8);
+        Path second = dir.resolve(String.format("hits-%019d.ndjson", 1));
+        Files.writeString(second, line(hits.get(2)), StandardCharsets.UTF_8);
+
+        HitSpool spool = spool(4194304, 268435456, 10);
+        List<StatRequest> sent = new ArrayList<>();
+        spool.replay(chunk -> sent.isEmpty() && sent.addAll(chunk));
+
+        assertEquals(ids(hits.subList(0, 2)), ids(sent));
+        assertEquals(1.0, counter("dropped"));
+        assertEquals(Files.size(second), pendingBytes());
+
+        spool.replay(sent::addAll);
+        assertEquals(ids(hits), ids(sent));
+        assertEquals(0, pendingBytes());
+    }
+
+    @Test
+    public void testOldestSegmentDroppedAtMaxBytes() throws IOException {
+        long line = lineBytes();
+        HitSpool spool = spool(1, 3 * line, 1);
+        List<StatRequest> hits = hits(1, 5);
+        spool.append(hits.subList(0, 3));
+        List<StatRequest> sent = new ArrayList<>();
+        spool.replay(chunk -> sent.isEmpty() && sent.addAll(chunk));
+        assertEquals(2 * line, pendingBytes());
+
+        assertTrue(spool.append(hits.subList(3, 4)));
+        assertEquals(3 * line, pendingBytes());
+        assertTrue(spool.append(hits.subList(4, 5)));
+
+        assertEquals(2.0, counter("dropped"));
+        assertEquals(2 * line, pendingBytes());
+
+        spool.replay(sent::addAll);
+        assertEquals(ids(List.of(hits.get(0), hits.get(3), hits.get(4))), ids(sent));
+        assertEquals(0, pendingBytes());
+    }
+
+    @Test
+    public void testAppendRefusedWhenSingleSegmentFull() {
+        HitSpool spool = spool(4194304, 2 * lineBytes(), 10);
+
+        assertTrue(spool.append(hits(1, 2)));
+        assertFalse(spool.append(hits(3, 3)));
+
+        assertEquals(1.0, counter("dropped"));
+        assertEquals(2.0, counter("spooled"));
+    }
+
+    @Test
+    public void testResentChunkKeepsHitIds() throws IOException {
+        HitSpool spool = spool(4194304, 268435456, 3);
+        List<StatRequest> hits = hits(1, 7);
+        spool.append(hits);
+        Set<String> accepted = new HashSet<>();
+        List<StatRequest> received = new ArrayList<>();
+
+        spool.replay(chunk -> {
+            received.addAll(chunk);
+            chunk.forEach(hit -> accepted.add(hit.getHitId()));
+            return received.size() < 6;
+        });
+        spool.replay(chunk -> {
+            received.addAll(chunk);
+            chunk.forEach(hit -> accepted.add(hit.getHitId()));
+            return true;
+        });
+
+        assertEquals(10, received.size());
+        assertEquals(ids(hits.subList(3, 6)), ids(received.subList(6, 9)));
+        assertEquals(new HashSet<>(ids(hits)), accepted);
+        assertFalse(spool.hasBacklog());
+    }
+
+    private HitSpool spool(long segmentBytes, long maxBytes, int replayChunk) {
+        meterRegistry = new SimpleMeterRegistry();
+        HitSpool spool = new HitSpool(meterRegistry, objectMapper, dir, segmentBytes, maxBytes, 0, replayChunk);
+        spools.add(spool);
+        return spool;
+    }
+
+    private double counter(String result) {
+        return meterRegistry.get("stats.client.hits").tag("result", result).counter().count();
+    }
+
+    private long pendingBytes() {
+        return (long) meterRegistry.get("stats.client.spool.bytes").gauge().value();
+    }
+
+    private long lineBytes() {
+        return line(hits(1, 1).get(0)).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private String line(StatRequest hit) {
+        try {
+            return objectMapper.writeValueAsString(hit) + "\n";
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<String> ids(List<StatRequest> hits) {
+        return hits.stream().map(StatRequest::getHitId).toList();
+    }
+
+    private static List<StatRequest> hits(int from, int to) {
+        return IntStream.rangeClosed(from, to)
+                .mapToObj(i -> StatRequest.builder()
+                        .app("ewm-main-service")
+                        .uri(String.format("/events/%03d", i))
+                        .ip("10.0.0.1")
+                        .timestamp(CREATED)
+                        .hitId(UUID.randomUUID().toString())
+                        .build())
+                .toList();
+    }
+}
@@ -0,0 +1,251 @@
+package ru.practicum;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.ResponseActions;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withBadRequest;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withException;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class StatsClientTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2024, 1, 2, 0, 0, 0);
+
+    private StatsClient client;
+    private MockRestServiceServer server;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch sending = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    public void setUp() {
+        client(false, 1, 1, 2000);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        release.countDown();
+        client.close();
+    }
+
+    @Test
+    public void testAsyncHitSentOutsideRequestThread() throws InterruptedException {
+        client(true, 1, 10, 2000);
+        List<String> threads = new CopyOnWriteArrayList<>();
+        server.expect(requestTo("http://localhost:9090/hit"))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(request -> {
+                    threads.add(Thread.currentThread().getName());
+                    return withStatus(HttpStatus.CREATED).createResponse(request);
+                });
+
+        assertEquals(HttpStatus.ACCEPTED, client.saveStats(request("/events/1")).getStatusCode());
+        client.close();
+
+        server.verify();
+        assertEquals(1, threads.size());
+        assertTrue(threads.get(0).startsWith("stats-client-"), threads.get(0));
+        assertEquals(1.0, hits("sent"));
+    }
+
+    @Test
+    public void testAsyncQueueOverflowRejectedAndCounted() throws InterruptedException {
+        client(true, 1, 1, 2000);
+        expectBlockedHits(2);
+
+        assertEquals(HttpStatus.ACCEPTED, client.saveStats(request("/events/1")).getStatusCode());
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        assertEquals(HttpStatus.ACCEPTED, client.saveStats(request("/events/2")).getStatusCode());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, client.saveStats(request("/events/3")).getStatusCode());
+
+        assertEquals(1.0, hits("dropped"));
+        assertEquals(1.0, meterRegistry.get("stats.client.queue.depth").gauge().value());
+        release.countDown();
+        client.close();
+        assertEquals(2.0, hits("sent"));
+    }
+
+    @Test
+    public void testAsyncPendingHitsDrainedOnClose() throws InterruptedException {
+        client(true, 1, 10, 5000);
+        expectBlockedHits(4);
+        client.saveStats(request("/events/1"));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        for (int i = 2; i <= 4; i++) {
+            client.saveStats(request("/events/" + i));
+        }
+
+        release.countDown();
+        client.close();
+
+        server.verify();
+        assertEquals(4.0, hits("sent"));
+        assertEquals(0.0, hits("dropped"));
+    }
+
+    @Test
+    public void testAsyncHitsLeftAfterShutdownTimeoutCounted() throws InterruptedException {
+        client(true, 1, 10, 100);
+        expectBlockedHits(1);
+        client.saveStats(request("/events/1"));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        client.saveStats(request("/events/2"));
+        client.saveStats(request("/events/3"));
+
+        client.close();
+
+        assertEquals(2.0, hits("dropped"));
+    }
+
+    @Test
+    public void testAsyncServerErrorCountedAsFailed() throws InterruptedException {
+        client(true, 1, 10, 2000);
+        server.expect(requestTo("http://localhost:9090/hit")).andRespond(withServerError());
+
+        client.saveStats(request("/events/1"));
+        client.close();
+
+        assertEquals(1.0, hits("failed"));
+        assertEquals(0.0, hits("sent"));
+    }
+
+    @Test
+    public void testGetStatsSumsViewsAcrossApps() {
+        expectStats().andRespond(withSuccess("[{\"app\":\"a\",\"uri\":\"/events/1\",\"hits\":2},"
+                + "{\"app\":\"b\",\"uri\":\"/events/1\",\"hits\":3,\"extra\":{\"nested\":[1,2]}},"
+                + "{\"app\":\"a\",\"uri\":\"/events/2\",\"hits\":1}]", MediaType.APPLICATION_JSON));
+
+        assertEquals(Map.of("/events/1", 5L, "/events/2", 1L),
+                client.getStats(START, END, List.of("/events/1", "/events/2"), false));
+        server.verify();
+    }
+
+    @Test
+    public void testGetStatsTruncatedArrayFails() {
+        expectStats().andRespond(withSuccess("[{\"app\":\"a\",\"uri\":\"/events/1\",\"hits\":2}",
+                MediaType.APPLICATION_JSON));
+
+        StatsClientException e = assertThrows(StatsClientException.class,
+                () -> client.getStats(START, END, List.of(), false));
+        assertNull(e.getStatus());
+    }
+
+    @Test
+    public void testReadViewsRejectsTruncatedStream() {
+        assertThrows(IOException.class, () -> StatsClient.readViews(body("[{\"app\":\"a\",\"uri\":\"/events/1\"")));
+        assertThrows(IOException.class, () -> StatsClient.readViews(body("[{\"app\":\"a\",\"uri\":\"/events/1\"},")));
+        assertThrows(IOException.class, () -> StatsClient.readViews(body("{\"uri\":\"/events/1\"}")));
+        assertThrows(IOException.class, () -> StatsClient.readViews(body("")));
+    }
+
+    @Test
+    public void testReadViewsEmptyArray() throws IOException {
+        assertTrue(StatsClient.readViews(body("[]")).isEmpty());
+    }
+
+    @Test
+    public void testServerErrorKeepsStatus() {
+        expectStats().andRespond(withServerError());
+
+        StatsClientException e = assertThrows(StatsClientException.class,
+                () -> client.getStats(START, END, List.of(), false));
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, e.getStatus());
+        assertFalse(e.isClientError());
+    }
+
+    @Test
+    public void testBadRequestIsClientError() {
+        server.expect(requestTo("http://localhost:9090/stats/batch"))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(withBadRequest());
+
+        StatsClientException e = assertThrows(StatsClientException.class, () -> client.getStatsBatch(List.of()));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+        assertTrue(e.isClientError());
+    }
+
+    @Test
+    public void testConnectionFailureHasNoStatus() {
+        expectStats().andRespond(withException(new IOException("Connection refused")));
+
+        StatsClientException e = assertThrows(StatsClientException.class,
+                () -> client.getStats(START, END, List.of(), true));
+        assertNull(e.getStatus());
+        assertFalse(e.isClientError());
+    }
+
+    private void client(boolean async, int threads, int queueCapacity, long shutdownTimeoutMs) {
+        client = new StatsClient("http://localhost:9090", "test-app", new RestTemplateBuilder(), meterRegistry,
+                new StaticListableBeanFactory().getBeanProvider(HitSpool.class), async, threads, queueCapacity,
+                shutdownTimeoutMs, false, 500, 200, 10000, "drop-newest", 50, 1000);
+        server = MockRestServiceServer.bindTo(client.restTemplate).build();
+    }
+
+    /**
+     * Ответы на POST /hit, первый из которых ждет release
+     **/
+    private void expectBlockedHits(int count) {
+        server.expect(ExpectedCount.times(count), requestTo("http://localhost:9090/hit"))
+                .andRespond(request -> {
+                    sending.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Отправка прервана", e);
+                    }
+                    return withStatus(HttpStatus.CREATED).createResponse(request);
+                });
+    }
+
+    private double hits(String result) {
+        return meterRegistry.get("stats.client.hits").tag("result", result).counter().count();
+    }
+
+    private static MockHttpServletRequest request(String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setRemoteAddr("10.0.0.1");
+        return request;
+    }
+
+    private ResponseActions expectStats() {
+        return server.expect(requestTo(startsWith("http://localhost:9090/stats?stream=true")))
+                .andExpect(method(HttpMethod.GET));
+    }
+
+    private static ByteArrayInputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,20 @@
+package ru.practicum;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Ответ /stats/changes: приращения просмотров по uri с прошлого курсора и курсор для следующего запроса.
+ * hasMore - после cursor уже есть hit, не вошедшие в страницу
+ **/
+@Getter
+@Builder(toBuilder = true)
+@ToString
+public class StatsChanges {
+    private String cursor;
+    private Boolean hasMore;
+    private List<ViewStats> changes;
+}
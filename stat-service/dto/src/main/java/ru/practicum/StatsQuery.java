@@ -0,0 +1,35 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Запрос /stats/batch: просмотры одного uri за свой интервал [start, end]
+ **/
+@Getter
+@Builder(toBuilder = true)
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class StatsQuery {
+    @NotBlank
+    private String uri;
+
+    @NotNull
+    @JsonFormat(pattern = Formatter.DATE_FORMAT)
+    private LocalDateTime start;
+
+    @NotNull
+    @JsonFormat(pattern = Formatter.DATE_FORMAT)
+    private LocalDateTime end;
+
+    private Boolean unique;
+}
@@ -0,0 +1,32 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Ответ на запрос /stats/batch с теми же uri и интервалом; hits - просмотры или уникальные IP
+ * при unique=true, сложенные по приложениям, как строки ответа /stats
+ **/
+@Getter
+@Builder(toBuilder = true)
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class StatsQueryResult {
+    private String uri;
+
+    @JsonFormat(pattern = Formatter.DATE_FORMAT)
+    private LocalDateTime start;
+
+    @JsonFormat(pattern = Formatter.DATE_FORMAT)
+    private LocalDateTime end;
+
+    private Boolean unique;
+    private Long hits;
+}
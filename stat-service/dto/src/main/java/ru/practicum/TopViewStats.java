@@ -0,0 +1,18 @@
+package ru.practicum;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Элемент ответа /stats/top: hits - оценка сверху, истинное число просмотров не меньше hits - error
+ **/
+@Getter
+@Builder(toBuilder = true)
+@ToString
+public class TopViewStats {
+    private String app;
+    private String uri;
+    private Long hits;
+    private Long error;
+}
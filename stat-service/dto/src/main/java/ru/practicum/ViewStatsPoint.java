@@ -0,0 +1,21 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Корзина временного ряда: начало корзины, число просмотров и уникальных IP в ней
+ **/
+@Getter
+@Builder(toBuilder = true)
+@ToString
+public class ViewStatsPoint {
+    @JsonFormat(pattern = Formatter.DATE_FORMAT)
+    private LocalDateTime bucket;
+    private Long hits;
+    private Long unique;
+}
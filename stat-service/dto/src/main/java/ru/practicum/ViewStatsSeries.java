@@ -0,0 +1,16 @@
+package ru.practicum;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+@Getter
+@Builder(toBuilder = true)
+@ToString
+public class ViewStatsSeries {
+    private String app;
+    private String uri;
+    private List<ViewStatsPoint> points;
+}
@@ -15,5 +15,7 @@ public class ViewsStatsRequest {
     private LocalDateTime start;
     private LocalDateTime end;
     private Boolean unique;
+    private Boolean approximate;
+    private Integer limit;
     private String application;
 }
\ No newline at end of file
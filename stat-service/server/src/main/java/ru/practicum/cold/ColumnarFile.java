@@ -0,0 +1,266 @@
+package ru.practicum.cold;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Колоночный файл холодного яруса: строки отсортированы по времени и разбиты на блоки по {@link #BLOCK_ROWS}.
+ * Внутри блока колонки идут подряд: время в микросекундах (первое значение целиком, далее разности),
+ * номера app, uri и ip из словаря файла; числа записаны varint, блок сжат Deflate.
+ * В конце файла - словарь, индекс блоков с минимальным и максимальным временем (zone map) и метаданные
+ **/
+public class ColumnarFile {
+    static final int BLOCK_ROWS = 8192;
+
+    private static final int MAGIC = 0x53544331;
+    private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final Path path;
+    private final Meta meta;
+    private final String[] dictionary;
+    private final List<Block> blocks;
+
+    private ColumnarFile(Path path, Meta meta, String[] dictionary, List<Block> blocks) {
+        this.path = path;
+        this.meta = meta;
+        this.dictionary = dictionary;
+        this.blocks = blocks;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public Meta getMeta() {
+        return meta;
+    }
+
+    /**
+     * Записывает строки, уже отсортированные по времени
+     **/
+    public static void write(Path path, Meta meta, List<Row> rows) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> values = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            writeFully(channel, ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).flip());
+            List<Block> blocks = new ArrayList<>();
+            for (int first = 0; first < rows.size(); first += BLOCK_ROWS) {
+                List<Row> blockRows = rows.subList(first, Math.min(first + BLOCK_ROWS, rows.size()));
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+                    long previous = blockRows.get(0).time();
+                    out.writeLong(previous);
+                    for (Row row : blockRows.subList(1, blockRows.size())) {
+                        writeVarLong(out, row.time() - previous);
+                        previous = row.time();
+                    }
+                    for (Row row : blockRows) {
+                        writeVarLong(out, intern(row.app(), ids, values));
+                    }
+                    for (Row row : blockRows) {
+                        writeVarLong(out, intern(row.uri(), ids, values));
+                    }
+                    for (Row row : blockRows) {
+                        writeVarLong(out, intern(row.ip(), ids, values));
+                    }
+                }
+                blocks.add(new Block(channel.position(), bytes.size(), blockRows.size(),
+                        blockRows.get(0).time(), blockRows.get(blockRows.size() - 1).time()));
+                writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+            }
+
+            long footerOffset = channel.position();
+            ByteArrayOutputStream footer = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(footer))) {
+                out.writeInt(values.size());
+                for (String value : values) {
+                    byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                    writeVarLong(out, utf8.length);
+                    out.write(utf8);
+                }
+                out.writeInt(blocks.size());
+                for (Block block : blocks) {
+                    out.writeLong(block.offset());
+                    out.writeInt(block.length());
+                    out.writeInt(block.rows());
+                    out.writeLong(block.minTime());
+                    out.writeLong(block.maxTime());
+                }
+                out.writeLong(meta.from());
+                out.writeLong(meta.to());
+                out.writeLong(meta.maxId());
+                out.writeLong(rows.size());
+            }
+            writeFully(channel, ByteBuffer.wrap(footer.toByteArray()));
+            writeFully(channel, ByteBuffer.allocate(TRAILER_SIZE).putLong(footerOffset).putInt(MAGIC).flip());
+            channel.force(true);
+        }
+    }
+
+    public static ColumnarFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+            channel.read(trailer, size - TRAILER_SIZE);
+            if (size < Integer.BYTES + TRAILER_SIZE || trailer.getInt(Long.BYTES) != MAGIC) {
+                throw new IOException("Файл " + path + " не является колоночным файлом статистики");
+            }
+            long footerOffset = trailer.getLong(0);
+            ByteBuffer footer = ByteBuffer.allocate((int) (size - TRAILER_SIZE - footerOffset));
+            channel.read(footer, footerOffset);
+            try (DataInputStream in = new DataInputStream(
+                    new InflaterInputStream(new ByteArrayInputStream(footer.array())))) {
+                String[] dictionary = new String[in.readInt()];
+                for (int i = 0; i < dictionary.length; i++) {
+                    byte[] utf8 = new byte[(int) readVarLong(in)];
+                    in.readFully(utf8);
+                    dictionary[i] = new String(utf8, StandardCharsets.UTF_8);
+                }
+                int blockCount = in.readInt();
+                List<Block> blocks = new ArrayList<>(blockCount);
+                for (int i = 0; i < blockCount; i++) {
+                    blocks.add(new Block(in.readLong(), in.readInt(), in.readInt(), in.readLong(), in.readLong()));
+                }
+                Meta meta = new Meta(in.readLong(), in.readLong(), in.readLong());
+                return new ColumnarFile(path, meta, dictionary, blocks);
+            }
+        }
+    }
+
+    public boolean overlaps(long from, long to) {
+        return !blocks.isEmpty() && blocks.get(0).minTime() < to && blocks.get(blocks.size() - 1).maxTime() >= from;
+    }
+
+    /**
+     * Передает строки со временем в [from, to); блоки вне интервала не читаются.
+     * uris - фильтр по uri, пустой - без фильтра. Возвращает число прочитанных блоков
+     **/
+    public int scan(long from, long to, Collection<String> uris, RowHandler handler) throws IOException {
+        boolean[] allowedUris = null;
+        if (!uris.isEmpty()) {
+            allowedUris = new boolean[dictionary.length];
+            Map<String, Integer> ids = new HashMap<>();
+            for (int i = 0; i < dictionary.length; i++) {
+                ids.put(dictionary[i], i);
+            }
+            boolean any = false;
+            for (String uri : uris) {
+                Integer id = ids.get(uri);
+                if (id != null) {
+                    allowedUris[id] = true;
+                    any = true;
+                }
+            }
+            if (!any) {
+                return 0;
+            }
+        }
+        int read = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (Block block : blocks) {
+                if (block.minTime() >= to || block.maxTime() < from) {
+                    continue;
+                }
+                read++;
+                ByteBuffer compressed = ByteBuffer.allocate(block.length());
+                channel.read(compressed, block.offset());
+                try (DataInputStream in = new DataInputStream(
+                        new InflaterInputStream(new ByteArrayInputStream(compressed.array())))) {
+                    int rows = block.rows();
+                    long[] times = new long[rows];
+                    times[0] = in.readLong();
+                    for (int i = 1; i < rows; i++) {
+                        times[i] = times[i - 1] + readVarLong(in);
+                    }
+                    int[] apps = readIds(in, rows);
+                    int[] uriIds = readIds(in, rows);
+                    int[] ips = readIds(in, rows);
+                    for (int i = 0; i < rows; i++) {
+                        if (times[i] >= from && times[i] < to && (allowedUris == null || allowedUris[uriIds[i]])) {
+                            handler.accept(times[i], dictionary[apps[i]], dictionary[uriIds[i]], dictionary[ips[i]]);
+                        }
+                    }
+                }
+            }
+        }
+        return read;
+    }
+
+    private static int intern(String value, Map<String, Integer> ids, List<String> values) {
+        return ids.computeIfAbsent(value, key -> {
+            values.add(key);
+            return values.size() - 1;
+        });
+    }
+
+    private static int[] readIds(DataInputStream in, int rows) throws IOException {
+        int[] ids = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            ids[i] = (int) readVarLong(in);
+        }
+        return ids;
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Неожиданный конец блока");
+            }
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Время в микросекундах от эпохи; интервал файла [from, to), maxId - наибольший stats.id,
+     * который мог попасть в файл
+     **/
+    public record Meta(long from, long to, long maxId) {
+    }
+
+    public record Row(long time, String app, String uri, String ip) {
+    }
+
+    record Block(long offset, int length, int rows, long minTime, long maxTime) {
+    }
+
+    @FunctionalInterface
+    public interface RowHandler {
+        void accept(long time, String app, String uri, String ip);
+    }
+}
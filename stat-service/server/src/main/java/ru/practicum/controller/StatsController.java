@@ -1,19 +1,34 @@
 package ru.practicum.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.practicum.Formatter;
 import ru.practicum.StatRequest;
+import ru.practicum.StatsChanges;
+import ru.practicum.StatsQuery;
+import ru.practicum.StatsQueryResult;
+import ru.practicum.TopViewStats;
 import ru.practicum.ViewStats;
+import ru.practicum.ViewStatsSeries;
 import ru.practicum.ViewsStatsRequest;
+import ru.practicum.exceptions.BadRequestException;
 import ru.practicum.service.StatsService;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.Collections;
 import java.util.List;
 
@@ -22,36 +37,150 @@ import java.util.List;
 @RequiredArgsConstructor
 @RequestMapping(produces = MediaType.APPLICATION_JSON_VALUE)
 public class StatsController {
+    private static final String UNIQUE_APPROX = "approx";
+
     private final StatsService service;
+    private final ObjectMapper objectMapper;
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern(Formatter.DATE_FORMAT);
 
     @PostMapping("/hit")
     @ResponseStatus(code = HttpStatus.CREATED)
-    public void hit(@RequestBody StatRequest hit) {
+    public void hit(@Valid @RequestBody StatRequest hit) {
         log.info("POST - сохранения вызова hit {}", hit);
         service.saveHit(hit);
     }
 
+    @PostMapping(value = "/hit/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(code = HttpStatus.CREATED)
+    public void hitBatch(InputStream json) throws IOException {
+        log.info("POST - сохранение пачки hit в формате JSON-массива");
+        service.saveHits(json);
+    }
+
+    @PostMapping(value = "/hit/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseStatus(code = HttpStatus.CREATED)
+    public void hitBatchStream(Reader ndjson) throws IOException {
+        log.info("POST - сохранение потока hit в формате NDJSON");
+        service.saveHits(ndjson);
+    }
+
     @GetMapping("/stats")
     public List<ViewStats> getStats(@RequestParam @DateTimeFormat(pattern = Formatter.DATE_FORMAT) LocalDateTime start,
                                     @RequestParam @DateTimeFormat(pattern = Formatter.DATE_FORMAT) LocalDateTime end,
                                     @RequestParam(required = false) List<String> uris,
-                                    @RequestParam(defaultValue = "false") Boolean unique) {
-        log.info("GET - получение статистики с параметрами start={}, end={}, uris={}, unique={}",
+                                    @RequestParam(defaultValue = "false") String unique,
+                                    @RequestParam(required = false) Integer limit) {
+        log.info("GET - получение статистики с параметрами start={}, end={}, uris={}, unique={}, limit={}",
                 start,
                 end,
                 uris,
-                unique);
+                unique,
+                limit);
+        return service.getViewStatsList(createRequest(start, end, uris, unique, limit));
+    }
+
+    /**
+     * Потоковая выдача статистики без сборки списка в памяти: JSON-массив или NDJSON по заголовку Accept.
+     * Параметры проверяются до начала ответа; ошибка посреди выдачи обрывает ответ, массив не закрывается
+     **/
+    @GetMapping(value = "/stats", params = "stream=true",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> getStatsStream(
+            @RequestParam @DateTimeFormat(pattern = Formatter.DATE_FORMAT) LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = Formatter.DATE_FORMAT) LocalDateTime end,
+            @RequestParam(required = false) List<String> uris,
+            @RequestParam(defaultValue = "false") String unique,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        log.info("GET - потоковое получение статистики с параметрами start={}, end={}, uris={}, unique={}, limit={}",
+                start,
+                end,
+                uris,
+                unique,
+                limit);
+        ViewsStatsRequest request = createRequest(start, end, uris, unique, limit);
+        service.validate(request);
+        boolean ndjson = accept != null && accept.contains(MediaType.APPLICATION_NDJSON_VALUE);
+        StreamingResponseBody body = out -> {
+            ViewStatsStreamWriter writer = new ViewStatsStreamWriter(objectMapper, out, ndjson);
+            service.streamViewStats(request, writer);
+            writer.finish();
+        };
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * k самых просматриваемых uri за интервал: оценка по скетчам с границей ошибки или точный подсчет при exact=true
+     * и при выключенных скетчах (stats.top.enabled=false, по умолчанию)
+     **/
+    @GetMapping("/stats/top")
+    public List<TopViewStats> getTopStats(@RequestParam @DateTimeFormat(pattern = Formatter.DATE_FORMAT) LocalDateTime start,
+                                          @RequestParam @DateTimeFormat(pattern = Formatter.DATE_FORMAT) LocalDateTime end,
+                                          @RequestParam(defaultValue = "10") Integer k,
+                                          @RequestParam(defaultValue = "false") boolean exact) {
+        log.info("GET - получение top-{} статистики с параметрами start={}, end={}, exact={}", k, start, end, exact);
+        return service.getTopStats(createRequest(start, end, null, "false", k), exact);
+    }
+
+    /**
+     * Число просмотров и уникальных IP по корзинам minute, hour или day для каждого uri
+     **/
+    @GetMapping("/stats/timeseries")
+    public List<ViewStatsSeries> getTimeSeries(@RequestParam @DateTimeFormat(pattern = Formatter.DATE_FORMAT) LocalDateTime start,
+                                               @RequestParam @DateTimeFormat(pattern = Formatter.DATE_FORMAT) LocalDateTime end,
+                                               @RequestParam(required = false) List<String> uris,
+                                               @RequestParam(defaultValue = "hour") String bucket) {
+        log.info("GET - получение временных рядов с параметрами start={}, end={}, uris={}, bucket={}",
+                start,
+                end,
+                uris,
+                bucket);
+        ChronoUnit unit = switch (bucket.toLowerCase()) {
+            case "minute" -> ChronoUnit.MINUTES;
+            case "hour" -> ChronoUnit.HOURS;
+            case "day" -> ChronoUnit.DAYS;
+            default -> throw new BadRequestException("Параметр bucket должен быть minute, hour или day");
+        };
+        return service.getTimeSeries(createRequest(start, end, uris, "false", null), unit);
+    }
+
+    /**
+     * Приращения просмотров по uri с курсора since (без него - с начала) и курсор для следующего запроса
+     **/
+    @GetMapping("/stats/changes")
+    public StatsChanges getChanges(@RequestParam(required = false) String since,
+                                   @RequestParam(required = false) Integer limit) {
+        log.info("GET - получение изменений статистики с параметрами since={}, limit={}", since, limit);
+        return service.getChanges(since, limit);
+    }
+
+    /**
+     * Несколько запросов {uri, start, end, unique} за один вызов; ответы в том же порядке
+     **/
+    @PostMapping(value = "/stats/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<StatsQueryResult> getBatchStats(@RequestBody List<StatsQuery> queries) {
+        log.info("POST - получение статистики по пачке из {} запросов", queries.size());
+        return service.getBatchStats(queries);
+    }
+
+    private ViewsStatsRequest createRequest(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                            String unique, Integer limit) {
         if (uris == null) {
             uris = Collections.emptyList();
         }
-        return service.getViewStatsList(
-                ViewsStatsRequest.builder()
-                        .start(start)
-                        .end(end)
-                        .uri(uris)
-                        .unique(unique)
-                        .build()
-        );
-    }
-}
\ No newline at end of file
+        boolean approximate = UNIQUE_APPROX.equalsIgnoreCase(unique);
+        if (!approximate && !"true".equalsIgnoreCase(unique) && !"false".equalsIgnoreCase(unique)) {
+            throw new BadRequestException("Параметр unique должен быть true, false или " + UNIQUE_APPROX);
+        }
+        return ViewsStatsRequest.builder()
+                .start(start)
+                .end(end)
+                .uri(uris)
+                .unique(approximate || Boolean.parseBoolean(unique))
+                .approximate(approximate)
+                .limit(limit)
+                .build();
+    }
+}
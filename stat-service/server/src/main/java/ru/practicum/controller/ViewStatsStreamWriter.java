@@ -0,0 +1,60 @@
+package ru.practicum.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import ru.practicum.ViewStats;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Запись ViewStats в ответ по одному элементу: JSON-массивом или NDJSON, каждая запись NDJSON заканчивается
+ * переводом строки. Поток открывается при первом элементе, поэтому ошибка до начала выдачи еще может быть
+ * превращена обработчиком ошибок в обычный ответ. Массив закрывается только в {@link #finish()}: при ошибке
+ * посреди выдачи ответ обрывается, а не выглядит полным
+ **/
+class ViewStatsStreamWriter implements Consumer<ViewStats> {
+    private final ObjectMapper objectMapper;
+    private final OutputStream out;
+    private final boolean ndjson;
+    private SequenceWriter writer;
+
+    ViewStatsStreamWriter(ObjectMapper objectMapper, OutputStream out, boolean ndjson) {
+        this.objectMapper = objectMapper;
+        this.out = out;
+        this.ndjson = ndjson;
+    }
+
+    @Override
+    public void accept(ViewStats stats) {
+        try {
+            if (ndjson) {
+                out.write(objectMapper.writeValueAsBytes(stats));
+                out.write('\n');
+            } else {
+                array().write(stats);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Завершает выдачу после того, как все элементы записаны
+     **/
+    void finish() throws IOException {
+        if (!ndjson) {
+            array().close();
+        }
+        out.flush();
+    }
+
+    private SequenceWriter array() throws IOException {
+        if (writer == null) {
+            writer = objectMapper.writer().writeValuesAsArray(out);
+        }
+        return writer;
+    }
+}
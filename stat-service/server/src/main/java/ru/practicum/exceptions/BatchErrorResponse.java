@@ -0,0 +1,13 @@
+package ru.practicum.exceptions;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+@Getter
+@RequiredArgsConstructor
+public class BatchErrorResponse {
+    private final String error;
+    private final List<BatchItemError> errors;
+}
@@ -0,0 +1,13 @@
+package ru.practicum.exceptions;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class BatchItemError {
+    private final int index;
+    private final String error;
+}
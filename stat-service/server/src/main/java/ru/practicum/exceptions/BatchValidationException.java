@@ -0,0 +1,15 @@
+package ru.practicum.exceptions;
+
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+public class BatchValidationException extends RuntimeException {
+    private final List<BatchItemError> errors;
+
+    public BatchValidationException(String message, List<BatchItemError> errors) {
+        super(message);
+        this.errors = errors;
+    }
+}
@@ -1,5 +1,6 @@
 package ru.practicum.exceptions;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
@@ -51,9 +52,31 @@ public class ErrorHandler {
         return new ErrorResponse(e.getMessage());
     }
 
+    @ExceptionHandler(BatchValidationException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public BatchErrorResponse handleBatchValidationException(final BatchValidationException e) {
+        log.error("Получен статус 400 BAD_REQUEST {} {}", e.getMessage(), e.getErrors());
+        return new BatchErrorResponse(e.getMessage(), e.getErrors());
+    }
+
+    @ExceptionHandler(ServiceUnavailableException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ErrorResponse handleServiceUnavailableException(final ServiceUnavailableException e) {
+        log.warn("Получен статус 503 SERVICE_UNAVAILABLE {}", e.getMessage());
+        return new ErrorResponse(e.getMessage());
+    }
+
+    /**
+     * Если ответ уже начат (потоковая выдача), ошибка пробрасывается дальше: контейнер обрывает соединение,
+     * и клиент видит неполный ответ, а не дописанное в конец тело ошибки
+     **/
     @ExceptionHandler
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
-    public ErrorResponse handleOtherException(final Throwable e) {
+    public ErrorResponse handleOtherException(final Throwable e, final HttpServletResponse response) throws Throwable {
+        if (response.isCommitted()) {
+            log.error("Ошибка после начала ответа, ответ оборван {}", e.getMessage(), e);
+            throw e;
+        }
         log.error("Получен статус 500 SERVER_ERROR {}", e.getMessage(), e);
         return new ErrorResponse(e.getMessage());
     }
@@ -0,0 +1,4 @@
+package ru.practicum.repository;
+
+record AppUri(String app, String uri) {
+}
@@ -0,0 +1,150 @@
+package ru.practicum.repository;
+
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.StatRequest;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewsStatsRequest;
+import ru.practicum.mapper.ViewStatsMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Точный подсчет уникальных IP через сжатые битовые карты закодированных адресов по (app, uri, день):
+ * полные дни объединяются операцией OR, неполные края диапазона дочитываются из сырых строк
+ **/
+@Component
+@ConditionalOnProperty(name = "stats.repository", havingValue = "bitmap")
+public class BitmapStatsRepository extends StatsRepositoryImpl {
+    private final JdbcTemplate jdbcTemplate;
+    private final SketchStore sketchStore;
+    private final IpEncoder ipEncoder;
+
+    public BitmapStatsRepository(JdbcTemplate jdbcTemplate, ViewStatsMapper viewStatsMapper, SqlDialect sqlDialect,
+                                 SketchStore sketchStore, DimensionDictionary dimensions, ColdStore coldStore,
+                                 WriteWatermark writeWatermark, StatsRepositorySettings settings, IpEncoder ipEncoder) {
+        super(jdbcTemplate, viewStatsMapper, sqlDialect, sketchStore, dimensions, coldStore, writeWatermark, settings);
+        this.jdbcTemplate = jdbcTemplate;
+        this.sketchStore = sketchStore;
+        this.ipEncoder = ipEncoder;
+    }
+
+    @Override
+    @Transactional
+    public void saveHit(StatRequest hit) {
+        super.saveHit(hit);
+        updateBitmaps(List.of(hit));
+    }
+
+    @Override
+    @Transactional
+    public void saveHits(List<StatRequest> hits) {
+        super.saveHits(hits);
+        updateBitmaps(hits);
+    }
+
+    @Override
+    public List<ViewStats> getUniqueStats(ViewsStatsRequest request) {
+        RollupPlan plan = RollupPlan.ofBuckets(request.getStart(), request.getEnd(), ChronoUnit.DAYS);
+        if (!plan.usesRollups()) {
+            return super.getUniqueStats(request);
+        }
+        UriFilter uriFilter = createUriFilter(request.getUri());
+        Map<AppUri, Roaring64NavigableMap> bitmaps = new HashMap<>();
+        RollupPlan.Range days = plan.getBucketRanges().get(0);
+        sketchStore.load("stats_ip_bitmap", days.from(), days.to(), uriFilter, (app, uri, sketch) ->
+                bitmaps.merge(new AppUri(app, uri), fromBytes(sketch), (stored, loaded) -> {
+                    stored.or(loaded);
+                    return stored;
+                }));
+        Map<AppUri, Set<String>> edgeIps = new HashMap<>();
+        jdbcTemplate.query(createRawEdgesQuery(true, uriFilter),
+                rs -> {
+                    edgeIps.computeIfAbsent(new AppUri(rs.getString("app"), rs.getString("uri")),
+                            key -> new HashSet<>()).add(IpCodec.decode(rs.getBytes("ip")));
+                },
+                rawEdgeParams(plan, uriFilter));
+        scanColdEdges(plan, request.getUri(), (time, app, uri, ip) -> edgeIps.computeIfAbsent(new AppUri(app, uri),
+                key -> new HashSet<>()).add(ip));
+        ToLongFunction<String> encoder = ipEncoder.encoder(edgeIps.values().stream()
+                .flatMap(Set::stream)
+                .collect(Collectors.toSet()));
+        edgeIps.forEach((appUri, ips) -> {
+            Roaring64NavigableMap bitmap = bitmaps.computeIfAbsent(appUri, key -> new Roaring64NavigableMap());
+            ips.forEach(ip -> bitmap.addLong(encoder.applyAsLong(ip)));
+        });
+        return bitmaps.entrySet().stream()
+                .map(e -> ViewStats.builder()
+                        .app(e.getKey().app())
+                        .uri(e.getKey().uri())
+                        .hits(e.getValue().getLongCardinality())
+                        .build())
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .limit(request.getLimit() == null ? Long.MAX_VALUE : request.getLimit())
+                .toList();
+    }
+
+    @Override
+    public void streamStats(ViewsStatsRequest request, Consumer<ViewStats> consumer) {
+        if (Boolean.TRUE.equals(request.getUnique()) && !Boolean.TRUE.equals(request.getApproximate())) {
+            getUniqueStats(request).forEach(consumer);
+            return;
+        }
+        super.streamStats(request, consumer);
+    }
+
+    private void updateBitmaps(List<StatRequest> hits) {
+        ToLongFunction<String> encoder = ipEncoder.encoder(hits.stream().map(StatRequest::getIp).toList());
+        Map<BucketKey, Roaring64NavigableMap> bitmaps = new HashMap<>();
+        for (StatRequest hit : hits) {
+            bitmaps.computeIfAbsent(new BucketKey(hit.getApp(), hit.getUri(), hit.getTimestamp().truncatedTo(ChronoUnit.DAYS)),
+                    key -> new Roaring64NavigableMap()).addLong(encoder.applyAsLong(hit.getIp()));
+        }
+        Map<BucketKey, byte[]> serialized = new HashMap<>();
+        bitmaps.forEach((key, bitmap) -> serialized.put(key, toBytes(bitmap)));
+        sketchStore.merge("stats_ip_bitmap", serialized, (stored, added) -> {
+            Roaring64NavigableMap result = fromBytes(stored);
+            result.or(fromBytes(added));
+            return toBytes(result);
+        });
+    }
+
+    private static byte[] toBytes(Roaring64NavigableMap bitmap) {
+        bitmap.runOptimize();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            bitmap.serialize(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Roaring64NavigableMap fromBytes(byte[] bytes) {
+        Roaring64NavigableMap bitmap = new Roaring64NavigableMap();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            bitmap.deserialize(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,18 @@
+package ru.practicum.repository;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+/**
+ * Ключ корзины свертки. Ключи сортируются, чтобы параллельные пачки блокировали строки в одном порядке
+ **/
+public record BucketKey(String app, String uri, LocalDateTime bucket) implements Comparable<BucketKey> {
+    private static final Comparator<BucketKey> ORDER = Comparator.comparing(BucketKey::app)
+            .thenComparing(BucketKey::uri)
+            .thenComparing(BucketKey::bucket);
+
+    @Override
+    public int compareTo(BucketKey other) {
+        return ORDER.compare(this, other);
+    }
+}
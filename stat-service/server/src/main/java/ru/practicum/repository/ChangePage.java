@@ -0,0 +1,11 @@
+package ru.practicum.repository;
+
+import ru.practicum.ViewStats;
+
+import java.util.List;
+
+/**
+ * Страница ленты изменений: приращения просмотров за строки с id в (предыдущий курсор, cursor]
+ **/
+public record ChangePage(long cursor, boolean hasMore, List<ViewStats> changes) {
+}
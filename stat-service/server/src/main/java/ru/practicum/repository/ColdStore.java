@@ -0,0 +1,234 @@
+package ru.practicum.repository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.cold.ColumnarFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/**
+ * Холодный ярус: hit старше stats.cold.age-days дней переносятся из stats в колоночные файлы, по файлу на день.
+ * Каждая строка хранится ровно в одном ярусе, поэтому запросы складывают результаты обоих.
+ * Файл сначала целиком записывается на диск и только затем строки удаляются из stats; если процесс упал
+ * между этими шагами, удаление повторяется при запуске. Hit, пришедшие задним числом старше горизонта,
+ * читаются из stats и уходят в отдельный файл при следующем переносе
+ **/
+@Slf4j
+@Component
+@ConditionalOnJdbcStore
+public class ColdStore {
+    private static final String FILE_PREFIX = "cold-";
+    private static final String FILE_SUFFIX = ".col";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final String SELECT_ROWS = "SELECT h.id, a.name AS app, u.uri AS uri, h.ip, h.created FROM stats AS h "
+            + StatsRepositoryImpl.RAW_NAMES + " WHERE h.created >= ? AND h.created < ? AND h.id <= ? ORDER BY h.created";
+    private static final String DELETE_ROWS = "DELETE FROM stats WHERE created >= ? AND created < ? AND id <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final Path directory;
+    private final int ageDays;
+    private final int retentionMonths;
+    private final List<ColumnarFile> files = new CopyOnWriteArrayList<>();
+
+    private volatile LocalDateTime horizon;
+    private volatile long movedMaxId;
+    private long nextFileNumber;
+
+    public ColdStore(JdbcTemplate jdbcTemplate,
+                     @Value("${stats.cold.enabled:false}") boolean enabled,
+                     @Value("${stats.cold.dir:./stats-cold}") String directory,
+                     @Value("${stats.cold.age-days:21}") int ageDays,
+                     @Value("${stats.retention.months:0}") int retentionMonths) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.ageDays = ageDays;
+        this.retentionMonths = retentionMonths;
+    }
+
+    @PostConstruct
+    public synchronized void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Path> paths;
+        try (Stream<Path> list = Files.list(directory)) {
+            paths = list.filter(path -> path.getFileName().toString().startsWith(FILE_PREFIX)).sorted().toList();
+        }
+        for (Path path : paths) {
+            if (path.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                Files.delete(path);
+                continue;
+            }
+            ColumnarFile file = ColumnarFile.open(path);
+            files.add(file);
+            deleteHot(file.getMeta());
+            advanceHorizon(fromMicros(file.getMeta().to()));
+            movedMaxId = Math.max(movedMaxId, file.getMeta().maxId());
+            nextFileNumber = Math.max(nextFileNumber, fileNumber(path) + 1);
+        }
+        log.info("Холодный ярус {}: {} файлов, горизонт {}", directory, files.size(), horizon);
+    }
+
+    /**
+     * Могут ли в холодном ярусе быть hit не раньше time
+     **/
+    public boolean covers(LocalDateTime time) {
+        LocalDateTime current = horizon;
+        return current != null && time.isBefore(current);
+    }
+
+    /**
+     * Наибольший id строки stats, перенесенной в холодный ярус; строк с большим id в файлах нет
+     **/
+    public long getMovedMaxId() {
+        return movedMaxId;
+    }
+
+    /**
+     * Передает hit холодного яруса со временем в [from, to] или [from, to); uris - фильтр, пустой или null - без фильтра
+     **/
+    public void scan(LocalDateTime from, LocalDateTime to, boolean inclusive, List<String> uris,
+                     ColumnarFile.RowHandler handler) {
+        if (!covers(from)) {
+            return;
+        }
+        long fromMicros = toMicros(from);
+        long toMicros = toMicros(to) + (inclusive ? 1 : 0);
+        List<String> filter = uris == null ? List.of() : uris;
+        try {
+            for (ColumnarFile file : files) {
+                if (file.overlaps(fromMicros, toMicros)) {
+                    file.scan(fromMicros, toMicros, filter, handler);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать холодный ярус статистики", e);
+        }
+    }
+
+    /**
+     * Переносит в файлы полные дни старше stats.cold.age-days и hit, пришедшие задним числом старше горизонта
+     **/
+    @Scheduled(cron = "${stats.cold.cron:0 45 3 * * *}")
+    public synchronized void compact() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM stats", Long.class);
+        if (maxId != null) {
+            if (horizon != null) {
+                Loaded late = loadRows(EPOCH, horizon, maxId);
+                if (!late.rows().isEmpty()) {
+                    moveRows(late, late.rows().get(0).time(), late.rows().get(late.rows().size() - 1).time() + 1);
+                }
+            }
+            LocalDateTime cutoff = LocalDate.now().minusDays(ageDays).atStartOfDay();
+            LocalDateTime day = horizon;
+            if (day == null) {
+                Timestamp oldest = jdbcTemplate.queryForObject("SELECT MIN(created) FROM stats", Timestamp.class);
+                day = oldest == null ? cutoff : oldest.toLocalDateTime().truncatedTo(ChronoUnit.DAYS);
+            }
+            for (; day.isBefore(cutoff); day = day.plusDays(1)) {
+                moveRows(loadRows(day, day.plusDays(1), maxId), toMicros(day), toMicros(day.plusDays(1)));
+                advanceHorizon(day.plusDays(1));
+            }
+        }
+        purgeExpired();
+    }
+
+    /**
+     * Строки за [from, to) с id не больше maxId; в Loaded.maxId - наибольший из прочитанных id
+     **/
+    private Loaded loadRows(LocalDateTime from, LocalDateTime to, long maxId) {
+        long[] loadedMaxId = new long[1];
+        List<ColumnarFile.Row> rows = jdbcTemplate.query(SELECT_ROWS, (rs, rowNum) -> {
+                    loadedMaxId[0] = Math.max(loadedMaxId[0], rs.getLong("id"));
+                    return new ColumnarFile.Row(
+                            toMicros(rs.getTimestamp("created").toLocalDateTime()),
+                            rs.getString("app"),
+                            rs.getString("uri"),
+                            IpCodec.decode(rs.getBytes("ip")));
+                },
+                Timestamp.valueOf(from), Timestamp.valueOf(to), maxId);
+        return new Loaded(rows, loadedMaxId[0]);
+    }
+
+    private void moveRows(Loaded loaded, long from, long to) throws IOException {
+        ColumnarFile.Meta meta = new ColumnarFile.Meta(from, to, loaded.maxId());
+        Path path = directory.resolve(String.format("%s%012d%s", FILE_PREFIX, nextFileNumber++, FILE_SUFFIX));
+        Path temp = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+        ColumnarFile.write(temp, meta, loaded.rows());
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        files.add(ColumnarFile.open(path));
+        movedMaxId = Math.max(movedMaxId, meta.maxId());
+        int deleted = deleteHot(meta);
+        log.info("Холодный ярус: {} hit за [{}, {}) перенесены в {} ({} байт)", deleted, fromMicros(from),
+                fromMicros(to), path.getFileName(), Files.size(path));
+    }
+
+    private int deleteHot(ColumnarFile.Meta meta) {
+        return jdbcTemplate.update(DELETE_ROWS, Timestamp.valueOf(fromMicros(meta.from())),
+                Timestamp.valueOf(fromMicros(meta.to())), meta.maxId());
+    }
+
+    private void purgeExpired() throws IOException {
+        if (retentionMonths <= 0) {
+            return;
+        }
+        long cutoff = toMicros(YearMonth.now().minusMonths(retentionMonths).atDay(1).atStartOfDay());
+        for (ColumnarFile file : files) {
+            if (file.getMeta().to() <= cutoff) {
+                files.remove(file);
+                Files.deleteIfExists(file.getPath());
+                log.info("Удален файл холодного яруса {} по сроку хранения", file.getPath().getFileName());
+            }
+        }
+    }
+
+    private void advanceHorizon(LocalDateTime time) {
+        if (horizon == null || horizon.isBefore(time)) {
+            horizon = time;
+        }
+    }
+
+    private static long toMicros(LocalDateTime time) {
+        return ChronoUnit.MICROS.between(EPOCH, time);
+    }
+
+    static LocalDateTime fromMicros(long micros) {
+        return EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+
+    private static long fileNumber(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private record Loaded(List<ColumnarFile.Row> rows, long maxId) {
+    }
+}
@@ -0,0 +1,19 @@
+package ru.practicum.repository;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Компонент нужен только хранилищам на базе данных (jdbc, bitmap и counting) и не создается при stats.repository=segment
+ **/
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+@ConditionalOnExpression("'${stats.repository:jdbc}' != 'segment'")
+public @interface ConditionalOnJdbcStore {
+}
@@ -0,0 +1,249 @@
+package ru.practicum.repository;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.StatRequest;
+import ru.practicum.StatsQuery;
+import ru.practicum.StatsQueryResult;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewStatsSeries;
+import ru.practicum.ViewsStatsRequest;
+import ru.practicum.exceptions.BadRequestException;
+import ru.practicum.mapper.ViewStatsMapper;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Режим подсчета: сырые hit не сохраняются, просмотры копятся в памяти в LongAdder по (app, uri, минута)
+ * и раз в stats.counting.flush-interval-ms дописываются приращениями в stats_minute и stats_hour.
+ * getStats складывает записанные счетчики с еще не сброшенными приращениями. Точность - минута: hit учитывается,
+ * если начало его минуты попадает в [start, end]. Уникальные IP не считаются; при аварийной остановке
+ * теряются приращения за последний интервал
+ **/
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.repository", havingValue = "counting")
+public class CountingStatsRepository extends StatsRepositoryImpl {
+    private final TransactionTemplate transactionTemplate;
+    private final int retainMinutes;
+    private final Map<BucketKey, Counter> counters = new ConcurrentHashMap<>();
+    private final List<Counter> retired = new CopyOnWriteArrayList<>();
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+    public CountingStatsRepository(JdbcTemplate jdbcTemplate, ViewStatsMapper viewStatsMapper, SqlDialect sqlDialect,
+                                   SketchStore sketchStore, DimensionDictionary dimensions, ColdStore coldStore,
+                                   WriteWatermark writeWatermark, StatsRepositorySettings settings,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${stats.counting.retain-minutes:5}") int retainMinutes) {
+        super(jdbcTemplate, viewStatsMapper, sqlDialect, sketchStore, dimensions, coldStore, writeWatermark, settings);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.retainMinutes = retainMinutes;
+    }
+
+    /**
+     * Запись не ходит в базу, поэтому транзакция, объявленная в родителе, не открывается
+     **/
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void saveHit(StatRequest hit) {
+        counter(hit).adder.increment();
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void saveHits(List<StatRequest> hits) {
+        hits.forEach(hit -> counter(hit).adder.increment());
+    }
+
+    @Override
+    public List<ViewStats> getStats(ViewsStatsRequest request) {
+        LocalDateTime floor = request.getStart().truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime first = floor.isBefore(request.getStart()) ? floor.plusMinutes(1) : floor;
+        LocalDateTime last = request.getEnd().truncatedTo(ChronoUnit.MINUTES);
+        if (last.isBefore(first)) {
+            return List.of();
+        }
+        ViewsStatsRequest minutes = request.toBuilder()
+                .start(first)
+                .end(last.plusMinutes(1))
+                .limit(null)
+                .build();
+        Set<String> uris = request.getUri() == null ? Set.of() : new HashSet<>(request.getUri());
+        Map<AppUri, Long> hits = new HashMap<>();
+        flushLock.readLock().lock();
+        try {
+            super.getStats(minutes).forEach(stats ->
+                    hits.merge(new AppUri(stats.getApp(), stats.getUri()), stats.getHits(), Long::sum));
+            Consumer<Counter> addPending = counter -> {
+                BucketKey key = counter.key;
+                long pending = counter.pending();
+                if (pending > 0 && !key.bucket().isBefore(first) && !key.bucket().isAfter(last)
+                        && (uris.isEmpty() || uris.contains(key.uri()))) {
+                    hits.merge(new AppUri(key.app(), key.uri()), pending, Long::sum);
+                }
+            };
+            counters.values().forEach(addPending);
+            retired.forEach(addPending);
+        } finally {
+            flushLock.readLock().unlock();
+        }
+        return toViewStats(hits, request);
+    }
+
+    @Override
+    public List<ViewStats> getUniqueStats(ViewsStatsRequest request) {
+        throw uniqueUnsupported();
+    }
+
+    @Override
+    public List<ViewStats> getApproxUniqueStats(ViewsStatsRequest request) {
+        throw uniqueUnsupported();
+    }
+
+    @Override
+    public void streamStats(ViewsStatsRequest request, Consumer<ViewStats> consumer) {
+        if (Boolean.TRUE.equals(request.getUnique())) {
+            throw uniqueUnsupported();
+        }
+        getStats(request).forEach(consumer);
+    }
+
+    @Override
+    public List<ViewStatsSeries> getTimeSeries(ViewsStatsRequest request, ChronoUnit bucket) {
+        throw uniqueUnsupported();
+    }
+
+    /**
+     * Свертки не содержат несброшенных приращений, поэтому запросы выполняются по одному через getStats
+     **/
+    @Override
+    public List<StatsQueryResult> getBatchStats(List<StatsQuery> queries) {
+        return queries.stream().map(this::getQueryStats).toList();
+    }
+
+    @Override
+    public ChangePage getChanges(long after, int maxRows) {
+        throw new BadRequestException("В режиме подсчета (stats.repository=counting) лента изменений недоступна");
+    }
+
+    /**
+     * Дописывает накопленные приращения в свертки одной транзакцией. Счетчики не обнуляются, а помнят
+     * записанную сумму, поэтому инкременты во время сброса не теряются. Счетчики минут старше
+     * stats.counting.retain-minutes без новых hit убираются из таблицы, но еще retain-minutes проверяются
+     * при сбросе на случай запоздалого инкремента
+     **/
+    @Scheduled(fixedDelayString = "${stats.counting.flush-interval-ms:1000}")
+    public synchronized void flush() {
+        Map<BucketKey, Long> minutes = new TreeMap<>();
+        Map<BucketKey, Long> hours = new TreeMap<>();
+        List<Counter> flushed = new ArrayList<>();
+        List<Long> sums = new ArrayList<>();
+        flushLock.writeLock().lock();
+        try {
+            for (Counter counter : counters.values()) {
+                collect(counter, minutes, hours, flushed, sums);
+            }
+            for (Counter counter : retired) {
+                collect(counter, minutes, hours, flushed, sums);
+            }
+            if (!flushed.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    upsertRollup("stats_minute", minutes);
+                    upsertRollup("stats_hour", hours);
+                });
+                for (int i = 0; i < flushed.size(); i++) {
+                    flushed.get(i).flushed = sums.get(i);
+                }
+            }
+            evict(LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES).minusMinutes(retainMinutes));
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+        log.info("Режим подсчета: приращения сброшены при остановке");
+    }
+
+    private Counter counter(StatRequest hit) {
+        BucketKey key = new BucketKey(hit.getApp(), hit.getUri(), hit.getTimestamp().truncatedTo(ChronoUnit.MINUTES));
+        Counter counter = counters.get(key);
+        return counter != null ? counter : counters.computeIfAbsent(key, Counter::new);
+    }
+
+    private void collect(Counter counter, Map<BucketKey, Long> minutes, Map<BucketKey, Long> hours,
+                         List<Counter> flushed, List<Long> sums) {
+        long sum = counter.adder.sum();
+        long delta = sum - counter.flushed;
+        if (delta <= 0) {
+            return;
+        }
+        BucketKey key = counter.key;
+        minutes.merge(key, delta, Long::sum);
+        hours.merge(new BucketKey(key.app(), key.uri(), key.bucket().truncatedTo(ChronoUnit.HOURS)), delta, Long::sum);
+        flushed.add(counter);
+        sums.add(sum);
+    }
+
+    private void evict(LocalDateTime oldest) {
+        LocalDateTime now = LocalDateTime.now();
+        retired.removeIf(counter -> counter.retiredAt.plusMinutes(retainMinutes).isBefore(now)
+                && counter.pending() == 0);
+        counters.values().removeIf(counter -> {
+            if (counter.key.bucket().isBefore(oldest) && counter.pending() == 0) {
+                counter.retiredAt = now;
+                retired.add(counter);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static BadRequestException uniqueUnsupported() {
+        return new BadRequestException("В режиме подсчета (stats.repository=counting) сырые hit не хранятся, "
+                + "уникальные IP и временные ряды недоступны");
+    }
+
+    /**
+     * Счетчик минуты: flushed - сумма, уже записанная в свертки
+     **/
+    private static class Counter {
+        private final BucketKey key;
+        private final LongAdder adder = new LongAdder();
+        private volatile long flushed;
+        private volatile LocalDateTime retiredAt;
+
+        Counter(BucketKey key) {
+            this.key = key;
+        }
+
+        long pending() {
+            return adder.sum() - flushed;
+        }
+    }
+}
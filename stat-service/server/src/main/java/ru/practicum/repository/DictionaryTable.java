@@ -0,0 +1,83 @@
+package ru.practicum.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Таблица-словарь строк с уникальным column и числовым id типа idType, с кэшем известных номеров в памяти
+ **/
+class DictionaryTable<T extends Number> {
+    private static final int LOOKUP_CHUNK = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String table;
+    private final String column;
+    private final Class<T> idType;
+    private final String insertIfAbsentQuery;
+    private final Map<String, T> cache = new ConcurrentHashMap<>();
+
+    DictionaryTable(JdbcTemplate jdbcTemplate, SqlDialect sqlDialect, String table, String column, Class<T> idType) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.table = table;
+        this.column = column;
+        this.idType = idType;
+        this.insertIfAbsentQuery = sqlDialect.isPostgres()
+                ? "INSERT INTO " + table + " (" + column + ") VALUES (?) ON CONFLICT (" + column + ") DO NOTHING"
+                : "MERGE INTO " + table + " AS d USING (VALUES (CAST(? AS VARCHAR(255)))) AS v (val) "
+                + "ON d." + column + " = v.val WHEN NOT MATCHED THEN INSERT (" + column + ") VALUES (v.val)";
+    }
+
+    /**
+     * Номера значений; промахи кэша вставляются и читаются на соединении текущей транзакции до записи hit.
+     * Новые значения вставляются в порядке сортировки, чтобы параллельные пачки не ждали друг друга крест-накрест;
+     * значение, вставленное еще не зафиксированной транзакцией, другие писатели ждут до ее фиксации.
+     * В кэш номера попадают только после фиксации транзакции: откат не оставит в кэше номер, которого нет в базе
+     **/
+    Map<String, T> resolve(Collection<String> values) {
+        Map<String, T> ids = new HashMap<>();
+        List<String> missing = new TreeSet<>(values).stream()
+                .filter(value -> {
+                    T id = cache.get(value);
+                    if (id != null) {
+                        ids.put(value, id);
+                    }
+                    return id == null;
+                })
+                .toList();
+        if (missing.isEmpty()) {
+            return ids;
+        }
+        jdbcTemplate.batchUpdate(insertIfAbsentQuery, missing, missing.size(), (ps, value) -> ps.setString(1, value));
+        Map<String, T> loaded = new HashMap<>();
+        for (int from = 0; from < missing.size(); from += LOOKUP_CHUNK) {
+            List<String> chunk = missing.subList(from, Math.min(from + LOOKUP_CHUNK, missing.size()));
+            jdbcTemplate.query("SELECT id, " + column + " FROM " + table + " WHERE " + column + " IN ("
+                            + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")",
+                    rs -> {
+                        loaded.put(rs.getString(2), rs.getObject(1, idType));
+                    },
+                    chunk.toArray());
+        }
+        ids.putAll(loaded);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    loaded.forEach(cache::putIfAbsent);
+                }
+            });
+        } else {
+            loaded.forEach(cache::putIfAbsent);
+        }
+        return ids;
+    }
+}
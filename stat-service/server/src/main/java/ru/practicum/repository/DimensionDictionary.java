@@ -0,0 +1,40 @@
+package ru.practicum.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Словари измерений stats_app и stats_uri: строка заменяется целым номером.
+ * Известные номера берутся из кэша в памяти, в базу запись идет только за новыми значениями ({@link DictionaryTable})
+ **/
+@Component
+@ConditionalOnJdbcStore
+public class DimensionDictionary {
+    private final DictionaryTable<Integer> apps;
+    private final DictionaryTable<Integer> uris;
+
+    public DimensionDictionary(JdbcTemplate jdbcTemplate, SqlDialect sqlDialect) {
+        this.apps = new DictionaryTable<>(jdbcTemplate, sqlDialect, "stats_app", "name", Integer.class);
+        this.uris = new DictionaryTable<>(jdbcTemplate, sqlDialect, "stats_uri", "uri", Integer.class);
+    }
+
+    public int appId(String app) {
+        return appIds(List.of(app)).get(app);
+    }
+
+    public int uriId(String uri) {
+        return uriIds(List.of(uri)).get(uri);
+    }
+
+    public Map<String, Integer> appIds(Collection<String> values) {
+        return apps.resolve(values);
+    }
+
+    public Map<String, Integer> uriIds(Collection<String> values) {
+        return uris.resolve(values);
+    }
+}
@@ -0,0 +1,141 @@
+package ru.practicum.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Компактное хранение IP в столбце stats.ip: первый байт - тег формата (4 - IPv4, 6 - IPv6, 0 - строка),
+ * далее 4 или 16 байт адреса либо UTF-8 исходной строки. В двоичном виде хранятся только адреса,
+ * записанные канонически, поэтому декодирование всегда возвращает исходную строку
+ **/
+public final class IpCodec {
+    private static final byte TAG_STRING = 0;
+    private static final byte TAG_IPV4 = 4;
+    private static final byte TAG_IPV6 = 6;
+
+    private IpCodec() {
+    }
+
+    public static byte[] encode(String ip) {
+        long ipv4 = IpEncoder.parseIpv4(ip);
+        if (ipv4 >= 0 && formatIpv4(ipv4).equals(ip)) {
+            return ByteBuffer.allocate(5).put(TAG_IPV4).putInt((int) ipv4).array();
+        }
+        int[] ipv6 = parseIpv6(ip);
+        if (ipv6 != null && formatIpv6(ipv6).equals(ip)) {
+            ByteBuffer buffer = ByteBuffer.allocate(17).put(TAG_IPV6);
+            for (int group : ipv6) {
+                buffer.putShort((short) group);
+            }
+            return buffer.array();
+        }
+        byte[] text = ip.getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[text.length + 1];
+        result[0] = TAG_STRING;
+        System.arraycopy(text, 0, result, 1, text.length);
+        return result;
+    }
+
+    public static String decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+        return switch (bytes[0]) {
+            case TAG_IPV4 -> formatIpv4(Integer.toUnsignedLong(buffer.getInt()));
+            case TAG_IPV6 -> {
+                int[] groups = new int[8];
+                for (int i = 0; i < groups.length; i++) {
+                    groups[i] = Short.toUnsignedInt(buffer.getShort());
+                }
+                yield formatIpv6(groups);
+            }
+            default -> new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+        };
+    }
+
+    private static String formatIpv4(long ip) {
+        return (ip >>> 24) + "." + ((ip >>> 16) & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF);
+    }
+
+    /**
+     * Разбор IPv6 без встроенного IPv4 и без обращения к DNS; null, если строка не является адресом
+     **/
+    static int[] parseIpv6(String ip) {
+        int gap = ip.indexOf("::");
+        if (gap >= 0 && ip.indexOf("::", gap + 1) >= 0) {
+            return null;
+        }
+        int[] head = parseGroups(gap >= 0 ? ip.substring(0, gap) : ip);
+        int[] tail = gap >= 0 ? parseGroups(ip.substring(gap + 2)) : new int[0];
+        if (head == null || tail == null) {
+            return null;
+        }
+        int length = head.length + tail.length;
+        if (gap >= 0 ? length > 7 : length != 8) {
+            return null;
+        }
+        int[] groups = new int[8];
+        System.arraycopy(head, 0, groups, 0, head.length);
+        System.arraycopy(tail, 0, groups, 8 - tail.length, tail.length);
+        return groups;
+    }
+
+    private static int[] parseGroups(String part) {
+        if (part.isEmpty()) {
+            return new int[0];
+        }
+        String[] tokens = part.split(":", -1);
+        int[] groups = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (token.isEmpty() || token.length() > 4) {
+                return null;
+            }
+            for (int j = 0; j < token.length(); j++) {
+                if (Character.digit(token.charAt(j), 16) < 0) {
+                    return null;
+                }
+            }
+            groups[i] = Integer.parseInt(token, 16);
+        }
+        return groups;
+    }
+
+    /**
+     * Каноническая запись по RFC 5952: строчные цифры без ведущих нулей,
+     * самая длинная серия из двух и более нулевых групп сокращается до ::
+     **/
+    static String formatIpv6(int[] groups) {
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < groups.length; ) {
+            if (groups[i] != 0) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < groups.length && groups[i] == 0) {
+                i++;
+            }
+            if (i - start > bestLength) {
+                bestStart = start;
+                bestLength = i - start;
+            }
+        }
+        if (bestStart < 0) {
+            return join(groups);
+        }
+        return join(Arrays.copyOfRange(groups, 0, bestStart)) + "::"
+                + join(Arrays.copyOfRange(groups, bestStart + bestLength, groups.length));
+    }
+
+    private static String join(int[] groups) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < groups.length; i++) {
+            if (i > 0) {
+                result.append(':');
+            }
+            result.append(Integer.toHexString(groups[i]));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package ru.practicum.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Кодирование IP в числа для битовых карт: IPv4 кодируется своим значением,
+ * остальные адреса получают номер из словаря stats_ip_dict, сдвинутый за пределы диапазона IPv4
+ **/
+@Component
+@ConditionalOnJdbcStore
+public class IpEncoder {
+    private static final long DICTIONARY_OFFSET = 1L << 32;
+
+    private final DictionaryTable<Long> dictionary;
+
+    public IpEncoder(JdbcTemplate jdbcTemplate, SqlDialect sqlDialect) {
+        this.dictionary = new DictionaryTable<>(jdbcTemplate, sqlDialect, "stats_ip_dict", "ip", Long.class);
+    }
+
+    /**
+     * Кодировщик для заданного набора адресов: номера адресов не IPv4 получаются заранее, одним проходом
+     **/
+    public ToLongFunction<String> encoder(Collection<String> ips) {
+        Map<String, Long> ids = dictionary.resolve(ips.stream().filter(ip -> parseIpv4(ip) < 0).toList());
+        return ip -> {
+            long ipv4 = parseIpv4(ip);
+            return ipv4 >= 0 ? ipv4 : DICTIONARY_OFFSET + ids.get(ip);
+        };
+    }
+
+    static long parseIpv4(String ip) {
+        long result = 0;
+        int octets = 0;
+        int value = -1;
+        for (int i = 0; i <= ip.length(); i++) {
+            char c = i < ip.length() ? ip.charAt(i) : '.';
+            if (c == '.') {
+                if (value < 0 || ++octets > 4) {
+                    return -1;
+                }
+                result = (result << 8) | value;
+                value = -1;
+            } else if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        return octets == 4 ? result : -1;
+    }
+}
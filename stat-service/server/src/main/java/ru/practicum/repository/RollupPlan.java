@@ -0,0 +1,89 @@
+package ru.practicum.repository;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Разбиение интервала [start, end] на полные часовые и минутные корзины и неполные края,
+ * которые считаются по сырым строкам. Корзина b покрывает полуинтервал [b, b + размер корзины)
+ **/
+@Getter
+public class RollupPlan {
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+    private final List<Range> hourRanges = new ArrayList<>();
+    private final List<Range> minuteRanges = new ArrayList<>();
+    private final List<Range> bucketRanges = new ArrayList<>();
+    private Range rawHead;
+    private Range rawTail;
+
+    private RollupPlan(LocalDateTime start, LocalDateTime end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public static RollupPlan of(LocalDateTime start, LocalDateTime end) {
+        RollupPlan plan = new RollupPlan(start, end);
+        LocalDateTime firstMinute = ceil(start, ChronoUnit.MINUTES);
+        LocalDateTime lastMinute = end.truncatedTo(ChronoUnit.MINUTES);
+        if (!firstMinute.isBefore(lastMinute)) {
+            plan.rawTail = new Range(start, end);
+            return plan;
+        }
+        plan.rawHead = new Range(start, firstMinute);
+        plan.rawTail = new Range(lastMinute, end);
+
+        LocalDateTime firstHour = ceil(firstMinute, ChronoUnit.HOURS);
+        LocalDateTime lastHour = lastMinute.truncatedTo(ChronoUnit.HOURS);
+        if (firstHour.isBefore(lastHour)) {
+            plan.hourRanges.add(new Range(firstHour, lastHour));
+            plan.addMinuteRange(firstMinute, firstHour);
+            plan.addMinuteRange(lastHour, lastMinute);
+        } else {
+            plan.addMinuteRange(firstMinute, lastMinute);
+        }
+        return plan;
+    }
+
+    /**
+     * План из полных корзин одного размера и сырых краев, для скетчей, которые хранятся по часам или дням
+     **/
+    public static RollupPlan ofBuckets(LocalDateTime start, LocalDateTime end, ChronoUnit unit) {
+        RollupPlan plan = new RollupPlan(start, end);
+        LocalDateTime first = ceil(start, unit);
+        LocalDateTime last = end.truncatedTo(unit);
+        if (!first.isBefore(last)) {
+            plan.rawTail = new Range(start, end);
+            return plan;
+        }
+        plan.rawHead = new Range(start, first);
+        plan.rawTail = new Range(last, end);
+        plan.bucketRanges.add(new Range(first, last));
+        return plan;
+    }
+
+    public boolean usesRollups() {
+        return !minuteRanges.isEmpty() || !hourRanges.isEmpty() || !bucketRanges.isEmpty();
+    }
+
+    private void addMinuteRange(LocalDateTime from, LocalDateTime to) {
+        if (from.isBefore(to)) {
+            minuteRanges.add(new Range(from, to));
+        }
+    }
+
+    private static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime truncated = time.truncatedTo(unit);
+        return truncated.equals(time) ? time : truncated.plus(1, unit);
+    }
+
+    /**
+     * Полуинтервал [from, to); для rawTail правая граница включается
+     **/
+    public record Range(LocalDateTime from, LocalDateTime to) {
+    }
+}
@@ -0,0 +1,304 @@
+package ru.practicum.repository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.StatRequest;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewStatsSeries;
+import ru.practicum.ViewsStatsRequest;
+import ru.practicum.exceptions.BadRequestException;
+import ru.practicum.segment.Segment;
+import ru.practicum.segment.SegmentDictionary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище без базы данных для edge-развертываний: hit дописываются в файлы сегментов фиксированного
+ * формата, сегмент закрывается по заполнению или возрасту. Запросы читают только сегменты, пересекающиеся
+ * с интервалом, параллельно по сегментам. При запуске поврежденные хвосты сегментов отбрасываются
+ **/
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.repository", havingValue = "segment")
+public class SegmentStatsRepository implements StatsRepository {
+    private static final String DICTIONARY_FILE = "dictionary.dat";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final long rollIntervalMs;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final Object appendLock = new Object();
+
+    private SegmentDictionary dictionary;
+    private Segment active;
+    private long nextSegmentNumber;
+
+    public SegmentStatsRepository(@Value("${stats.segment.dir:./stats-segments}") String directory,
+                                  @Value("${stats.segment.records-per-segment:1048576}") int recordsPerSegment,
+                                  @Value("${stats.segment.roll-interval-ms:3600000}") long rollIntervalMs) {
+        this.directory = Paths.get(directory);
+        this.recordsPerSegment = recordsPerSegment;
+        this.rollIntervalMs = rollIntervalMs;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        dictionary = SegmentDictionary.open(directory.resolve(DICTIONARY_FILE));
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted()
+                    .toList();
+        }
+        for (Path file : files) {
+            segments.add(Segment.recover(file));
+            nextSegmentNumber = Math.max(nextSegmentNumber, segmentNumber(file) + 1);
+        }
+        log.info("Сегментное хранилище {}: восстановлено {} сегментов", directory, segments.size());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            for (Segment segment : segments) {
+                segment.close();
+            }
+            dictionary.close();
+        }
+    }
+
+    @Override
+    public void saveHit(StatRequest hit) {
+        saveHits(List.of(hit));
+    }
+
+    @Override
+    public void saveHits(List<StatRequest> hits) {
+        int[] apps = new int[hits.size()];
+        int[] uris = new int[hits.size()];
+        int[] ips = new int[hits.size()];
+        long[] times = new long[hits.size()];
+        for (int i = 0; i < hits.size(); i++) {
+            StatRequest hit = hits.get(i);
+            apps[i] = dictionary.id(hit.getApp());
+            uris[i] = dictionary.id(hit.getUri());
+            ips[i] = dictionary.id(hit.getIp());
+            times[i] = toMillis(hit.getTimestamp());
+        }
+        synchronized (appendLock) {
+            for (int i = 0; i < times.length; i++) {
+                Segment segment = activeSegment();
+                if (!segment.append(times[i], apps[i], uris[i], ips[i])) {
+                    roll();
+                    activeSegment().append(times[i], apps[i], uris[i], ips[i]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<ViewStats> getStats(ViewsStatsRequest request) {
+        RoaringBitmap uriIds = resolveUris(request.getUri());
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+        long from = toMillis(request.getStart());
+        long to = toMillis(request.getEnd());
+        List<Map<Long, long[]>> partial = overlapping(from, to)
+                .map(segment -> {
+                    Map<Long, long[]> local = new HashMap<>();
+                    segment.scan(from, to, (time, app, uri, ip) -> {
+                        if (uriIds == null || uriIds.contains(uri)) {
+                            local.computeIfAbsent(key(app, uri), k -> new long[1])[0]++;
+                        }
+                    });
+                    return local;
+                })
+                .toList();
+        Map<Long, Long> hits = new HashMap<>();
+        partial.forEach(local -> local.forEach((k, v) -> hits.merge(k, v[0], Long::sum)));
+        return toViewStats(hits, request);
+    }
+
+    @Override
+    public List<ViewStats> getUniqueStats(ViewsStatsRequest request) {
+        RoaringBitmap uriIds = resolveUris(request.getUri());
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+        long from = toMillis(request.getStart());
+        long to = toMillis(request.getEnd());
+        List<Map<Long, RoaringBitmap>> partial = overlapping(from, to)
+                .map(segment -> {
+                    Map<Long, RoaringBitmap> local = new HashMap<>();
+                    segment.scan(from, to, (time, app, uri, ip) -> {
+                        if (uriIds == null || uriIds.contains(uri)) {
+                            local.computeIfAbsent(key(app, uri), k -> new RoaringBitmap()).add(ip);
+                        }
+                    });
+                    return local;
+                })
+                .toList();
+        Map<Long, RoaringBitmap> ips = new HashMap<>();
+        partial.forEach(local -> local.forEach((k, v) -> ips.merge(k, v, (a, b) -> RoaringBitmap.or(a, b))));
+        Map<Long, Long> hits = new HashMap<>();
+        ips.forEach((k, v) -> hits.put(k, v.getLongCardinality()));
+        return toViewStats(hits, request);
+    }
+
+    /**
+     * Точный подсчет по битовым картам номеров ip и так дешев, приближение не требуется
+     **/
+    @Override
+    public List<ViewStats> getApproxUniqueStats(ViewsStatsRequest request) {
+        return getUniqueStats(request);
+    }
+
+    @Override
+    public void streamStats(ViewsStatsRequest request, Consumer<ViewStats> consumer) {
+        if (Boolean.TRUE.equals(request.getUnique())) {
+            getUniqueStats(request).forEach(consumer);
+        } else {
+            getStats(request).forEach(consumer);
+        }
+    }
+
+    @Override
+    public List<ViewStatsSeries> getTimeSeries(ViewsStatsRequest request, ChronoUnit bucket) {
+        RoaringBitmap uriIds = resolveUris(request.getUri());
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+        long from = toMillis(request.getStart());
+        long to = toMillis(request.getEnd());
+        TimeSeriesAggregator aggregator = new TimeSeriesAggregator(bucket);
+        segments.stream()
+                .filter(segment -> segment.overlaps(from, to))
+                .forEach(segment -> segment.scan(from, to, (time, app, uri, ip) -> {
+                    if (uriIds == null || uriIds.contains(uri)) {
+                        aggregator.add(dictionary.value(app), dictionary.value(uri),
+                                LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneOffset.UTC), ip);
+                    }
+                }));
+        return aggregator.result();
+    }
+
+    /**
+     * У hit в сегментах нет сквозного номера, по которому можно было бы выдавать курсор
+     **/
+    @Override
+    public ChangePage getChanges(long after, int maxRows) {
+        throw new BadRequestException("Лента изменений недоступна для хранилища stats.repository=segment");
+    }
+
+    /**
+     * Сбрасывает на диск словарь, затем текущий сегмент, раз в stats.segment.flush-interval-ms: при сбое ОС
+     * теряются hit не старше этого интервала, а новые строки словаря оказываются на диске раньше записей с их номерами
+     **/
+    @Scheduled(fixedDelayString = "${stats.segment.flush-interval-ms:1000}")
+    public void flush() throws IOException {
+        synchronized (appendLock) {
+            dictionary.flush();
+            if (active != null) {
+                active.flush();
+            }
+        }
+    }
+
+    private Segment activeSegment() {
+        if (active == null || active.isFull() || active.isOlderThan(rollIntervalMs)) {
+            roll();
+        }
+        return active;
+    }
+
+    private void roll() {
+        try {
+            if (active != null) {
+                active.seal();
+            }
+            Path path = directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_SUFFIX));
+            active = Segment.create(path, recordsPerSegment);
+            segments.add(active);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть новый сегмент", e);
+        }
+    }
+
+    private Stream<Segment> overlapping(long from, long to) {
+        return segments.stream()
+                .filter(segment -> segment.overlaps(from, to))
+                .toList()
+                .parallelStream();
+    }
+
+    /**
+     * Номера запрошенных uri; null - фильтра нет, пустая карта - ни одного известного uri
+     **/
+    private RoaringBitmap resolveUris(List<String> uris) {
+        if (uris == null || uris.isEmpty()) {
+            return null;
+        }
+        RoaringBitmap ids = new RoaringBitmap();
+        for (String uri : uris) {
+            Integer id = dictionary.find(uri);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private List<ViewStats> toViewStats(Map<Long, Long> hits, ViewsStatsRequest request) {
+        return hits.entrySet().stream()
+                .map(e -> ViewStats.builder()
+                        .app(dictionary.value((int) (e.getKey() >>> 32)))
+                        .uri(dictionary.value((int) (long) e.getKey()))
+                        .hits(e.getValue())
+                        .build())
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .limit(request.getLimit() == null ? Long.MAX_VALUE : request.getLimit())
+                .toList();
+    }
+
+    private static long key(int app, int uri) {
+        return (long) app << 32 | (uri & 0xFFFFFFFFL);
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+}
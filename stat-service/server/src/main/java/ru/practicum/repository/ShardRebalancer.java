@@ -0,0 +1,100 @@
+package ru.practicum.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.practicum.StatRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Перенос uri на шарды, которым они принадлежат по текущему кольцу, после добавления шардов в stats.sharding.shards.
+ * Запускается при старте, если stats.sharding.rebalance-on-start=true (по умолчанию). Пока перенос не завершен,
+ * хранилище читает все шарды; при выключенном переносе это длится до его ручного запуска. Hit uri переносятся порциями
+ * по stats.sharding.rebalance-chunk: порция записывается в новый шард вместе со свертками и скетчами, затем
+ * удаляется из старого с вычитанием из сверток. При сбое между этими шагами одна порция останется в обоих шардах
+ **/
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.repository", havingValue = "sharded")
+public class ShardRebalancer {
+    private final ShardedStatsRepository repository;
+    private final boolean rebalanceOnStart;
+    private final int chunkSize;
+
+    public ShardRebalancer(ShardedStatsRepository repository,
+                           @Value("${stats.sharding.rebalance-on-start:true}") boolean rebalanceOnStart,
+                           @Value("${stats.sharding.rebalance-chunk:10000}") int chunkSize) {
+        this.repository = repository;
+        this.rebalanceOnStart = rebalanceOnStart;
+        this.chunkSize = chunkSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (rebalanceOnStart) {
+            if (repository.isRebalancing()) {
+                rebalance();
+            }
+        } else if (repository.isRebalancing()) {
+            log.warn("Hit лежат не на своих шардах, а перенос при старте выключен: запросы идут во все шарды");
+        }
+    }
+
+    /**
+     * Переносит все hit, лежащие не на своем шарде, и возвращает их число. При сбое хранилище продолжает читать
+     * все шарды
+     **/
+    public synchronized long rebalance() {
+        long moved = 0;
+        repository.setRebalancing(true);
+        for (StatsShard source : repository.getShards()) {
+            List<String> uris = source.getJdbcTemplate().queryForList("SELECT uri FROM stats_uri", String.class);
+            for (String uri : uris) {
+                StatsShard target = repository.shardFor(uri);
+                if (target != source) {
+                    moved += move(uri, source, target);
+                }
+            }
+        }
+        repository.setRebalancing(false);
+        log.info("Перенос между шардами завершен, перенесено {} hit", moved);
+        return moved;
+    }
+
+    private long move(String uri, StatsShard source, StatsShard target) {
+        long moved = 0;
+        while (true) {
+            List<Long> ids = new ArrayList<>();
+            List<StatRequest> hits = source.getJdbcTemplate().query("SELECT h.id, a.name AS app, h.ip, h.created "
+                            + "FROM stats AS h JOIN stats_app a ON a.id = h.app_id JOIN stats_uri u ON u.id = h.uri_id "
+                            + "WHERE u.uri = ? ORDER BY h.id LIMIT ?",
+                    (rs, rowNum) -> {
+                        ids.add(rs.getLong("id"));
+                        return StatRequest.builder()
+                                .app(rs.getString("app"))
+                                .uri(uri)
+                                .ip(IpCodec.decode(rs.getBytes("ip")))
+                                .timestamp(rs.getTimestamp("created").toLocalDateTime())
+                                .build();
+                    },
+                    uri, chunkSize);
+            if (hits.isEmpty()) {
+                break;
+            }
+            target.getTransaction().executeWithoutResult(status -> target.getRepository().saveHits(hits));
+            source.getTransaction().executeWithoutResult(status ->
+                    source.getRepository().removeHits(uri, ids.get(ids.size() - 1), hits));
+            moved += hits.size();
+        }
+        source.getTransaction().executeWithoutResult(status -> source.getRepository().dropUri(uri));
+        if (moved > 0) {
+            log.info("Uri {}: {} hit перенесено из шарда {} в {}", uri, moved, source.getName(), target.getName());
+        }
+        return moved;
+    }
+}
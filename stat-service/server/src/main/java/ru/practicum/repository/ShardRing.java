@@ -0,0 +1,32 @@
+package ru.practicum.repository;
+
+import ru.practicum.sketch.HyperLogLog;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Кольцо согласованного хеширования uri по шардам: у каждого шарда virtualNodes точек на кольце, uri принадлежит
+ * шарду первой точки не меньше хеша uri. Точки зависят только от имени шарда, поэтому при добавлении шарда
+ * к нему переходит около 1/N uri, а остальные остаются на своих шардах
+ **/
+public class ShardRing {
+    private final TreeMap<Long, String> points = new TreeMap<>();
+
+    public ShardRing(List<String> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("Кольцо шардов не может быть пустым");
+        }
+        for (String shard : shards) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.put(HyperLogLog.hash(shard + "#" + i), shard);
+            }
+        }
+    }
+
+    public String shardFor(String uri) {
+        Map.Entry<Long, String> point = points.ceilingEntry(HyperLogLog.hash(uri));
+        return (point != null ? point : points.firstEntry()).getValue();
+    }
+}
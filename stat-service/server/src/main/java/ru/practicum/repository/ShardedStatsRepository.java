@@ -0,0 +1,315 @@
+package ru.practicum.repository;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.StatRequest;
+import ru.practicum.StatsQuery;
+import ru.practicum.StatsQueryResult;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewStatsPoint;
+import ru.practicum.ViewStatsSeries;
+import ru.practicum.ViewsStatsRequest;
+import ru.practicum.exceptions.BadRequestException;
+import ru.practicum.exceptions.ServiceUnavailableException;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище из нескольких баз (stats.sharding.shards в виде имя=url): hit направляется в шард по согласованному
+ * хешу uri, запросы рассылаются шардам параллельно, а частичные результаты сливаются. Все hit одного uri лежат
+ * в одном шарде, поэтому слияние точно и для просмотров, и для уникальных IP, а limit применяется в каждом шарде.
+ * Пачка hit пишется в шарды отдельными транзакциями и атомарна только в пределах шарда. Пока идет перенос uri
+ * между шардами ({@link ShardRebalancer}) или если при старте найдены hit не на своем шарде, запросы идут во все
+ * шарды и limit применяется после слияния
+ **/
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.repository", havingValue = "sharded")
+public class ShardedStatsRepository implements StatsRepository {
+    private final Map<String, StatsShard> shards = new LinkedHashMap<>();
+    private final ShardRing ring;
+    private final ExecutorService executor;
+
+    private volatile boolean rebalancing;
+
+    public ShardedStatsRepository(StatsShardFactory shardFactory,
+                                  @Value("${stats.sharding.shards:}") List<String> shards,
+                                  @Value("${stats.sharding.virtual-nodes:128}") int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalStateException("Не заданы шарды stats.sharding.shards");
+        }
+        try {
+            for (String shard : shards) {
+                int separator = shard.indexOf('=');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("Шард задается как имя=url, получено " + shard);
+                }
+                String name = shard.substring(0, separator).trim();
+                if (this.shards.containsKey(name)) {
+                    throw new IllegalArgumentException("Шард " + name + " задан дважды");
+                }
+                this.shards.put(name, shardFactory.create(name, shard.substring(separator + 1).trim()));
+            }
+        } catch (RuntimeException e) {
+            this.shards.values().forEach(StatsShard::close);
+            throw e;
+        }
+        this.ring = new ShardRing(List.copyOf(this.shards.keySet()), virtualNodes);
+        this.executor = Executors.newFixedThreadPool(this.shards.size() * 2,
+                Thread.ofPlatform().name("stats-shard-", 0).daemon().factory());
+        log.info("Хранилище из {} шардов: {}", this.shards.size(), this.shards.keySet());
+        this.rebalancing = hasMisplacedHits();
+        if (rebalancing) {
+            log.warn("Кольцо шардов не совпадает с размещением hit: до завершения переноса uri запросы идут во все шарды");
+        }
+    }
+
+    @Override
+    public void saveHit(StatRequest hit) {
+        StatsShard shard = shardFor(hit.getUri());
+        shard.getTransaction().executeWithoutResult(status -> shard.getRepository().saveHit(hit));
+    }
+
+    @Override
+    public void saveHits(List<StatRequest> hits) {
+        Map<StatsShard, List<StatRequest>> routes = new LinkedHashMap<>();
+        hits.forEach(hit -> routes.computeIfAbsent(shardFor(hit.getUri()), shard -> new ArrayList<>()).add(hit));
+        scatter(routes, (shard, part) -> {
+            shard.getTransaction().executeWithoutResult(status -> shard.getRepository().saveHits(part));
+            return null;
+        });
+    }
+
+    @Override
+    public List<ViewStats> getStats(ViewsStatsRequest request) {
+        return merge(scatter(route(request), (shard, part) -> shard.getRepository().getStats(part)), request);
+    }
+
+    @Override
+    public List<ViewStats> getUniqueStats(ViewsStatsRequest request) {
+        return merge(scatter(route(request), (shard, part) -> shard.getRepository().getUniqueStats(part)), request);
+    }
+
+    @Override
+    public List<ViewStats> getApproxUniqueStats(ViewsStatsRequest request) {
+        return merge(scatter(route(request), (shard, part) -> shard.getRepository().getApproxUniqueStats(part)), request);
+    }
+
+    /**
+     * Порядок по убыванию просмотров общий для всех шардов, поэтому результат сливается целиком
+     **/
+    @Override
+    public void streamStats(ViewsStatsRequest request, Consumer<ViewStats> consumer) {
+        List<ViewStats> stats;
+        if (!Boolean.TRUE.equals(request.getUnique())) {
+            stats = getStats(request);
+        } else if (Boolean.TRUE.equals(request.getApproximate())) {
+            stats = getApproxUniqueStats(request);
+        } else {
+            stats = getUniqueStats(request);
+        }
+        stats.forEach(consumer);
+    }
+
+    @Override
+    public List<ViewStatsSeries> getTimeSeries(ViewsStatsRequest request, ChronoUnit bucket) {
+        Map<AppUri, ViewStatsSeries> merged = new HashMap<>();
+        scatter(route(request), (shard, part) -> shard.getRepository().getTimeSeries(part, bucket))
+                .forEach(part -> part.forEach(series -> merged.merge(new AppUri(series.getApp(), series.getUri()),
+                        series, ShardedStatsRepository::mergeSeries)));
+        return merged.values().stream()
+                .sorted(Comparator.comparing(ViewStatsSeries::getApp).thenComparing(ViewStatsSeries::getUri))
+                .toList();
+    }
+
+    /**
+     * У каждого шарда своя последовательность stats.id, общего курсора нет
+     **/
+    @Override
+    public ChangePage getChanges(long after, int maxRows) {
+        throw new BadRequestException("Лента изменений недоступна для хранилища stats.repository=sharded");
+    }
+
+    /**
+     * Запросы группируются по шардам uri, каждый шард отвечает на свою часть одним SQL
+     **/
+    @Override
+    public List<StatsQueryResult> getBatchStats(List<StatsQuery> queries) {
+        Map<StatsShard, List<Integer>> routes = new LinkedHashMap<>();
+        for (int i = 0; i < queries.size(); i++) {
+            int index = i;
+            Collection<StatsShard> targets = rebalancing ? shards.values() : List.of(shardFor(queries.get(i).getUri()));
+            targets.forEach(shard -> routes.computeIfAbsent(shard, key -> new ArrayList<>()).add(index));
+        }
+        long[] hits = new long[queries.size()];
+        List<List<StatsQueryResult>> parts = scatter(routes, (shard, part) ->
+                shard.getRepository().getBatchStats(part.stream().map(queries::get).toList()));
+        int shard = 0;
+        for (List<Integer> part : routes.values()) {
+            List<StatsQueryResult> results = parts.get(shard++);
+            for (int i = 0; i < part.size(); i++) {
+                hits[part.get(i)] += results.get(i).getHits();
+            }
+        }
+        List<StatsQueryResult> results = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            StatsQuery query = queries.get(i);
+            results.add(StatsQueryResult.builder()
+                    .uri(query.getUri())
+                    .start(query.getStart())
+                    .end(query.getEnd())
+                    .unique(Boolean.TRUE.equals(query.getUnique()))
+                    .hits(hits[i])
+                    .build());
+        }
+        return results;
+    }
+
+    /**
+     * Секции и срок хранения обслуживаются в каждом шарде по тому же расписанию, что и в основной базе
+     **/
+    @Scheduled(cron = "${stats.retention.cron:0 15 3 * * *}")
+    public void maintainPartitions() {
+        shards.values().forEach(shard -> shard.getPartitionManager().maintain());
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+        shards.values().forEach(StatsShard::close);
+    }
+
+    Collection<StatsShard> getShards() {
+        return Collections.unmodifiableCollection(shards.values());
+    }
+
+    StatsShard shardFor(String uri) {
+        return shards.get(ring.shardFor(uri));
+    }
+
+    boolean isRebalancing() {
+        return rebalancing;
+    }
+
+    void setRebalancing(boolean rebalancing) {
+        this.rebalancing = rebalancing;
+    }
+
+    /**
+     * Есть ли в шардах hit uri, которые по текущему кольцу принадлежат другому шарду, - кольцо изменилось
+     * после записи. Проверка останавливается на первом таком uri
+     **/
+    private boolean hasMisplacedHits() {
+        for (StatsShard shard : shards.values()) {
+            Boolean misplaced = shard.getJdbcTemplate().query("SELECT u.uri FROM stats_uri AS u "
+                            + "WHERE EXISTS (SELECT 1 FROM stats AS h WHERE h.uri_id = u.id)",
+                    rs -> {
+                        while (rs.next()) {
+                            if (shardFor(rs.getString(1)) != shard) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    });
+            if (Boolean.TRUE.equals(misplaced)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Шарды, которым нужен запрос, и запрос для каждого: при списке uri - только uri этого шарда
+     **/
+    private Map<StatsShard, ViewsStatsRequest> route(ViewsStatsRequest request) {
+        Map<StatsShard, ViewsStatsRequest> routes = new LinkedHashMap<>();
+        if (rebalancing || request.getUri() == null || request.getUri().isEmpty()) {
+            ViewsStatsRequest all = rebalancing ? request.toBuilder().limit(null).build() : request;
+            shards.values().forEach(shard -> routes.put(shard, all));
+            return routes;
+        }
+        Map<StatsShard, List<String>> uris = new LinkedHashMap<>();
+        request.getUri().forEach(uri -> uris.computeIfAbsent(shardFor(uri), shard -> new ArrayList<>()).add(uri));
+        uris.forEach((shard, own) -> routes.put(shard, request.toBuilder().uri(own).build()));
+        return routes;
+    }
+
+    /**
+     * Выполняет task для каждого шарда параллельно и возвращает результаты в порядке routes;
+     * ошибка любого шарда отменяет остальные и пробрасывается
+     **/
+    private <R, T> List<T> scatter(Map<StatsShard, R> routes, BiFunction<StatsShard, R, T> task) {
+        if (routes.size() == 1) {
+            Map.Entry<StatsShard, R> route = routes.entrySet().iterator().next();
+            return Collections.singletonList(task.apply(route.getKey(), route.getValue()));
+        }
+        List<Future<T>> futures = new ArrayList<>(routes.size());
+        routes.forEach((shard, route) -> futures.add(executor.submit(() -> task.apply(shard, route))));
+        List<T> results = new ArrayList<>(routes.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Запрос к шардам прерван");
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    private static List<ViewStats> merge(List<List<ViewStats>> parts, ViewsStatsRequest request) {
+        Map<AppUri, Long> hits = new HashMap<>();
+        parts.forEach(part -> part.forEach(stats ->
+                hits.merge(new AppUri(stats.getApp(), stats.getUri()), stats.getHits(), Long::sum)));
+        return hits.entrySet().stream()
+                .map(e -> ViewStats.builder().app(e.getKey().app()).uri(e.getKey().uri()).hits(e.getValue()).build())
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .limit(request.getLimit() == null ? Long.MAX_VALUE : request.getLimit())
+                .toList();
+    }
+
+    /**
+     * Один uri оказывается в двух шардах только во время переноса; уникальные IP по корзине тогда складываются
+     **/
+    private static ViewStatsSeries mergeSeries(ViewStatsSeries first, ViewStatsSeries second) {
+        Map<LocalDateTime, ViewStatsPoint> points = new TreeMap<>();
+        for (ViewStatsPoint point : first.getPoints()) {
+            points.put(point.getBucket(), point);
+        }
+        for (ViewStatsPoint point : second.getPoints()) {
+            points.merge(point.getBucket(), point, (a, b) -> ViewStatsPoint.builder()
+                    .bucket(a.getBucket())
+                    .hits(a.getHits() + b.getHits())
+                    .unique(a.getUnique() + b.getUnique())
+                    .build());
+        }
+        return first.toBuilder().points(new ArrayList<>(points.values())).build();
+    }
+}
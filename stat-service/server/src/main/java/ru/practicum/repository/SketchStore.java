@@ -0,0 +1,80 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BinaryOperator;
+
+/**
+ * Хранение сериализованных скетчей по корзинам (app, uri, bucket) в таблицах вида
+ * (app, uri, bucket, sketch) с первичным ключом (app, uri, bucket)
+ **/
+@Component
+@ConditionalOnJdbcStore
+@RequiredArgsConstructor
+public class SketchStore {
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlDialect sqlDialect;
+
+    /**
+     * Вливает скетчи в сохраненные: отсутствующие вставляются, существующие читаются с блокировкой строки,
+     * объединяются и перезаписываются. Вызывать внутри транзакции
+     **/
+    public void merge(String table, Map<BucketKey, byte[]> sketches, BinaryOperator<byte[]> merger) {
+        List<Map.Entry<BucketKey, byte[]>> entries = new ArrayList<>(new TreeMap<>(sketches).entrySet());
+        int[][] inserted = jdbcTemplate.batchUpdate(insertIfAbsentQuery(table), entries, entries.size(),
+                (PreparedStatement ps, Map.Entry<BucketKey, byte[]> e) -> {
+                    ps.setString(1, e.getKey().app());
+                    ps.setString(2, e.getKey().uri());
+                    ps.setTimestamp(3, Timestamp.valueOf(e.getKey().bucket()));
+                    ps.setBytes(4, e.getValue());
+                });
+        for (int i = 0; i < entries.size(); i++) {
+            if (inserted[0][i] > 0) {
+                continue;
+            }
+            BucketKey key = entries.get(i).getKey();
+            Timestamp bucket = Timestamp.valueOf(key.bucket());
+            byte[] stored = jdbcTemplate.queryForObject("SELECT sketch FROM " + table
+                            + " WHERE app = ? AND uri = ? AND bucket = ? FOR UPDATE",
+                    byte[].class, key.app(), key.uri(), bucket);
+            jdbcTemplate.update("UPDATE " + table + " SET sketch = ? WHERE app = ? AND uri = ? AND bucket = ?",
+                    merger.apply(stored, entries.get(i).getValue()), key.app(), key.uri(), bucket);
+        }
+    }
+
+    public void load(String table, LocalDateTime from, LocalDateTime to, UriFilter uriFilter, SketchHandler handler) {
+        List<Object> params = new ArrayList<>(List.of(Timestamp.valueOf(from), Timestamp.valueOf(to)));
+        uriFilter.addParam(params);
+        jdbcTemplate.query("SELECT app, uri, sketch FROM " + table + " WHERE (bucket >= ? AND bucket < ?) " + uriFilter.sql(),
+                rs -> {
+                    handler.accept(rs.getString("app"), rs.getString("uri"), rs.getBytes("sketch"));
+                },
+                params.toArray());
+    }
+
+    private String insertIfAbsentQuery(String table) {
+        if (sqlDialect.isPostgres()) {
+            return "INSERT INTO " + table + " (app, uri, bucket, sketch) VALUES (?, ?, ?, ?) "
+                    + "ON CONFLICT (app, uri, bucket) DO NOTHING";
+        }
+        return "MERGE INTO " + table + " AS r "
+                + "USING (VALUES (CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS TIMESTAMP), "
+                + "CAST(? AS VARBINARY))) AS v (app, uri, bucket, sketch) "
+                + "ON r.app = v.app AND r.uri = v.uri AND r.bucket = v.bucket "
+                + "WHEN NOT MATCHED THEN INSERT (app, uri, bucket, sketch) VALUES (v.app, v.uri, v.bucket, v.sketch)";
+    }
+
+    @FunctionalInterface
+    public interface SketchHandler {
+        void accept(String app, String uri, byte[] sketch);
+    }
+}
@@ -0,0 +1,165 @@
+package ru.practicum.repository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Помесячные секции таблицы stats в Postgres: создание заранее на stats.partitioning.months-ahead месяцев
+ * и удаление целых секций по сроку хранения. Запись не выполняет DDL: hit за месяц без секции попадают
+ * в секцию по умолчанию stats_default, а maintain() выносит такие месяцы в собственные секции.
+ * Без секционирования срок хранения соблюдается через DELETE
+ **/
+@Slf4j
+@Component
+@ConditionalOnJdbcStore
+public class StatsPartitionManager {
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final String PARTITION_PREFIX = "stats_p";
+    private static final String DEFAULT_PARTITION = "stats_default";
+    private static final List<String> ROLLUP_TABLES = List.of("stats_minute", "stats_hour", "stats_hll", "stats_ip_bitmap");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    private final boolean enabled;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final Set<YearMonth> partitions = ConcurrentHashMap.newKeySet();
+
+    public StatsPartitionManager(JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${stats.partitioning.enabled:false}") boolean enabled,
+                                 @Value("${stats.partitioning.months-ahead:2}") int monthsAhead,
+                                 @Value("${stats.retention.months:0}") int retentionMonths) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = enabled;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + DEFAULT_PARTITION + " PARTITION OF stats DEFAULT");
+            partitions.addAll(loadPartitions());
+        }
+        createAhead();
+        splitDefault();
+    }
+
+    @Scheduled(cron = "${stats.retention.cron:0 15 3 * * *}")
+    public void maintain() {
+        createAhead();
+        splitDefault();
+        purgeExpired();
+    }
+
+    private void createAhead() {
+        if (!enabled) {
+            return;
+        }
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            if (!partitions.contains(month)) {
+                createPartition(month);
+            }
+        }
+    }
+
+    /**
+     * Выносит в собственные секции месяцы, hit за которые попали в секцию по умолчанию
+     **/
+    private void splitDefault() {
+        if (!enabled) {
+            return;
+        }
+        YearMonth oldestKept = retentionMonths > 0 ? YearMonth.now().minusMonths(retentionMonths) : null;
+        jdbcTemplate.queryForList("SELECT DISTINCT DATE_TRUNC('month', created) FROM " + DEFAULT_PARTITION,
+                        Timestamp.class).stream()
+                .map(month -> YearMonth.from(month.toLocalDateTime()))
+                .filter(month -> !partitions.contains(month))
+                .filter(month -> oldestKept == null || !month.isBefore(oldestKept))
+                .forEach(this::createPartition);
+    }
+
+    /**
+     * Новая секция не может покрыть строки, уже лежащие в секции по умолчанию, поэтому они переносятся
+     * в той же транзакции: секция по умолчанию отсоединяется, строки переезжают с прежними id, секция возвращается
+     **/
+    private void createPartition(YearMonth month) {
+        String name = PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+        Timestamp from = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+        Timestamp to = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+        String create = "CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF stats FOR VALUES FROM ('"
+                + from.toLocalDateTime() + "') TO ('" + to.toLocalDateTime() + "')";
+        int moved = newTransaction.execute(status -> {
+            Boolean parked = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION
+                    + " WHERE created >= ? AND created < ?)", Boolean.class, from, to);
+            if (!Boolean.TRUE.equals(parked)) {
+                jdbcTemplate.execute(create);
+                return 0;
+            }
+            jdbcTemplate.execute("ALTER TABLE stats DETACH PARTITION " + DEFAULT_PARTITION);
+            jdbcTemplate.execute(create);
+            int rows = jdbcTemplate.update("INSERT INTO " + name + " (id, app_id, uri_id, ip, created) "
+                    + "SELECT id, app_id, uri_id, ip, created FROM " + DEFAULT_PARTITION
+                    + " WHERE created >= ? AND created < ?", from, to);
+            jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE created >= ? AND created < ?", from, to);
+            jdbcTemplate.execute("ALTER TABLE stats ATTACH PARTITION " + DEFAULT_PARTITION + " DEFAULT");
+            return rows;
+        });
+        partitions.add(month);
+        log.info("Создана секция {} таблицы stats, перенесено из секции по умолчанию {} hit", name, moved);
+    }
+
+    private void purgeExpired() {
+        if (retentionMonths <= 0) {
+            return;
+        }
+        YearMonth oldestKept = YearMonth.now().minusMonths(retentionMonths);
+        Timestamp cutoff = Timestamp.valueOf(oldestKept.atDay(1).atStartOfDay());
+        if (enabled) {
+            for (YearMonth month : loadPartitions()) {
+                if (month.isBefore(oldestKept)) {
+                    String name = PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+                    newTransaction.executeWithoutResult(status -> jdbcTemplate.execute("DROP TABLE IF EXISTS " + name));
+                    partitions.remove(month);
+                    log.info("Удалена секция {} таблицы stats по сроку хранения", name);
+                }
+            }
+            jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE created < ?", cutoff);
+        } else {
+            int deleted = jdbcTemplate.update("DELETE FROM stats WHERE created < ?", cutoff);
+            log.info("Удалено {} hit старше {}", deleted, cutoff);
+        }
+        for (String table : ROLLUP_TABLES) {
+            jdbcTemplate.update("DELETE FROM " + table + " WHERE bucket < ?", cutoff);
+        }
+    }
+
+    private List<YearMonth> loadPartitions() {
+        return jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i "
+                        + "JOIN pg_class c ON c.oid = i.inhrelid "
+                        + "JOIN pg_class p ON p.oid = i.inhparent "
+                        + "WHERE p.relname = 'stats'", String.class).stream()
+                .filter(name -> name.startsWith(PARTITION_PREFIX))
+                .map(name -> YearMonth.parse(name.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX))
+                .toList();
+    }
+}
@@ -1,16 +1,63 @@
 package ru.practicum.repository;
 
 import ru.practicum.StatRequest;
+import ru.practicum.StatsQuery;
+import ru.practicum.StatsQueryResult;
 import ru.practicum.ViewStats;
+import ru.practicum.ViewStatsSeries;
 import ru.practicum.ViewsStatsRequest;
 
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface StatsRepository {
     void saveHit(StatRequest hit);
 
+    void saveHits(List<StatRequest> hits);
+
     List<ViewStats> getStats(ViewsStatsRequest request);
 
     List<ViewStats> getUniqueStats(ViewsStatsRequest request);
-}
 
+    List<ViewStats> getApproxUniqueStats(ViewsStatsRequest request);
+
+    void streamStats(ViewsStatsRequest request, Consumer<ViewStats> consumer);
+
+    /**
+     * Число просмотров и уникальных IP по корзинам размера bucket; корзины без hit не возвращаются
+     **/
+    List<ViewStatsSeries> getTimeSeries(ViewsStatsRequest request, ChronoUnit bucket);
+
+    /**
+     * Приращения просмотров по (app, uri) за записанные после курсора after hit, не больше maxRows hit за раз
+     **/
+    ChangePage getChanges(long after, int maxRows);
+
+    /**
+     * Ответы на запросы /stats/batch в порядке запросов; по умолчанию каждый запрос выполняется отдельно
+     **/
+    default List<StatsQueryResult> getBatchStats(List<StatsQuery> queries) {
+        return queries.stream().map(this::getQueryStats).toList();
+    }
+
+    /**
+     * Просмотры одного uri за интервал запроса, суммарно по всем приложениям
+     **/
+    default StatsQueryResult getQueryStats(StatsQuery query) {
+        ViewsStatsRequest request = ViewsStatsRequest.builder()
+                .start(query.getStart())
+                .end(query.getEnd())
+                .uri(List.of(query.getUri()))
+                .unique(Boolean.TRUE.equals(query.getUnique()))
+                .build();
+        List<ViewStats> stats = Boolean.TRUE.equals(query.getUnique()) ? getUniqueStats(request) : getStats(request);
+        return StatsQueryResult.builder()
+                .uri(query.getUri())
+                .start(query.getStart())
+                .end(query.getEnd())
+                .unique(Boolean.TRUE.equals(query.getUnique()))
+                .hits(stats.stream().mapToLong(ViewStats::getHits).sum())
+                .build();
+    }
+}
@@ -1,52 +1,485 @@
 package ru.practicum.repository;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.StatRequest;
+import ru.practicum.StatsQuery;
+import ru.practicum.StatsQueryResult;
 import ru.practicum.ViewStats;
+import ru.practicum.ViewStatsPoint;
+import ru.practicum.ViewStatsSeries;
 import ru.practicum.ViewsStatsRequest;
+import ru.practicum.cold.ColumnarFile;
+import ru.practicum.exceptions.BadRequestException;
 import ru.practicum.mapper.ViewStatsMapper;
+import ru.practicum.sketch.HyperLogLog;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 
 @Component
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.repository", havingValue = "jdbc", matchIfMissing = true)
 public class StatsRepositoryImpl implements StatsRepository {
+    private static final String INSERT_HIT = "INSERT INTO stats (app_id, uri_id, ip, created) VALUES (?, ?, ?, ?)";
+    private static final String RAW_EDGES = "((created >= ? AND created < ?) OR (created >= ? AND created <= ?))";
+    static final String RAW_NAMES = "JOIN stats_app a ON a.id = h.app_id JOIN stats_uri u ON u.id = h.uri_id";
 
     private final JdbcTemplate jdbcTemplate;
     private final ViewStatsMapper viewStatsMapper;
+    private final SqlDialect sqlDialect;
+    private final SketchStore sketchStore;
+    private final DimensionDictionary dimensions;
+    private final ColdStore coldStore;
+    private final WriteWatermark writeWatermark;
+    private final StatsRepositorySettings settings;
 
     @Override
+    @Transactional
     public void saveHit(StatRequest hit) {
-        jdbcTemplate.update("INSERT INTO stats (app, uri, ip, created) VALUES (?, ?, ?, ?)",
-                hit.getApp(), hit.getUri(), hit.getIp(), Timestamp.valueOf(hit.getTimestamp()));
+        writeWatermark.begin();
+        jdbcTemplate.update(INSERT_HIT, dimensions.appId(hit.getApp()), dimensions.uriId(hit.getUri()),
+                IpCodec.encode(hit.getIp()), Timestamp.valueOf(hit.getTimestamp()));
+        updateRollups(List.of(hit), 1);
+        updateSketches(List.of(hit));
     }
 
+    @Override
+    @Transactional
+    public void saveHits(List<StatRequest> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        writeWatermark.begin();
+        Map<String, Integer> appIds = dimensions.appIds(hits.stream().map(StatRequest::getApp).toList());
+        Map<String, Integer> uriIds = dimensions.uriIds(hits.stream().map(StatRequest::getUri).toList());
+        jdbcTemplate.batchUpdate(INSERT_HIT, hits, hits.size(), (PreparedStatement ps, StatRequest hit) -> {
+            ps.setInt(1, appIds.get(hit.getApp()));
+            ps.setInt(2, uriIds.get(hit.getUri()));
+            ps.setBytes(3, IpCodec.encode(hit.getIp()));
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+        });
+        updateRollups(hits, 1);
+        updateSketches(hits);
+    }
+
+    /**
+     * Если интервал заходит в холодный ярус, к результату запроса добавляются hit из его файлов
+     * за те же сырые края плана; ограничение limit применяется после слияния
+     **/
     @Override
     public List<ViewStats> getStats(ViewsStatsRequest request) {
-        String query = "SELECT app, uri, COUNT (ip) AS hits FROM stats WHERE (created >= ? AND created <= ?) ";
-        if (!request.getUri().isEmpty()) {
-            query += createUrisQuery(request.getUri());
+        List<Object> params = new ArrayList<>();
+        if (!coldStore.covers(request.getStart())) {
+            return jdbcTemplate.query(createStatsQuery(request, params, true), viewStatsMapper, params.toArray());
         }
-        query += " GROUP BY app, uri ORDER BY hits DESC";
-        return jdbcTemplate.query(query, viewStatsMapper, request.getStart(), request.getEnd());
+        Map<AppUri, Long> hits = new HashMap<>();
+        jdbcTemplate.query(createStatsQuery(request, params, false), viewStatsMapper, params.toArray())
+                .forEach(stats -> hits.merge(new AppUri(stats.getApp(), stats.getUri()), stats.getHits(), Long::sum));
+        scanColdEdges(RollupPlan.of(request.getStart(), request.getEnd()), request.getUri(),
+                (time, app, uri, ip) -> hits.merge(new AppUri(app, uri), 1L, Long::sum));
+        return toViewStats(hits, request);
     }
 
     @Override
     public List<ViewStats> getUniqueStats(ViewsStatsRequest request) {
-        String query = "SELECT app, uri, COUNT (DISTINCT ip) AS hits FROM stats WHERE (created >= ? AND created <= ?) ";
-        if (!request.getUri().isEmpty()) {
-            query += createUrisQuery(request.getUri());
+        List<Object> params = new ArrayList<>();
+        if (!coldStore.covers(request.getStart())) {
+            return jdbcTemplate.query(createUniqueStatsQuery(request, params), viewStatsMapper, params.toArray());
+        }
+        UriFilter uriFilter = createUriFilter(request.getUri());
+        params.add(request.getStart());
+        params.add(request.getEnd());
+        uriFilter.addParam(params);
+        Map<AppUri, Set<String>> ips = new HashMap<>();
+        jdbcTemplate.query(createRawRowsQuery(true, "(created >= ? AND created <= ?)", uriFilter),
+                rs -> {
+                    ips.computeIfAbsent(new AppUri(rs.getString("app"), rs.getString("uri")), key -> new HashSet<>())
+                            .add(IpCodec.decode(rs.getBytes("ip")));
+                },
+                params.toArray());
+        coldStore.scan(request.getStart(), request.getEnd(), true, request.getUri(),
+                (time, app, uri, ip) -> ips.computeIfAbsent(new AppUri(app, uri), key -> new HashSet<>()).add(ip));
+        Map<AppUri, Long> hits = new HashMap<>();
+        ips.forEach((key, set) -> hits.put(key, (long) set.size()));
+        return toViewStats(hits, request);
+    }
+
+    /**
+     * Результат читается курсором порциями по stats.stream.fetch-size строк и сразу передается дальше,
+     * без списка в памяти. В Postgres курсор работает только внутри транзакции
+     **/
+    @Override
+    public void streamStats(ViewsStatsRequest request, Consumer<ViewStats> consumer) {
+        if (Boolean.TRUE.equals(request.getUnique()) && Boolean.TRUE.equals(request.getApproximate())) {
+            getApproxUniqueStats(request).forEach(consumer);
+            return;
+        }
+        if (coldStore.covers(request.getStart())) {
+            (Boolean.TRUE.equals(request.getUnique()) ? getUniqueStats(request) : getStats(request)).forEach(consumer);
+            return;
+        }
+        List<Object> params = new ArrayList<>();
+        String query = Boolean.TRUE.equals(request.getUnique())
+                ? createUniqueStatsQuery(request, params)
+                : createStatsQuery(request, params, true);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(settings.getStreamFetchSize());
+            new ArgumentPreparedStatementSetter(params.toArray()).setValues(ps);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(viewStatsMapper.mapRow(rs, rs.getRow())));
+    }
+
+    /**
+     * Корзины считаются в базе за один проход по сырым строкам через DATE_TRUNC; если интервал заходит
+     * в холодный ярус, hit обоих ярусов собираются в памяти
+     **/
+    @Override
+    public List<ViewStatsSeries> getTimeSeries(ViewsStatsRequest request, ChronoUnit bucket) {
+        UriFilter uriFilter = createUriFilter(request.getUri());
+        List<Object> params = new ArrayList<>(List.of(request.getStart(), request.getEnd()));
+        uriFilter.addParam(params);
+        if (coldStore.covers(request.getStart())) {
+            TimeSeriesAggregator aggregator = new TimeSeriesAggregator(bucket);
+            jdbcTemplate.query("SELECT a.name AS app, u.uri AS uri, h.ip, h.created FROM stats AS h " + RAW_NAMES
+                            + " WHERE (created >= ? AND created <= ?) " + uriFilter.dictionarySql(),
+                    rs -> {
+                        aggregator.add(rs.getString("app"), rs.getString("uri"),
+                                rs.getTimestamp("created").toLocalDateTime(), IpCodec.decode(rs.getBytes("ip")));
+                    },
+                    params.toArray());
+            coldStore.scan(request.getStart(), request.getEnd(), true, request.getUri(),
+                    (time, app, uri, ip) -> aggregator.add(app, uri, ColdStore.fromMicros(time), ip));
+            return aggregator.result();
+        }
+        String trunc = "DATE_TRUNC('" + switch (bucket) {
+            case MINUTES -> "minute";
+            case HOURS -> "hour";
+            case DAYS -> "day";
+            default -> throw new IllegalArgumentException("Неподдерживаемый размер корзины " + bucket);
+        } + "', created)";
+        Map<AppUri, List<ViewStatsPoint>> series = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT a.name AS app, u.uri AS uri, h.bucket, h.hits, h.uniq FROM (SELECT app_id, uri_id, "
+                        + trunc + " AS bucket, COUNT (ip) AS hits, COUNT (DISTINCT ip) AS uniq FROM stats "
+                        + "WHERE (created >= ? AND created <= ?) " + uriFilter.dictionarySql()
+                        + "GROUP BY app_id, uri_id, " + trunc + ") AS h " + RAW_NAMES + " ORDER BY app, uri, bucket",
+                rs -> {
+                    series.computeIfAbsent(new AppUri(rs.getString("app"), rs.getString("uri")), key -> new ArrayList<>())
+                            .add(ViewStatsPoint.builder()
+                                    .bucket(rs.getTimestamp("bucket").toLocalDateTime())
+                                    .hits(rs.getLong("hits"))
+                                    .unique(rs.getLong("uniq"))
+                                    .build());
+                },
+                params.toArray());
+        return series.entrySet().stream()
+                .map(e -> ViewStatsSeries.builder().app(e.getKey().app()).uri(e.getKey().uri()).points(e.getValue()).build())
+                .toList();
+    }
+
+    /**
+     * Курсор - stats.id последней учтенной строки. Страница не заходит за безопасную границу, поэтому строка,
+     * зафиксированная позже, не может оказаться ниже уже выданного курсора. Если строки после курсора
+     * перенесены в холодный ярус, приращения восстановить нельзя и клиенту нужна полная синхронизация
+     **/
+    @Override
+    public ChangePage getChanges(long after, int maxRows) {
+        if (after < coldStore.getMovedMaxId()) {
+            throw new BadRequestException("Курсор устарел: hit после него перенесены в холодный ярус, "
+                    + "нужна полная синхронизация");
+        }
+        long horizon = writeWatermark.safeHorizon();
+        if (horizon <= after) {
+            return new ChangePage(after, false, List.of());
+        }
+        Map<String, Object> page = jdbcTemplate.queryForMap("SELECT MAX(id) AS last_id, COUNT(*) AS row_count FROM "
+                + "(SELECT id FROM stats WHERE id > ? AND id <= ? ORDER BY id LIMIT ?) AS p", after, horizon, maxRows);
+        long rows = ((Number) page.get("row_count")).longValue();
+        if (rows < maxRows) {
+            return new ChangePage(horizon, false, rows == 0 ? List.of() : queryChanges(after, horizon));
+        }
+        long last = ((Number) page.get("last_id")).longValue();
+        return new ChangePage(last, last < horizon, queryChanges(after, last));
+    }
+
+    /**
+     * Запросы, не заходящие в холодный ярус, считаются одним SQL: таблица запросов VALUES соединяется со stats
+     * по uri и собственному интервалу каждого запроса, так что база проходит по индексу (uri_id, created)
+     * отдельно для каждого окна. Остальные запросы выполняются по одному
+     **/
+    @Override
+    public List<StatsQueryResult> getBatchStats(List<StatsQuery> queries) {
+        List<Object> params = new ArrayList<>();
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            StatsQuery query = queries.get(i);
+            if (!coldStore.covers(query.getStart())) {
+                rows.add("(CAST(? AS INTEGER), CAST(? AS VARCHAR), CAST(? AS TIMESTAMP), CAST(? AS TIMESTAMP), "
+                        + "CAST(? AS BOOLEAN))");
+                params.addAll(List.of(i, query.getUri(), query.getStart(), query.getEnd(),
+                        Boolean.TRUE.equals(query.getUnique())));
+            }
+        }
+        Map<Integer, Long> hits = new HashMap<>();
+        if (!rows.isEmpty()) {
+            jdbcTemplate.query("SELECT q.idx, COUNT(h.ip) AS hits, COUNT(DISTINCT CASE WHEN q.uniq THEN h.ip END) AS uniq "
+                            + "FROM (VALUES " + String.join(", ", rows) + ") AS q (idx, uri, start_time, end_time, uniq) "
+                            + "JOIN stats_uri u ON u.uri = q.uri "
+                            + "JOIN stats h ON h.uri_id = u.id AND h.created >= q.start_time AND h.created <= q.end_time "
+                            + "GROUP BY q.idx, h.app_id",
+                    rs -> {
+                        int index = rs.getInt("idx");
+                        boolean unique = Boolean.TRUE.equals(queries.get(index).getUnique());
+                        hits.merge(index, rs.getLong(unique ? "uniq" : "hits"), Long::sum);
+                    },
+                    params.toArray());
+        }
+        List<StatsQueryResult> results = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            StatsQuery query = queries.get(i);
+            results.add(coldStore.covers(query.getStart())
+                    ? getQueryStats(query)
+                    : StatsQueryResult.builder()
+                    .uri(query.getUri())
+                    .start(query.getStart())
+                    .end(query.getEnd())
+                    .unique(Boolean.TRUE.equals(query.getUnique()))
+                    .hits(hits.getOrDefault(i, 0L))
+                    .build());
+        }
+        return results;
+    }
+
+    private List<ViewStats> queryChanges(long after, long upTo) {
+        return jdbcTemplate.query("SELECT a.name AS app, u.uri AS uri, COUNT(*) AS hits FROM stats AS h " + RAW_NAMES
+                + " WHERE h.id > ? AND h.id <= ? GROUP BY a.name, u.uri ORDER BY a.name, u.uri", viewStatsMapper, after, upTo);
+    }
+
+    private String createStatsQuery(ViewsStatsRequest request, List<Object> params, boolean limited) {
+        RollupPlan plan = RollupPlan.of(request.getStart(), request.getEnd());
+        UriFilter uriFilter = createUriFilter(request.getUri());
+        if (!plan.usesRollups()) {
+            params.add(request.getStart());
+            params.add(request.getEnd());
+            uriFilter.addParam(params);
+            return createRawQuery("COUNT (ip)", "(created >= ? AND created <= ?)", uriFilter)
+                    + " ORDER BY hits DESC" + (limited ? createLimit(request, params) : "");
+        }
+
+        List<String> parts = new ArrayList<>();
+        parts.add(createRawQuery("COUNT (ip)", RAW_EDGES, uriFilter));
+        params.add(plan.getRawHead().from());
+        params.add(plan.getRawHead().to());
+        params.add(plan.getRawTail().from());
+        params.add(plan.getRawTail().to());
+        uriFilter.addParam(params);
+        parts.add(createRollupQuery("stats_minute", plan.getMinuteRanges(), uriFilter, params));
+        if (!plan.getHourRanges().isEmpty()) {
+            parts.add(createRollupQuery("stats_hour", plan.getHourRanges(), uriFilter, params));
+        }
+
+        return "SELECT app, uri, SUM(hits) AS hits FROM (" + String.join(" UNION ALL ", parts) + ") AS parts "
+                + "GROUP BY app, uri ORDER BY hits DESC" + (limited ? createLimit(request, params) : "");
+    }
+
+    private String createUniqueStatsQuery(ViewsStatsRequest request, List<Object> params) {
+        UriFilter uriFilter = createUriFilter(request.getUri());
+        params.add(request.getStart());
+        params.add(request.getEnd());
+        uriFilter.addParam(params);
+        return createRawQuery("COUNT (DISTINCT ip)", "(created >= ? AND created <= ?)", uriFilter)
+                + " ORDER BY hits DESC" + createLimit(request, params);
+    }
+
+    private String createLimit(ViewsStatsRequest request, List<Object> params) {
+        if (request.getLimit() == null) {
+            return "";
+        }
+        params.add(request.getLimit());
+        return " LIMIT ?";
+    }
+
+    @Override
+    public List<ViewStats> getApproxUniqueStats(ViewsStatsRequest request) {
+        RollupPlan plan = RollupPlan.ofBuckets(request.getStart(), request.getEnd(), ChronoUnit.HOURS);
+        if (!settings.isHllEnabled() || !plan.usesRollups()) {
+            return getUniqueStats(request);
         }
-        query += " GROUP BY app, uri ORDER BY hits DESC";
-        return jdbcTemplate.query(query, viewStatsMapper, request.getStart(), request.getEnd());
+        UriFilter uriFilter = createUriFilter(request.getUri());
+        Map<AppUri, HyperLogLog> sketches = new HashMap<>();
+        RollupPlan.Range hours = plan.getBucketRanges().get(0);
+        sketchStore.load("stats_hll", hours.from(), hours.to(), uriFilter, (app, uri, sketch) ->
+                sketches.merge(new AppUri(app, uri), HyperLogLog.fromBytes(sketch), HyperLogLog::merge));
+        jdbcTemplate.query(createRawEdgesQuery(false, uriFilter),
+                rs -> {
+                    sketches.computeIfAbsent(new AppUri(rs.getString("app"), rs.getString("uri")),
+                            key -> new HyperLogLog(settings.getHllPrecision())).add(IpCodec.decode(rs.getBytes("ip")));
+                },
+                rawEdgeParams(plan, uriFilter));
+        scanColdEdges(plan, request.getUri(), (time, app, uri, ip) ->
+                sketches.computeIfAbsent(new AppUri(app, uri), key -> new HyperLogLog(settings.getHllPrecision())).add(ip));
+        return sketches.entrySet().stream()
+                .map(e -> ViewStats.builder()
+                        .app(e.getKey().app())
+                        .uri(e.getKey().uri())
+                        .hits(e.getValue().estimate())
+                        .build())
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .limit(request.getLimit() == null ? Long.MAX_VALUE : request.getLimit())
+                .toList();
     }
 
-    private String createUrisQuery(List<String> uris) {
-        StringBuilder result = new StringBuilder("AND uri IN ('");
-        result.append(String.join("', '", uris));
-        return result.append("') ").toString();
+    protected UriFilter createUriFilter(List<String> uris) {
+        return UriFilter.of(uris, sqlDialect.isPostgres() ? settings.getUriJoinThreshold() : Integer.MAX_VALUE);
+    }
+
+    /**
+     * Агрегат по сырым строкам: группировка идет по номерам из словарей, строки app и uri
+     * подставляются уже к результату группировки
+     **/
+    private String createRawQuery(String aggregate, String timeCondition, UriFilter uriFilter) {
+        return "SELECT a.name AS app, u.uri AS uri, h.hits FROM (SELECT app_id, uri_id, " + aggregate + " AS hits "
+                + "FROM stats WHERE " + timeCondition + " " + uriFilter.dictionarySql() + "GROUP BY app_id, uri_id) AS h "
+                + RAW_NAMES;
+    }
+
+    /**
+     * Сырые строки неполных краев плана; параметры - {@link #rawEdgeParams}
+     **/
+    protected String createRawEdgesQuery(boolean distinct, UriFilter uriFilter) {
+        return createRawRowsQuery(distinct, RAW_EDGES, uriFilter);
+    }
+
+    private String createRawRowsQuery(boolean distinct, String timeCondition, UriFilter uriFilter) {
+        return "SELECT " + (distinct ? "DISTINCT " : "") + "a.name AS app, u.uri AS uri, h.ip FROM stats AS h "
+                + RAW_NAMES + " WHERE " + timeCondition + " " + uriFilter.dictionarySql();
+    }
+
+    /**
+     * Hit холодного яруса за сырые края плана: начало без правой границы, конец включая ее
+     **/
+    protected void scanColdEdges(RollupPlan plan, List<String> uris, ColumnarFile.RowHandler handler) {
+        if (plan.getRawHead() != null) {
+            coldStore.scan(plan.getRawHead().from(), plan.getRawHead().to(), false, uris, handler);
+        }
+        coldStore.scan(plan.getRawTail().from(), plan.getRawTail().to(), true, uris, handler);
+    }
+
+    protected List<ViewStats> toViewStats(Map<AppUri, Long> hits, ViewsStatsRequest request) {
+        return hits.entrySet().stream()
+                .map(e -> ViewStats.builder()
+                        .app(e.getKey().app())
+                        .uri(e.getKey().uri())
+                        .hits(e.getValue())
+                        .build())
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .limit(request.getLimit() == null ? Long.MAX_VALUE : request.getLimit())
+                .toList();
+    }
+
+    protected Object[] rawEdgeParams(RollupPlan plan, UriFilter uriFilter) {
+        List<Object> params = new ArrayList<>(List.of(plan.getRawHead().from(), plan.getRawHead().to(),
+                plan.getRawTail().from(), plan.getRawTail().to()));
+        uriFilter.addParam(params);
+        return params.toArray();
+    }
+
+    private String createRollupQuery(String table, List<RollupPlan.Range> ranges, UriFilter uriFilter, List<Object> params) {
+        List<String> conditions = new ArrayList<>();
+        for (RollupPlan.Range range : ranges) {
+            conditions.add("(bucket >= ? AND bucket < ?)");
+            params.add(range.from());
+            params.add(range.to());
+        }
+        if (conditions.isEmpty()) {
+            conditions.add("1 = 0");
+        }
+        uriFilter.addParam(params);
+        return "SELECT app, uri, SUM(hits) AS hits FROM " + table
+                + " WHERE (" + String.join(" OR ", conditions) + ") " + uriFilter.sql() + " GROUP BY app, uri";
+    }
+
+    /**
+     * Удаляет hit uri с id не больше upToId и вычитает hits из сверток; вызывается внутри транзакции при переносе uri
+     * в другой шард. Скетчи HLL вычесть нельзя, они удаляются вместе с остатком сверток в {@link #dropUri}
+     **/
+    void removeHits(String uri, long upToId, List<StatRequest> hits) {
+        jdbcTemplate.update("DELETE FROM stats WHERE uri_id = ? AND id <= ?", dimensions.uriId(uri), upToId);
+        updateRollups(hits, -1);
+    }
+
+    void dropUri(String uri) {
+        for (String table : List.of("stats_minute", "stats_hour", "stats_hll")) {
+            jdbcTemplate.update("DELETE FROM " + table + " WHERE uri = ?", uri);
+        }
+    }
+
+    private void updateRollups(List<StatRequest> hits, long delta) {
+        Map<BucketKey, Long> minutes = new TreeMap<>();
+        Map<BucketKey, Long> hours = new TreeMap<>();
+        for (StatRequest hit : hits) {
+            minutes.merge(new BucketKey(hit.getApp(), hit.getUri(), hit.getTimestamp().truncatedTo(ChronoUnit.MINUTES)),
+                    delta, Long::sum);
+            hours.merge(new BucketKey(hit.getApp(), hit.getUri(), hit.getTimestamp().truncatedTo(ChronoUnit.HOURS)),
+                    delta, Long::sum);
+        }
+        upsertRollup("stats_minute", minutes);
+        upsertRollup("stats_hour", hours);
+    }
+
+    private void updateSketches(List<StatRequest> hits) {
+        if (!settings.isHllEnabled()) {
+            return;
+        }
+        Map<BucketKey, HyperLogLog> sketches = new HashMap<>();
+        for (StatRequest hit : hits) {
+            sketches.computeIfAbsent(new BucketKey(hit.getApp(), hit.getUri(), hit.getTimestamp().truncatedTo(ChronoUnit.HOURS)),
+                    key -> new HyperLogLog(settings.getHllPrecision())).add(hit.getIp());
+        }
+        Map<BucketKey, byte[]> serialized = new HashMap<>();
+        sketches.forEach((key, sketch) -> serialized.put(key, sketch.toBytes()));
+        sketchStore.merge("stats_hll", serialized, (stored, added) ->
+                HyperLogLog.fromBytes(stored).merge(HyperLogLog.fromBytes(added)).toBytes());
+    }
+
+    protected void upsertRollup(String table, Map<BucketKey, Long> counts) {
+        String query;
+        if (sqlDialect.isPostgres()) {
+            query = "INSERT INTO " + table + " (app, uri, bucket, hits) VALUES (?, ?, ?, ?) "
+                    + "ON CONFLICT (app, uri, bucket) DO UPDATE SET hits = " + table + ".hits + EXCLUDED.hits";
+        } else {
+            query = "MERGE INTO " + table + " AS r "
+                    + "USING (VALUES (CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS TIMESTAMP), "
+                    + "CAST(? AS BIGINT))) AS v (app, uri, bucket, hits) "
+                    + "ON r.app = v.app AND r.uri = v.uri AND r.bucket = v.bucket "
+                    + "WHEN MATCHED THEN UPDATE SET hits = r.hits + v.hits "
+                    + "WHEN NOT MATCHED THEN INSERT (app, uri, bucket, hits) VALUES (v.app, v.uri, v.bucket, v.hits)";
+        }
+        List<Map.Entry<BucketKey, Long>> entries = new ArrayList<>(counts.entrySet());
+        jdbcTemplate.batchUpdate(query, entries, entries.size(), (PreparedStatement ps, Map.Entry<BucketKey, Long> e) -> {
+            ps.setString(1, e.getKey().app());
+            ps.setString(2, e.getKey().uri());
+            ps.setTimestamp(3, Timestamp.valueOf(e.getKey().bucket()));
+            ps.setLong(4, e.getValue());
+        });
     }
 }
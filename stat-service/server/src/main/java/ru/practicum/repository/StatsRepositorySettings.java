@@ -0,0 +1,27 @@
+package ru.practicum.repository;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Настройки чтения репозитория статистики, общие для основного хранилища и шардов
+ **/
+@Getter
+@Component
+public class StatsRepositorySettings {
+    private final boolean hllEnabled;
+    private final int hllPrecision;
+    private final int streamFetchSize;
+    private final int uriJoinThreshold;
+
+    public StatsRepositorySettings(@Value("${stats.hll.enabled:true}") boolean hllEnabled,
+                                   @Value("${stats.hll.precision:14}") int hllPrecision,
+                                   @Value("${stats.stream.fetch-size:1000}") int streamFetchSize,
+                                   @Value("${stats.query.uri-join-threshold:1000}") int uriJoinThreshold) {
+        this.hllEnabled = hllEnabled;
+        this.hllPrecision = hllPrecision;
+        this.streamFetchSize = streamFetchSize;
+        this.uriJoinThreshold = uriJoinThreshold;
+    }
+}
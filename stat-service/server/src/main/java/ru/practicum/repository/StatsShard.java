@@ -0,0 +1,40 @@
+package ru.practicum.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Getter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Шард хранилища: отдельный источник данных со своим экземпляром {@link StatsRepositoryImpl}.
+ * Репозиторий шарда создается вручную, а не бином, поэтому записи в него оборачиваются в транзакцию шарда явно
+ **/
+@Getter
+public class StatsShard implements AutoCloseable {
+    private final String name;
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final StatsPartitionManager partitionManager;
+    private final StatsRepositoryImpl repository;
+
+    StatsShard(String name, HikariDataSource dataSource, TransactionTemplate transaction,
+               StatsPartitionManager partitionManager, StatsRepositoryImpl repository) {
+        this.name = name;
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transaction = transaction;
+        this.partitionManager = partitionManager;
+        this.repository = repository;
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
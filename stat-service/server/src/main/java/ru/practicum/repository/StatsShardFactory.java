@@ -0,0 +1,95 @@
+package ru.practicum.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.mapper.ViewStatsMapper;
+
+/**
+ * Создает шарды: пул соединений, компоненты хранилища на нем и {@link StatsRepositoryImpl} с настройками stats.*
+ * из контекста. На шарде без таблицы stats при stats.sharding.init-schema=true выполняется скрипт схемы.
+ * Холодный ярус и лента изменений на шардах не используются
+ **/
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.repository", havingValue = "sharded")
+public class StatsShardFactory {
+    private final ViewStatsMapper viewStatsMapper;
+    private final StatsRepositorySettings settings;
+    private final String username;
+    private final String password;
+    private final boolean initSchema;
+    private final boolean partitioningEnabled;
+    private final int monthsAhead;
+    private final int retentionMonths;
+
+    public StatsShardFactory(ViewStatsMapper viewStatsMapper,
+                             StatsRepositorySettings settings,
+                             @Value("${stats.sharding.username:}") String username,
+                             @Value("${stats.sharding.password:}") String password,
+                             @Value("${stats.sharding.init-schema:true}") boolean initSchema,
+                             @Value("${stats.partitioning.enabled:false}") boolean partitioningEnabled,
+                             @Value("${stats.partitioning.months-ahead:2}") int monthsAhead,
+                             @Value("${stats.retention.months:0}") int retentionMonths) {
+        this.viewStatsMapper = viewStatsMapper;
+        this.settings = settings;
+        this.username = username;
+        this.password = password;
+        this.initSchema = initSchema;
+        this.partitioningEnabled = partitioningEnabled;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+    }
+
+    public StatsShard create(String name, String url) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        dataSource.setPoolName("stats-shard-" + name);
+        try {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+            SqlDialect sqlDialect = new SqlDialect(jdbcTemplate);
+            if (initSchema && !hasSchema(jdbcTemplate)) {
+                String script = sqlDialect.isPostgres() ? "schema.sql" : "schema-h2.sql";
+                log.info("Шард {}: создание схемы из {}", name, script);
+                ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource(script));
+                populator.setSqlScriptEncoding("UTF-8");
+                populator.execute(dataSource);
+            }
+            StatsPartitionManager partitionManager = new StatsPartitionManager(jdbcTemplate, transactionManager,
+                    partitioningEnabled, monthsAhead, retentionMonths);
+            partitionManager.init();
+            StatsRepositoryImpl repository = new StatsRepositoryImpl(jdbcTemplate, viewStatsMapper, sqlDialect,
+                    new SketchStore(jdbcTemplate, sqlDialect),
+                    new DimensionDictionary(jdbcTemplate, sqlDialect),
+                    new ColdStore(jdbcTemplate, false, ".", 0, retentionMonths),
+                    new WriteWatermark(jdbcTemplate, 0), settings);
+            return new StatsShard(name, dataSource, new TransactionTemplate(transactionManager), partitionManager, repository);
+        } catch (RuntimeException e) {
+            dataSource.close();
+            throw e;
+        }
+    }
+
+    private static boolean hasSchema(JdbcTemplate jdbcTemplate) {
+        try {
+            jdbcTemplate.queryForList("SELECT id FROM stats WHERE 1 = 0");
+            return true;
+        } catch (DataAccessException e) {
+            return false;
+        }
+    }
+}
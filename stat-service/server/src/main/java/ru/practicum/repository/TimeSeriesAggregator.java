@@ -0,0 +1,53 @@
+package ru.practicum.repository;
+
+import ru.practicum.ViewStatsPoint;
+import ru.practicum.ViewStatsSeries;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Сборка временных рядов в памяти за один проход по hit: число просмотров и множество IP на корзину.
+ * Корзины без hit в результат не попадают
+ **/
+class TimeSeriesAggregator {
+    private final ChronoUnit unit;
+    private final Map<AppUri, Map<LocalDateTime, Bucket>> series = new HashMap<>();
+
+    TimeSeriesAggregator(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    void add(String app, String uri, LocalDateTime time, Object ip) {
+        Bucket bucket = series.computeIfAbsent(new AppUri(app, uri), key -> new TreeMap<>())
+                .computeIfAbsent(time.truncatedTo(unit), key -> new Bucket());
+        bucket.hits++;
+        bucket.ips.add(ip);
+    }
+
+    List<ViewStatsSeries> result() {
+        List<ViewStatsSeries> result = new ArrayList<>(series.size());
+        series.forEach((key, buckets) -> {
+            List<ViewStatsPoint> points = new ArrayList<>(buckets.size());
+            buckets.forEach((time, bucket) -> points.add(ViewStatsPoint.builder()
+                    .bucket(time)
+                    .hits(bucket.hits)
+                    .unique((long) bucket.ips.size())
+                    .build()));
+            result.add(ViewStatsSeries.builder().app(key.app()).uri(key.uri()).points(points).build());
+        });
+        return result;
+    }
+
+    private static class Bucket {
+        private long hits;
+        private final Set<Object> ips = new HashSet<>();
+    }
+}
@@ -0,0 +1,55 @@
+package ru.practicum.repository;
+
+import java.util.List;
+
+/**
+ * Условие на uri, передаваемое одним параметром-массивом: текст запроса не зависит от списка uri,
+ * поэтому подготовленный запрос и его план переиспользуются. Длинные списки соединяются
+ * как таблица через UNNEST, чтобы планировщик мог выбрать hash-соединение (только в Postgres:
+ * H2 выполняет такой подзапрос построчно, поэтому для него порог не задается)
+ **/
+public final class UriFilter {
+    private static final UriFilter NONE = new UriFilter(null, null);
+
+    private final String condition;
+    private final String[] uris;
+
+    private UriFilter(String condition, String[] uris) {
+        this.condition = condition;
+        this.uris = uris;
+    }
+
+    public static UriFilter of(List<String> uris, int joinThreshold) {
+        if (uris == null || uris.isEmpty()) {
+            return NONE;
+        }
+        String[] values = uris.stream().distinct().toArray(String[]::new);
+        if (values.length > joinThreshold) {
+            return new UriFilter("uri IN (SELECT u FROM UNNEST(CAST(? AS VARCHAR ARRAY)) AS f (u))", values);
+        }
+        return new UriFilter("uri = ANY (CAST(? AS VARCHAR ARRAY))", values);
+    }
+
+    /**
+     * Условие для таблиц, где uri хранится строкой
+     **/
+    public String sql() {
+        return condition == null ? "" : "AND " + condition + " ";
+    }
+
+    /**
+     * Условие для таблицы stats, где вместо uri хранится номер из словаря stats_uri
+     **/
+    public String dictionarySql() {
+        return condition == null ? "" : "AND uri_id IN (SELECT id FROM stats_uri WHERE " + condition + ") ";
+    }
+
+    /**
+     * Добавляет параметр условия, если он есть; вызывать в том месте, где условие стоит в запросе
+     **/
+    public void addParam(List<Object> params) {
+        if (uris != null) {
+            params.add(uris);
+        }
+    }
+}
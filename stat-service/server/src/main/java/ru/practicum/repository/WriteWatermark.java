@@ -0,0 +1,71 @@
+package ru.practicum.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Безопасная граница stats.id для ленты изменений: все строки с id не больше границы уже зафиксированы или откачены.
+ * Последовательность выдает id в порядке вставки, но транзакции фиксируются в другом порядке, поэтому
+ * MAX(id) сам по себе границей не является. Запись регистрируется до вставки и снимается по завершении транзакции;
+ * граница - MAX(id), прочитанный до снимка номеров, когда все записи из снимка завершились.
+ * Учитываются только записи этого экземпляра сервера
+ **/
+@Slf4j
+@Component
+@ConditionalOnJdbcStore
+public class WriteWatermark {
+    private final JdbcTemplate jdbcTemplate;
+    private final long waitMs;
+    private final AtomicLong tickets = new AtomicLong();
+    private final ConcurrentSkipListSet<Long> active = new ConcurrentSkipListSet<>();
+    private final AtomicLong safeHorizon = new AtomicLong();
+
+    public WriteWatermark(JdbcTemplate jdbcTemplate, @Value("${stats.changes.wait-ms:1000}") long waitMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.waitMs = waitMs;
+    }
+
+    /**
+     * Регистрирует запись текущей транзакции; вызывается до вставки строк
+     **/
+    public void begin() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        long ticket = tickets.incrementAndGet();
+        active.add(ticket);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                active.remove(ticket);
+            }
+        });
+    }
+
+    /**
+     * Граница, до которой строки stats больше не появятся. Если незавершенные записи не успели завершиться
+     * за stats.changes.wait-ms, возвращается предыдущая граница
+     **/
+    public long safeHorizon() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM stats", Long.class);
+        long ticket = tickets.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs);
+        while (!active.headSet(ticket, true).isEmpty()) {
+            if (System.nanoTime() > deadline) {
+                log.warn("Лента изменений: записи не завершились за {} мс, граница остается {}", waitMs, safeHorizon.get());
+                return safeHorizon.get();
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return safeHorizon.accumulateAndGet(maxId == null ? 0 : maxId, Math::max);
+    }
+}
@@ -0,0 +1,222 @@
+package ru.practicum.segment;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Файл сегмента: записи фиксированной длины (время hit в мс, номера app, uri и ip, контрольная сумма),
+ * дописываемые через отображение файла в память. Для каждого блока из {@link #BLOCK_RECORDS} записей
+ * хранятся минимальное и максимальное время, по ним при чтении пропускаются блоки вне интервала.
+ * Писатель один, читатели видят только записи до опубликованного счетчика
+ **/
+@Slf4j
+public class Segment implements Closeable {
+    public static final int RECORD_SIZE = 24;
+    static final int BLOCK_RECORDS = 4096;
+
+    private static final long CHECKSUM_SEED = 0x5EC7_0000_0000_0001L;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long createdAt;
+    private final long[] blockMin;
+    private final long[] blockMax;
+
+    private volatile int count;
+    private volatile long minTime = Long.MAX_VALUE;
+    private volatile long maxTime = Long.MIN_VALUE;
+    private boolean sealed;
+
+    private Segment(Path path, FileChannel channel, MappedByteBuffer buffer, int capacity, int count) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.createdAt = System.currentTimeMillis();
+        int blocks = (capacity + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+        this.blockMin = new long[blocks];
+        this.blockMax = new long[blocks];
+        Arrays.fill(blockMin, Long.MAX_VALUE);
+        Arrays.fill(blockMax, Long.MIN_VALUE);
+        for (int i = 0; i < count; i++) {
+            index(i, buffer.getLong(i * RECORD_SIZE));
+        }
+        this.count = count;
+    }
+
+    /**
+     * Новый сегмент на capacity записей; файл создается сразу полного размера
+     **/
+    public static Segment create(Path path, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE);
+        return new Segment(path, channel, buffer, capacity, 0);
+    }
+
+    /**
+     * Открытие существующего сегмента после перезапуска: записи читаются до первой поврежденной
+     * или пустой, файл обрезается по последней целой записи. Открытый так сегмент только читается
+     **/
+    public static Segment recover(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        int valid = 0;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        while ((long) (valid + 1) * RECORD_SIZE <= size) {
+            record.clear();
+            channel.read(record, (long) valid * RECORD_SIZE);
+            if (!isValid(record, 0)) {
+                break;
+            }
+            valid++;
+        }
+        if ((long) valid * RECORD_SIZE < size) {
+            log.warn("Сегмент {}: отброшен хвост после {} целых записей", path.getFileName(), valid);
+            channel.truncate((long) valid * RECORD_SIZE);
+            channel.force(true);
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) valid * RECORD_SIZE);
+        Segment segment = new Segment(path, channel, buffer, valid, valid);
+        segment.sealed = true;
+        return segment;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isFull() {
+        return count >= capacity;
+    }
+
+    public boolean isOlderThan(long ageMs) {
+        return System.currentTimeMillis() - createdAt >= ageMs;
+    }
+
+    public boolean overlaps(long from, long to) {
+        return count > 0 && minTime <= to && maxTime >= from;
+    }
+
+    /**
+     * Дописывает запись; вызывать из одного потока-писателя. Возвращает false, если сегмент заполнен
+     **/
+    public boolean append(long time, int app, int uri, int ip) {
+        int position = count;
+        if (sealed || position >= capacity) {
+            return false;
+        }
+        int offset = position * RECORD_SIZE;
+        buffer.putLong(offset, time);
+        buffer.putInt(offset + 8, app);
+        buffer.putInt(offset + 12, uri);
+        buffer.putInt(offset + 16, ip);
+        buffer.putInt(offset + 20, checksum(time, app, uri, ip));
+        index(position, time);
+        count = position + 1;
+        return true;
+    }
+
+    /**
+     * Передает посетителю записи со временем в [from, to], пропуская блоки вне интервала
+     **/
+    public void scan(long from, long to, RecordVisitor visitor) {
+        int visible = count;
+        for (int block = 0; block * BLOCK_RECORDS < visible; block++) {
+            int first = block * BLOCK_RECORDS;
+            int last = Math.min(first + BLOCK_RECORDS, visible);
+            boolean complete = first + BLOCK_RECORDS <= visible;
+            if (complete && (blockMin[block] > to || blockMax[block] < from)) {
+                continue;
+            }
+            for (int i = first; i < last; i++) {
+                int offset = i * RECORD_SIZE;
+                long time = buffer.getLong(offset);
+                if (time >= from && time <= to) {
+                    visitor.visit(time, buffer.getInt(offset + 8), buffer.getInt(offset + 12),
+                            buffer.getInt(offset + 16));
+                }
+            }
+        }
+    }
+
+    /**
+     * Сбрасывает записи на диск и обрезает неиспользованный хвост файла; после этого сегмент только читается
+     **/
+    public void seal() throws IOException {
+        if (sealed) {
+            return;
+        }
+        sealed = true;
+        buffer.force();
+        try {
+            channel.truncate((long) count * RECORD_SIZE);
+        } catch (IOException e) {
+            log.warn("Сегмент {}: не удалось обрезать файл, хвост будет отброшен при восстановлении",
+                    path.getFileName(), e);
+        }
+    }
+
+    public void flush() {
+        if (!sealed) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        seal();
+        channel.close();
+    }
+
+    private void index(int position, long time) {
+        int block = position / BLOCK_RECORDS;
+        if (time < blockMin[block]) {
+            blockMin[block] = time;
+        }
+        if (time > blockMax[block]) {
+            blockMax[block] = time;
+        }
+        if (time < minTime) {
+            minTime = time;
+        }
+        if (time > maxTime) {
+            maxTime = time;
+        }
+    }
+
+    private static boolean isValid(ByteBuffer record, int offset) {
+        return record.getInt(offset + 20) == checksum(record.getLong(offset), record.getInt(offset + 8),
+                record.getInt(offset + 12), record.getInt(offset + 16));
+    }
+
+    /**
+     * Контрольная сумма с ненулевой затравкой, чтобы незаполненная (нулевая) запись не считалась целой
+     **/
+    static int checksum(long time, int app, int uri, int ip) {
+        long h = CHECKSUM_SEED ^ time * 0x9E3779B97F4A7C15L;
+        h = (h ^ ((long) app << 32 | (uri & 0xFFFFFFFFL))) * 0xC2B2AE3D27D4EB4FL;
+        h = (h ^ ip) * 0x165667B19E3779F9L;
+        h ^= h >>> 32;
+        return (int) h;
+    }
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(long time, int app, int uri, int ip);
+    }
+}
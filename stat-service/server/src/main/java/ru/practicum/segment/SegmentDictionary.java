@@ -0,0 +1,134 @@
+package ru.practicum.segment;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Словарь строк (app, uri, ip) сегментного хранилища: номер строки - ее порядковый номер в файле.
+ * Запись в файле: длина, байты UTF-8, CRC32. Новая строка дописывается в файл до того, как ее номер
+ * попадет в сегмент, поэтому после сбоя процесса все номера из сегментов есть в словаре. На случай сбоя ОС
+ * словарь сбрасывается на диск через {@link #flush()} раньше сегмента; гарантия действует до последнего сброса
+ **/
+@Slf4j
+public class SegmentDictionary implements Closeable {
+    private final FileChannel channel;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] values;
+    private int size;
+
+    private SegmentDictionary(FileChannel channel) {
+        this.channel = channel;
+        this.values = new String[1024];
+    }
+
+    /**
+     * Открывает или создает словарь; поврежденный хвост файла (недописанная строка) отбрасывается
+     **/
+    public static SegmentDictionary open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        SegmentDictionary dictionary = new SegmentDictionary(channel);
+        long fileSize = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        while (position + Integer.BYTES <= fileSize) {
+            header.clear();
+            channel.read(header, position);
+            int length = header.getInt(0);
+            if (length < 0 || position + Integer.BYTES + length + Integer.BYTES > fileSize) {
+                break;
+            }
+            ByteBuffer entry = ByteBuffer.allocate(length + Integer.BYTES);
+            channel.read(entry, position + Integer.BYTES);
+            byte[] bytes = Arrays.copyOf(entry.array(), length);
+            if (entry.getInt(length) != crc(bytes)) {
+                break;
+            }
+            dictionary.add(new String(bytes, StandardCharsets.UTF_8));
+            position += Integer.BYTES + length + Integer.BYTES;
+        }
+        if (position < fileSize) {
+            log.warn("Словарь сегментов: отброшен поврежденный хвост после {} строк", dictionary.size);
+            channel.truncate(position);
+        }
+        channel.position(position);
+        return dictionary;
+    }
+
+    public int id(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + bytes.length + Integer.BYTES)
+                    .putInt(bytes.length)
+                    .put(bytes)
+                    .putInt(crc(bytes))
+                    .flip();
+            try {
+                while (entry.hasRemaining()) {
+                    channel.write(entry);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось записать словарь сегментов", e);
+            }
+            return add(value);
+        }
+    }
+
+    /**
+     * Номер строки без добавления в словарь; null, если такой строки нет
+     **/
+    public Integer find(String value) {
+        return ids.get(value);
+    }
+
+    public String value(int id) {
+        return values[id];
+    }
+
+    public void flush() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private synchronized int add(String value) {
+        String[] current = values;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = value;
+        values = current;
+        ids.put(value, size);
+        return size++;
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+}
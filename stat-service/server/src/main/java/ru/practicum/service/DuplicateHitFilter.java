@@ -0,0 +1,79 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.practicum.StatRequest;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отсев повторов по hitId, который клиент выдает hit: клиент со спулом может дослать уже записанный hit,
+ * если ответ сервера не дошел. Id запоминаются после фиксации записи, поэтому hit из откаченной пачки
+ * можно дослать снова. Id хранятся в двух поколениях по stats.dedupe.capacity / 2: при заполнении текущего
+ * старое поколение забывается. Hit без hitId проходят всегда. Учитываются только записи этого экземпляра сервера
+ **/
+@Order(0)
+@Component
+public class DuplicateHitFilter implements HitFilter {
+    private final boolean enabled;
+    private final int generationSize;
+    private final Counter duplicateCounter;
+
+    private volatile Set<String> current = ConcurrentHashMap.newKeySet();
+    private volatile Set<String> previous = ConcurrentHashMap.newKeySet();
+
+    public DuplicateHitFilter(MeterRegistry meterRegistry,
+                              @Value("${stats.dedupe.enabled:true}") boolean enabled,
+                              @Value("${stats.dedupe.capacity:1000000}") int capacity) {
+        this.enabled = enabled;
+        this.generationSize = Math.max(1, capacity / 2);
+        this.duplicateCounter = Counter.builder("stats.filter.hits")
+                .tag("result", "duplicate")
+                .description("Hit с уже записанным hitId, отброшенные до записи")
+                .register(meterRegistry);
+        Gauge.builder("stats.dedupe.ids", this, filter -> filter.current.size() + filter.previous.size())
+                .description("Запомненные hitId для отсева повторов")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean accept(StatRequest hit) {
+        String hitId = hit.getHitId();
+        if (!enabled || hitId == null || (!current.contains(hitId) && !previous.contains(hitId))) {
+            return true;
+        }
+        duplicateCounter.increment();
+        return false;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onHitsSaved(HitsSavedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        for (StatRequest hit : event.hits()) {
+            if (hit.getHitId() != null) {
+                remember(hit.getHitId());
+            }
+        }
+    }
+
+    private void remember(String hitId) {
+        Set<String> ids = current;
+        ids.add(hitId);
+        if (ids.size() >= generationSize) {
+            synchronized (this) {
+                if (current == ids) {
+                    previous = ids;
+                    current = ConcurrentHashMap.newKeySet();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ru.practicum.service;
+
+import ru.practicum.StatRequest;
+
+/**
+ * Стадия фильтрации hit перед записью: отклоненный hit не попадает ни в хранилище, ни в кольцо и скетчи.
+ * Фильтры применяются по порядку бинов, hit записывается, только если его приняли все
+ **/
+public interface HitFilter {
+    boolean accept(StatRequest hit);
+}
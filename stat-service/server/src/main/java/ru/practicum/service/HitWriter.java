@@ -0,0 +1,188 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import ru.practicum.StatRequest;
+import ru.practicum.exceptions.ServiceUnavailableException;
+import ru.practicum.repository.StatsRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Асинхронная запись hit: ограниченная очередь и один поток, сбрасывающий хиты пачками
+ **/
+@Slf4j
+@Component
+public class HitWriter {
+    private final StatsRepository statsRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final boolean ackAfterFlush;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+    private final long ackTimeoutMs;
+    private final BlockingQueue<PendingHit> queue;
+    private final Timer flushTimer;
+    private final Counter rejectedCounter;
+    private final Counter failedCounter;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public HitWriter(StatsRepository statsRepository,
+                     ApplicationEventPublisher eventPublisher,
+                     MeterRegistry meterRegistry,
+                     @Value("${stats.ingest.mode:sync}") String mode,
+                     @Value("${stats.ingest.ack:enqueue}") String ack,
+                     @Value("${stats.ingest.queue-capacity:10000}") int queueCapacity,
+                     @Value("${stats.ingest.batch-size:500}") int batchSize,
+                     @Value("${stats.ingest.flush-interval-ms:200}") long flushIntervalMs,
+                     @Value("${stats.ingest.offer-timeout-ms:50}") long offerTimeoutMs,
+                     @Value("${stats.ingest.ack-timeout-ms:5000}") long ackTimeoutMs) {
+        this.statsRepository = statsRepository;
+        this.eventPublisher = eventPublisher;
+        this.enabled = "async".equalsIgnoreCase(mode);
+        this.ackAfterFlush = "flush".equalsIgnoreCase(ack);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.ackTimeoutMs = ackTimeoutMs;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        Gauge.builder("stats.ingest.queue.depth", queue, BlockingQueue::size)
+                .description("Количество hit в очереди на запись")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("stats.ingest.flush")
+                .description("Время записи пачки hit в базу")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("stats.ingest.rejected")
+                .description("Hit, отклоненные из-за переполнения очереди")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("stats.ingest.failed")
+                .description("Hit, которые не удалось записать в базу")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::runWriter, "stats-hit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("Асинхронная запись hit включена: batchSize={}, flushIntervalMs={}, ackAfterFlush={}",
+                batchSize, flushIntervalMs, ackAfterFlush);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        writerThread.join(flushIntervalMs + ackTimeoutMs);
+    }
+
+    public void write(StatRequest hit) {
+        PendingHit pending = new PendingHit(hit, ackAfterFlush ? new CompletableFuture<>() : null);
+        try {
+            if (!queue.offer(pending, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejectedCounter.increment();
+                throw new ServiceUnavailableException("Очередь записи статистики переполнена");
+            }
+            if (pending.flushed() != null) {
+                pending.flushed().get(ackTimeoutMs, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Запись статистики прервана");
+        } catch (TimeoutException e) {
+            throw new ServiceUnavailableException("Истекло время ожидания записи статистики");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Не удалось записать статистику", e.getCause());
+        }
+    }
+
+    private void runWriter() {
+        List<PendingHit> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingHit first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long left = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || left <= 0) {
+                        break;
+                    }
+                    PendingHit next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<PendingHit> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<StatRequest> hits = batch.stream().map(PendingHit::hit).toList();
+        try {
+            flushTimer.record(() -> statsRepository.saveHits(hits));
+        } catch (RuntimeException e) {
+            failedCounter.increment(hits.size());
+            log.error("Не удалось записать пачку из {} hit: {}", hits.size(), e.getMessage(), e);
+            batch.forEach(pending -> pending.fail(e));
+            return;
+        }
+        batch.forEach(PendingHit::complete);
+        eventPublisher.publishEvent(new HitsSavedEvent(hits));
+    }
+
+    private record PendingHit(StatRequest hit, CompletableFuture<Void> flushed) {
+        void complete() {
+            if (flushed != null) {
+                flushed.complete(null);
+            }
+        }
+
+        void fail(Throwable e) {
+            if (flushed != null) {
+                flushed.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ru.practicum.service;
+
+import ru.practicum.StatRequest;
+
+import java.util.List;
+
+/**
+ * Hit записаны в хранилище; внутри транзакции слушатели получают событие после фиксации
+ **/
+public record HitsSavedEvent(List<StatRequest> hits) {
+}
@@ -0,0 +1,188 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.practicum.StatRequest;
+import ru.practicum.sketch.CountMinSketch;
+
+import java.time.ZoneOffset;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Отсев ботов и скраперов по частоте hit с одного IP и с одного IP на один uri за скользящее окно
+ * stats.filter.window-seconds. Окно разбито на stats.filter.slices отрезков, в каждом - скетчи Count-Min,
+ * так что память не зависит от числа IP. Время берется из hit; hit старше окна не проверяются.
+ * В окно попадают только записанные hit, после фиксации транзакции: повтор откаченной пачки не считается дважды.
+ * Hit сверх порога только считаются (action=shadow), отбрасываются (action=drop) или сохраняются с вероятностью
+ * sample-rate (action=sample). Count-Min только завышает частоты, поэтому IP ниже порога отсекается лишь
+ * при переполнении скетча. За одним NAT может оказаться много пользователей, так что drop и sample стоит
+ * включать после оценки порогов в режиме shadow
+ **/
+@Component
+public class RateHitFilter implements HitFilter {
+    private final boolean enabled;
+    private final long sliceSeconds;
+    private final long ipLimit;
+    private final long ipUriLimit;
+    private final Action action;
+    private final double sampleRate;
+    private final int sketchWidth;
+    private final int sketchDepth;
+    private final AtomicReferenceArray<Slice> slices;
+    private final Counter passedCounter;
+    private final Counter shadowedCounter;
+    private final Counter sampledCounter;
+    private final Counter droppedCounter;
+
+    public RateHitFilter(MeterRegistry meterRegistry,
+                         @Value("${stats.filter.enabled:true}") boolean enabled,
+                         @Value("${stats.filter.window-seconds:60}") int windowSeconds,
+                         @Value("${stats.filter.slices:6}") int slices,
+                         @Value("${stats.filter.ip-limit:600}") long ipLimit,
+                         @Value("${stats.filter.ip-uri-limit:120}") long ipUriLimit,
+                         @Value("${stats.filter.action:shadow}") String action,
+                         @Value("${stats.filter.sample-rate:0.01}") double sampleRate,
+                         @Value("${stats.filter.sketch-width:2048}") int sketchWidth,
+                         @Value("${stats.filter.sketch-depth:4}") int sketchDepth) {
+        if (slices <= 0 || windowSeconds % slices != 0) {
+            throw new IllegalArgumentException("Окно фильтра " + windowSeconds + " с должно делиться на " + slices
+                    + " отрезков");
+        }
+        this.action = switch (action.toLowerCase()) {
+            case "shadow" -> Action.SHADOW;
+            case "drop" -> Action.DROP;
+            case "sample" -> Action.SAMPLE;
+            default -> throw new IllegalArgumentException("Действие фильтра должно быть shadow, drop или sample, получено "
+                    + action);
+        };
+        this.enabled = enabled;
+        this.sliceSeconds = windowSeconds / slices;
+        this.ipLimit = ipLimit;
+        this.ipUriLimit = ipUriLimit;
+        this.sampleRate = sampleRate;
+        this.sketchWidth = sketchWidth;
+        this.sketchDepth = sketchDepth;
+        this.slices = new AtomicReferenceArray<>(slices);
+        this.passedCounter = counter(meterRegistry, "passed", "Hit, прошедшие фильтр частоты");
+        this.shadowedCounter = counter(meterRegistry, "shadowed", "Hit сверх порога частоты, сохраненные в режиме shadow");
+        this.sampledCounter = counter(meterRegistry, "sampled", "Hit сверх порога частоты, сохраненные выборкой");
+        this.droppedCounter = counter(meterRegistry, "dropped", "Hit сверх порога частоты, отброшенные до записи");
+        Gauge.builder("stats.filter.memory", this, filter -> (double) filter.slices.length() * 2
+                        * filter.sketchWidth * filter.sketchDepth * Long.BYTES)
+                .description("Память скетчей фильтра частоты")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean accept(StatRequest hit) {
+        if (!enabled) {
+            return true;
+        }
+        long epoch = epoch(hit);
+        Slice current = slices.get(index(epoch));
+        if (current != null && current.epoch > epoch) {
+            passedCounter.increment();
+            return true;
+        }
+        String ipUri = hit.getIp() + " " + hit.getUri();
+        long ipRate = 1;
+        long ipUriRate = 1;
+        for (int back = 0; back < slices.length(); back++) {
+            Slice slice = slices.get(index(epoch - back));
+            if (slice != null && slice.epoch == epoch - back) {
+                ipRate += slice.ips.estimate(hit.getIp());
+                ipUriRate += slice.ipUris.estimate(ipUri);
+            }
+        }
+        if (ipRate <= ipLimit && ipUriRate <= ipUriLimit) {
+            passedCounter.increment();
+            return true;
+        }
+        switch (action) {
+            case SHADOW -> {
+                shadowedCounter.increment();
+                return true;
+            }
+            case SAMPLE -> {
+                if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                    sampledCounter.increment();
+                    return true;
+                }
+            }
+            default -> {
+            }
+        }
+        droppedCounter.increment();
+        return false;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onHitsSaved(HitsSavedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        for (StatRequest hit : event.hits()) {
+            Slice slice = slice(epoch(hit));
+            if (slice != null) {
+                slice.ips.add(hit.getIp(), 1);
+                slice.ipUris.add(hit.getIp() + " " + hit.getUri(), 1);
+            }
+        }
+    }
+
+    private long epoch(StatRequest hit) {
+        return Math.floorDiv(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC), sliceSeconds);
+    }
+
+    /**
+     * Отрезок окна; null, если отрезок уже вытеснен более новым
+     **/
+    private Slice slice(long epoch) {
+        int index = index(epoch);
+        while (true) {
+            Slice slice = slices.get(index);
+            if (slice != null && slice.epoch == epoch) {
+                return slice;
+            }
+            if (slice != null && slice.epoch > epoch) {
+                return null;
+            }
+            if (slices.compareAndSet(index, slice, new Slice(epoch, sketchWidth, sketchDepth))) {
+                return slices.get(index);
+            }
+        }
+    }
+
+    private int index(long epoch) {
+        return (int) Math.floorMod(epoch, slices.length());
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result, String description) {
+        return Counter.builder("stats.filter.hits")
+                .tag("result", result)
+                .description(description)
+                .register(meterRegistry);
+    }
+
+    private enum Action {
+        SHADOW, DROP, SAMPLE
+    }
+
+    private static class Slice {
+        private final long epoch;
+        private final CountMinSketch ips;
+        private final CountMinSketch ipUris;
+
+        Slice(long epoch, int width, int depth) {
+            this.epoch = epoch;
+            this.ips = new CountMinSketch(width, depth);
+            this.ipUris = new CountMinSketch(width, depth);
+        }
+    }
+}
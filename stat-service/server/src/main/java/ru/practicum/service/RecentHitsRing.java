@@ -0,0 +1,229 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.practicum.StatRequest;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewsStatsRequest;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Кольцо последних stats.ring.window-minutes минут: по ячейке на минуту со счетчиками просмотров по (app, uri).
+ * Запрос /stats без unique, который заканчивается в окне, берет полные минуты окна из кольца, а начало
+ * интервала - из хранилища. Последняя минута используется, только если в ней нет hit позже конца интервала,
+ * иначе запрос целиком уходит в хранилище. Как и скетчи /stats/top, кольцо видит лишь hit,
+ * записанные этим экземпляром с момента запуска, поэтому включать его можно, только если в хранилище пишет
+ * один экземпляр сервера: при нескольких писателях последние минуты ответа занижены
+ **/
+@Component
+public class RecentHitsRing {
+    private static final long ENTRY_BYTES = 160;
+
+    private final boolean enabled;
+    private final int windowMinutes;
+    private final Clock clock;
+    private final LocalDateTime trackingSince;
+    private final AtomicReferenceArray<Slot> slots;
+    private final Counter ringQueries;
+    private final Counter storeQueries;
+
+    @Autowired
+    public RecentHitsRing(MeterRegistry meterRegistry,
+                          @Value("${stats.ring.enabled:false}") boolean enabled,
+                          @Value("${stats.ring.window-minutes:15}") int windowMinutes) {
+        this(meterRegistry, enabled, windowMinutes, Clock.systemDefaultZone());
+    }
+
+    RecentHitsRing(MeterRegistry meterRegistry, boolean enabled, int windowMinutes, Clock clock) {
+        this.enabled = enabled;
+        this.windowMinutes = windowMinutes;
+        this.clock = clock;
+        this.trackingSince = LocalDateTime.now(clock);
+        this.slots = new AtomicReferenceArray<>(windowMinutes + 2);
+        Gauge.builder("stats.ring.entries", this, RecentHitsRing::entries)
+                .description("Счетчиков (app, uri, минута) в кольце последних минут")
+                .register(meterRegistry);
+        Gauge.builder("stats.ring.memory", this, ring -> ring.entries() * ENTRY_BYTES)
+                .description("Оценка памяти кольца последних минут")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.ringQueries = Counter.builder("stats.ring.queries")
+                .tag("source", "ring")
+                .description("Запросы /stats, для которых последние минуты взяты из кольца")
+                .register(meterRegistry);
+        this.storeQueries = Counter.builder("stats.ring.queries")
+                .tag("source", "store")
+                .description("Запросы /stats, целиком выполненные хранилищем")
+                .register(meterRegistry);
+        Gauge.builder("stats.ring.served.ratio", this, RecentHitsRing::servedRatio)
+                .description("Доля запросов /stats, обслуженных с участием кольца")
+                .register(meterRegistry);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onHitsSaved(HitsSavedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime newest = LocalDateTime.now(clock).truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        for (StatRequest hit : event.hits()) {
+            LocalDateTime minute = hit.getTimestamp().truncatedTo(ChronoUnit.MINUTES);
+            if (minute.isAfter(newest)) {
+                continue;
+            }
+            Slot slot = slot(minute);
+            if (slot != null) {
+                slot.maxTime.accumulate(toMicros(hit.getTimestamp()));
+                slot.counts.computeIfAbsent(new Key(hit.getApp(), hit.getUri()), key -> new LongAdder()).increment();
+            }
+        }
+    }
+
+    /**
+     * Просмотры за интервал запроса: минуты окна из кольца, остальное через stored. Возвращает null,
+     * если кольцо выключено, не покрывает конец интервала или в последней минуте есть hit позже конца
+     **/
+    public List<ViewStats> getStats(ViewsStatsRequest request, Function<ViewsStatsRequest, List<ViewStats>> stored) {
+        LocalDateTime split = split(request.getStart());
+        Map<Key, Long> hits = enabled ? collect(request, split) : null;
+        if (hits == null) {
+            storeQueries.increment();
+            return null;
+        }
+        ringQueries.increment();
+        if (request.getStart().isBefore(split)) {
+            stored.apply(request.toBuilder()
+                            .end(split.minus(1, ChronoUnit.MICROS))
+                            .limit(null)
+                            .build())
+                    .forEach(stats -> hits.merge(new Key(stats.getApp(), stats.getUri()), stats.getHits(), Long::sum));
+        }
+        return hits.entrySet().stream()
+                .map(e -> ViewStats.builder()
+                        .app(e.getKey().app())
+                        .uri(e.getKey().uri())
+                        .hits(e.getValue())
+                        .build())
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .limit(request.getLimit() == null ? Long.MAX_VALUE : request.getLimit())
+                .toList();
+    }
+
+    private Map<Key, Long> collect(ViewsStatsRequest request, LocalDateTime split) {
+        LocalDateTime now = LocalDateTime.now(clock).truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime last = request.getEnd().truncatedTo(ChronoUnit.MINUTES);
+        if (last.isBefore(split) || last.isAfter(now.plusMinutes(1))) {
+            return null;
+        }
+        Set<String> uris = request.getUri() == null ? Set.of() : new HashSet<>(request.getUri());
+        Map<Key, Long> hits = new HashMap<>();
+        for (LocalDateTime minute = split; !minute.isAfter(last); minute = minute.plusMinutes(1)) {
+            Slot slot = slots.get(index(minute));
+            if (slot == null || slot.minute.isBefore(minute)) {
+                continue;
+            }
+            if (slot.minute.isAfter(minute)) {
+                return null;
+            }
+            slot.counts.forEach((key, adder) -> {
+                if (uris.isEmpty() || uris.contains(key.uri())) {
+                    hits.merge(key, adder.sum(), Long::sum);
+                }
+            });
+            if (minute.equals(last) && slot.maxTime.get() > toMicros(request.getEnd())) {
+                return null;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Первая минута интервала, с которой кольцо хранит все hit
+     **/
+    private LocalDateTime split(LocalDateTime start) {
+        LocalDateTime oldest = LocalDateTime.now(clock).truncatedTo(ChronoUnit.MINUTES).minusMinutes(windowMinutes - 1);
+        return Stream.of(ceilMinute(start), ceilMinute(trackingSince), oldest)
+                .max(Comparator.naturalOrder())
+                .orElseThrow();
+    }
+
+    private Slot slot(LocalDateTime minute) {
+        int index = index(minute);
+        while (true) {
+            Slot slot = slots.get(index);
+            if (slot != null && slot.minute.equals(minute)) {
+                return slot;
+            }
+            if (slot != null && slot.minute.isAfter(minute)) {
+                return null;
+            }
+            if (slots.compareAndSet(index, slot, new Slot(minute))) {
+                return slots.get(index);
+            }
+        }
+    }
+
+    private int index(LocalDateTime minute) {
+        return (int) Math.floorMod(minute.toEpochSecond(ZoneOffset.UTC) / 60, slots.length());
+    }
+
+    private long entries() {
+        long entries = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            Slot slot = slots.get(i);
+            entries += slot == null ? 0 : slot.counts.size();
+        }
+        return entries;
+    }
+
+    private double servedRatio() {
+        double total = ringQueries.count() + storeQueries.count();
+        return total == 0 ? 0 : ringQueries.count() / total;
+    }
+
+    private static LocalDateTime ceilMinute(LocalDateTime time) {
+        LocalDateTime floor = time.truncatedTo(ChronoUnit.MINUTES);
+        return floor.isBefore(time) ? floor.plusMinutes(1) : floor;
+    }
+
+    private static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1000;
+    }
+
+    private record Key(String app, String uri) {
+    }
+
+    /**
+     * Ячейка минуты; maxTime - самое позднее время hit в ней, в микросекундах
+     **/
+    private static class Slot {
+        private final LocalDateTime minute;
+        private final Map<Key, LongAdder> counts = new ConcurrentHashMap<>();
+        private final LongAccumulator maxTime = new LongAccumulator(Long::max, Long.MIN_VALUE);
+
+        Slot(LocalDateTime minute) {
+            this.minute = minute;
+        }
+    }
+}
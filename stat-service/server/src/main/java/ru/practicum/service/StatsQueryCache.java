@@ -0,0 +1,82 @@
+package ru.practicum.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewsStatsRequest;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Кэш результатов /stats по нормализованному запросу: uri отсортированы без повторов. Запрос загружается
+ * с точными границами. Конец интервала, отстоящий от текущего момента не дальше stats.cache.granularity-ms,
+ * в ключе округляется вверх, так что запросы с «текущим» концом в пределах одного отрезка получают общий
+ * результат - такой же устаревший, как при попадании в кэш. Ключ прошлых интервалов не округляется.
+ * Одинаковые одновременные запросы ждут одной загрузки. Новые hit видны не позже чем через stats.cache.ttl-ms
+ **/
+@Component
+public class StatsQueryCache {
+    private final boolean enabled;
+    private final long granularityMs;
+    private final Clock clock;
+    private final Cache<ViewsStatsRequest, List<ViewStats>> cache;
+
+    @Autowired
+    public StatsQueryCache(MeterRegistry meterRegistry,
+                           @Value("${stats.cache.enabled:true}") boolean enabled,
+                           @Value("${stats.cache.max-size:10000}") long maxSize,
+                           @Value("${stats.cache.ttl-ms:5000}") long ttlMs,
+                           @Value("${stats.cache.granularity-ms:5000}") long granularityMs) {
+        this(meterRegistry, enabled, maxSize, ttlMs, granularityMs, Clock.systemDefaultZone());
+    }
+
+    StatsQueryCache(MeterRegistry meterRegistry, boolean enabled, long maxSize, long ttlMs, long granularityMs,
+                    Clock clock) {
+        this.enabled = enabled;
+        this.granularityMs = granularityMs;
+        this.clock = clock;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "stats.query");
+    }
+
+    public List<ViewStats> get(ViewsStatsRequest request, Function<ViewsStatsRequest, List<ViewStats>> loader) {
+        if (!enabled) {
+            return loader.apply(request);
+        }
+        ViewsStatsRequest exact = request.toBuilder()
+                .uri(request.getUri() == null ? List.of() : request.getUri().stream().distinct().sorted().toList())
+                .build();
+        return cache.get(key(exact), key -> List.copyOf(loader.apply(exact)));
+    }
+
+    ViewsStatsRequest key(ViewsStatsRequest request) {
+        LocalDateTime end = request.getEnd();
+        if (end == null || granularityMs <= 1) {
+            return request;
+        }
+        long endMillis = end.toInstant(ZoneOffset.UTC).toEpochMilli();
+        long nowMillis = LocalDateTime.now(clock).toInstant(ZoneOffset.UTC).toEpochMilli();
+        if (Math.abs(endMillis - nowMillis) > granularityMs) {
+            return request;
+        }
+        long rounded = Math.ceilDiv(endMillis, granularityMs) * granularityMs;
+        return request.toBuilder()
+                .end(LocalDateTime.ofEpochSecond(Math.floorDiv(rounded, 1000L),
+                        (int) Math.floorMod(rounded, 1000L) * 1_000_000, ZoneOffset.UTC))
+                .build();
+    }
+}
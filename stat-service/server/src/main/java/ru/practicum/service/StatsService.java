@@ -1,14 +1,44 @@
 package ru.practicum.service;
 
 import ru.practicum.StatRequest;
+import ru.practicum.StatsChanges;
+import ru.practicum.StatsQuery;
+import ru.practicum.StatsQueryResult;
+import ru.practicum.TopViewStats;
 import ru.practicum.ViewStats;
+import ru.practicum.ViewStatsSeries;
 import ru.practicum.ViewsStatsRequest;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface StatsService {
     void saveHit(StatRequest hit);
 
+    void saveHits(List<StatRequest> hits);
+
+    void saveHits(InputStream json) throws IOException;
+
+    void saveHits(Reader ndjson) throws IOException;
+
+    /**
+     * Проверка параметров запроса статистики; BadRequestException при некорректном интервале или limit
+     **/
+    void validate(ViewsStatsRequest request);
+
     List<ViewStats> getViewStatsList(ViewsStatsRequest request);
-}
 
+    void streamViewStats(ViewsStatsRequest request, Consumer<ViewStats> consumer);
+
+    List<TopViewStats> getTopStats(ViewsStatsRequest request, boolean exact);
+
+    List<ViewStatsSeries> getTimeSeries(ViewsStatsRequest request, ChronoUnit bucket);
+
+    StatsChanges getChanges(String since, Integer limit);
+
+    List<StatsQueryResult> getBatchStats(List<StatsQuery> queries);
+}
@@ -1,37 +1,379 @@
 package ru.practicum.service;
 
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.StatRequest;
+import ru.practicum.StatsChanges;
+import ru.practicum.StatsQuery;
+import ru.practicum.StatsQueryResult;
+import ru.practicum.TopViewStats;
 import ru.practicum.ViewStats;
+import ru.practicum.ViewStatsPoint;
+import ru.practicum.ViewStatsSeries;
 import ru.practicum.ViewsStatsRequest;
 import ru.practicum.exceptions.BadRequestException;
+import ru.practicum.exceptions.BatchItemError;
+import ru.practicum.exceptions.BatchValidationException;
+import ru.practicum.repository.ChangePage;
 import ru.practicum.repository.StatsRepository;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
-@RequiredArgsConstructor
 public class StatsServiceImpl implements StatsService {
+    private static final String CURSOR_PREFIX = "stats-id:";
+
     private final StatsRepository statRepository;
+    private final HitWriter hitWriter;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final StatsQueryCache queryCache;
+    private final TopHitsTracker topHitsTracker;
+    private final RecentHitsRing recentHitsRing;
+    private final List<HitFilter> hitFilters;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchChunkSize;
+    private final long maxBuckets;
+    private final int maxChangeRows;
+    private final int maxBatchQueries;
+
+    public StatsServiceImpl(StatsRepository statRepository, HitWriter hitWriter, Validator validator,
+                            ObjectMapper objectMapper, StatsQueryCache queryCache, TopHitsTracker topHitsTracker,
+                            RecentHitsRing recentHitsRing, List<HitFilter> hitFilters,
+                            ApplicationEventPublisher eventPublisher,
+                            @Value("${stats.batch.chunk-size:1000}") int batchChunkSize,
+                            @Value("${stats.timeseries.max-buckets:10000}") long maxBuckets,
+                            @Value("${stats.changes.max-rows:10000}") int maxChangeRows,
+                            @Value("${stats.query.batch-max:1000}") int maxBatchQueries) {
+        this.statRepository = statRepository;
+        this.hitWriter = hitWriter;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.queryCache = queryCache;
+        this.topHitsTracker = topHitsTracker;
+        this.recentHitsRing = recentHitsRing;
+        this.hitFilters = hitFilters;
+        this.eventPublisher = eventPublisher;
+        this.batchChunkSize = batchChunkSize;
+        this.maxBuckets = maxBuckets;
+        this.maxChangeRows = maxChangeRows;
+        this.maxBatchQueries = maxBatchQueries;
+    }
 
     @Override
     public void saveHit(StatRequest hit) {
-        statRepository.saveHit(hit);
+        if (!accepted(hit)) {
+            return;
+        }
+        if (hitWriter.isEnabled()) {
+            hitWriter.write(hit);
+        } else {
+            statRepository.saveHit(hit);
+            eventPublisher.publishEvent(new HitsSavedEvent(List.of(hit)));
+        }
+    }
+
+    @Override
+    @Transactional
+    public void saveHits(List<StatRequest> hits) {
+        HitBatch batch = new HitBatch();
+        hits.forEach(batch::add);
+        batch.finish();
+    }
+
+    /**
+     * Разбор JSON-массива по элементам без сборки всей пачки в памяти; после синтаксической ошибки
+     * разбор прекращается, ошибка привязывается к номеру элемента, на котором он остановился
+     **/
+    @Override
+    @Transactional(rollbackFor = IOException.class)
+    public void saveHits(InputStream json) throws IOException {
+        HitBatch batch = new HitBatch();
+        try (JsonParser parser = objectMapper.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new BadRequestException("Ожидался JSON-массив hit");
+            }
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (parser.currentToken() == null) {
+                    batch.reject("Неожиданный конец JSON");
+                    break;
+                }
+                TreeNode node = parser.readValueAsTree();
+                try {
+                    batch.add(objectMapper.treeToValue(node, StatRequest.class));
+                } catch (JsonProcessingException e) {
+                    batch.reject("Некорректный элемент: " + e.getOriginalMessage());
+                }
+            }
+        } catch (JsonProcessingException e) {
+            batch.reject("Некорректный JSON: " + e.getOriginalMessage());
+        }
+        batch.finish();
+    }
+
+    @Override
+    @Transactional(rollbackFor = IOException.class)
+    public void saveHits(Reader ndjson) throws IOException {
+        HitBatch batch = new HitBatch();
+        BufferedReader reader = new BufferedReader(ndjson);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                batch.add(objectMapper.readValue(line, StatRequest.class));
+            } catch (JsonProcessingException e) {
+                batch.reject("Некорректный JSON: " + e.getOriginalMessage());
+            }
+        }
+        batch.finish();
     }
 
     @Override
     public List<ViewStats> getViewStatsList(ViewsStatsRequest request) {
+        validate(request);
+        return queryCache.get(request, this::loadViewStats);
+    }
+
+    private List<ViewStats> loadViewStats(ViewsStatsRequest request) {
+        if (request.getUnique() != null) {
+            if (request.getUnique()) {
+                if (Boolean.TRUE.equals(request.getApproximate())) {
+                    return statRepository.getApproxUniqueStats(request);
+                }
+                return statRepository.getUniqueStats(request);
+            }
+        }
+        List<ViewStats> recent = recentHitsRing.getStats(request, statRepository::getStats);
+        return recent != null ? recent : statRepository.getStats(request);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamViewStats(ViewsStatsRequest request, Consumer<ViewStats> consumer) {
+        validate(request);
+        statRepository.streamStats(request, consumer);
+    }
+
+    /**
+     * Оценка по скетчам Space-Saving, а если они не покрывают интервал или запрошен exact - точный запрос
+     **/
+    @Override
+    public List<TopViewStats> getTopStats(ViewsStatsRequest request, boolean exact) {
+        if (request.getLimit() == null || request.getLimit() <= 0) {
+            throw new BadRequestException("Параметр k должен быть положительным");
+        }
+        validate(request);
+        if (!exact) {
+            List<TopViewStats> estimate = topHitsTracker.top(request.getStart(), request.getEnd(), request.getLimit(),
+                    statRepository::getStats);
+            if (estimate != null) {
+                return estimate;
+            }
+        }
+        return statRepository.getStats(request).stream()
+                .map(stats -> TopViewStats.builder()
+                        .app(stats.getApp())
+                        .uri(stats.getUri())
+                        .hits(stats.getHits())
+                        .error(0L)
+                        .build())
+                .toList();
+    }
+
+    /**
+     * Плотный ряд: для каждого uri все корзины от начала до конца интервала, пустые - с нулями
+     **/
+    @Override
+    public List<ViewStatsSeries> getTimeSeries(ViewsStatsRequest request, ChronoUnit bucket) {
+        validate(request);
+        LocalDateTime first = request.getStart().truncatedTo(bucket);
+        LocalDateTime last = request.getEnd().truncatedTo(bucket);
+        long buckets = bucket.between(first, last) + 1;
+        if (buckets > maxBuckets) {
+            throw new BadRequestException("Интервал содержит " + buckets + " корзин, допустимо не больше " + maxBuckets);
+        }
+        return statRepository.getTimeSeries(request, bucket).stream()
+                .map(series -> {
+                    Map<LocalDateTime, ViewStatsPoint> points = new HashMap<>();
+                    series.getPoints().forEach(point -> points.put(point.getBucket(), point));
+                    List<ViewStatsPoint> dense = new ArrayList<>((int) buckets);
+                    for (LocalDateTime time = first; !time.isAfter(last); time = time.plus(1, bucket)) {
+                        ViewStatsPoint point = points.get(time);
+                        dense.add(point != null ? point : ViewStatsPoint.builder().bucket(time).hits(0L).unique(0L).build());
+                    }
+                    return series.toBuilder().points(dense).build();
+                })
+                .sorted(Comparator.comparing(ViewStatsSeries::getApp).thenComparing(ViewStatsSeries::getUri))
+                .toList();
+    }
+
+    /**
+     * Страница не больше stats.changes.max-rows hit; курсор для клиента - непрозрачная строка
+     **/
+    @Override
+    public StatsChanges getChanges(String since, Integer limit) {
+        if (limit != null && limit <= 0) {
+            throw new BadRequestException("Параметр limit должен быть положительным");
+        }
+        int rows = limit == null ? maxChangeRows : Math.min(limit, maxChangeRows);
+        ChangePage page = statRepository.getChanges(decodeCursor(since), rows);
+        return StatsChanges.builder()
+                .cursor(encodeCursor(page.cursor()))
+                .hasMore(page.hasMore())
+                .changes(page.changes())
+                .build();
+    }
+
+    /**
+     * Все запросы проверяются заранее; при любой ошибке ни один не выполняется
+     **/
+    @Override
+    @Transactional(readOnly = true)
+    public List<StatsQueryResult> getBatchStats(List<StatsQuery> queries) {
+        if (queries.size() > maxBatchQueries) {
+            throw new BadRequestException("В пачке " + queries.size() + " запросов, допустимо не больше " + maxBatchQueries);
+        }
+        List<BatchItemError> errors = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            StatsQuery query = queries.get(i);
+            if (query == null) {
+                errors.add(new BatchItemError(i, "Пустой элемент"));
+                continue;
+            }
+            Set<ConstraintViolation<StatsQuery>> violations = validator.validate(query);
+            if (!violations.isEmpty()) {
+                errors.add(new BatchItemError(i, violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining("; "))));
+            } else if (query.getStart().isAfter(query.getEnd())) {
+                errors.add(new BatchItemError(i, "Дата старта поиска не может быть больше даты окончания"));
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new BatchValidationException("Запросы статистики не выполнены: ошибок " + errors.size(), errors);
+        }
+        return queries.isEmpty() ? List.of() : statRepository.getBatchStats(queries);
+    }
+
+    static String encodeCursor(long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((CURSOR_PREFIX + id).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static long decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+        long id;
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            id = decoded.startsWith(CURSOR_PREFIX) ? Long.parseLong(decoded.substring(CURSOR_PREFIX.length())) : -1;
+        } catch (IllegalArgumentException e) {
+            id = -1;
+        }
+        if (id >= 0) {
+            return id;
+        }
+        throw new BadRequestException("Некорректный курсор: " + cursor);
+    }
+
+    private boolean accepted(StatRequest hit) {
+        for (HitFilter filter : hitFilters) {
+            if (!filter.accept(hit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void validate(ViewsStatsRequest request) {
         if (request.getStart() != null && request.getEnd() != null) {
             if (request.getStart().isAfter(request.getEnd())) {
                 throw new BadRequestException("Дата старта поиска не может быть больше даты окончания");
             }
         }
-        if (request.getUnique() != null) {
-            if (request.getUnique()) {
-                return statRepository.getUniqueStats(request);
+        if (request.getLimit() != null && request.getLimit() <= 0) {
+            throw new BadRequestException("Параметр limit должен быть положительным");
+        }
+    }
+
+    /**
+     * Проверяет элементы пачки за один проход и пишет их частями, пропуская отклоненные фильтрами hit;
+     * после первой ошибки запись прекращается, а транзакция откатывается исключением со всеми найденными ошибками
+     **/
+    private class HitBatch {
+        private final List<StatRequest> chunk = new ArrayList<>();
+        private final List<BatchItemError> errors = new ArrayList<>();
+        private int index;
+
+        void add(StatRequest hit) {
+            if (hit == null) {
+                reject("Пустой элемент");
+                return;
             }
+            Set<ConstraintViolation<StatRequest>> violations = validator.validate(hit);
+            if (!violations.isEmpty()) {
+                reject(violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining("; ")));
+                return;
+            }
+            index++;
+            if (!errors.isEmpty() || !accepted(hit)) {
+                return;
+            }
+            chunk.add(hit);
+            if (chunk.size() >= batchChunkSize) {
+                flush();
+            }
+        }
+
+        void reject(String error) {
+            errors.add(new BatchItemError(index++, error));
+            chunk.clear();
+        }
+
+        void finish() {
+            if (!errors.isEmpty()) {
+                throw new BatchValidationException("Пачка hit не сохранена: ошибок " + errors.size(), errors);
+            }
+            flush();
+        }
+
+        private void flush() {
+            List<StatRequest> hits = List.copyOf(chunk);
+            statRepository.saveHits(hits);
+            eventPublisher.publishEvent(new HitsSavedEvent(hits));
+            chunk.clear();
         }
-        return statRepository.getStats(request);
     }
 }
@@ -0,0 +1,187 @@
+package ru.practicum.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.practicum.StatRequest;
+import ru.practicum.TopViewStats;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewsStatsRequest;
+import ru.practicum.repository.RollupPlan;
+import ru.practicum.sketch.SpaceSaving;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Скетчи Space-Saving по минутам и часам для /stats/top, обновляются при записи hit.
+ * Память на окно ограничена stats.top.capacity счетчиками, окна старше срока хранения удаляются.
+ * Окно полное, только если начинается не раньше запуска сервера: скетчи видят лишь hit, записанные этим экземпляром,
+ * поэтому по умолчанию выключены и включаются stats.top.enabled=true только при единственном писателе в хранилище
+ **/
+@Component
+public class TopHitsTracker {
+    private final boolean enabled;
+    private final int capacity;
+    private final int minuteRetention;
+    private final int hourRetention;
+    private final Clock clock;
+    private final LocalDateTime trackingSince;
+    private final Map<LocalDateTime, SpaceSaving<Key>> minutes = new ConcurrentHashMap<>();
+    private final Map<LocalDateTime, SpaceSaving<Key>> hours = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TopHitsTracker(@Value("${stats.top.enabled:false}") boolean enabled,
+                          @Value("${stats.top.capacity:500}") int capacity,
+                          @Value("${stats.top.minute-retention:180}") int minuteRetention,
+                          @Value("${stats.top.hour-retention:48}") int hourRetention) {
+        this(enabled, capacity, minuteRetention, hourRetention, Clock.systemDefaultZone());
+    }
+
+    TopHitsTracker(boolean enabled, int capacity, int minuteRetention, int hourRetention, Clock clock) {
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.minuteRetention = minuteRetention;
+        this.hourRetention = hourRetention;
+        this.clock = clock;
+        this.trackingSince = LocalDateTime.now(clock);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onHitsSaved(HitsSavedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now(clock);
+        for (StatRequest hit : event.hits()) {
+            Key key = new Key(hit.getApp(), hit.getUri());
+            record(minutes, hit.getTimestamp().truncatedTo(ChronoUnit.MINUTES), key, now, ChronoUnit.MINUTES, minuteRetention);
+            record(hours, hit.getTimestamp().truncatedTo(ChronoUnit.HOURS), key, now, ChronoUnit.HOURS, hourRetention);
+        }
+    }
+
+    /**
+     * Оценка k самых просматриваемых uri за [start, end]: полные часы и минуты берутся из скетчей,
+     * неполные края и минуты без скетча - точным запросом exact. Возвращает null, если скетчи часов
+     * не покрывают интервал или k больше размера скетча
+     **/
+    public List<TopViewStats> top(LocalDateTime start, LocalDateTime end, int k,
+                                  Function<ViewsStatsRequest, List<ViewStats>> exact) {
+        if (!enabled || k > capacity) {
+            return null;
+        }
+        LocalDateTime now = LocalDateTime.now(clock);
+        RollupPlan plan = RollupPlan.of(start, end);
+        List<Part> parts = new ArrayList<>();
+        for (RollupPlan.Range range : plan.getHourRanges()) {
+            for (LocalDateTime hour = range.from(); hour.isBefore(range.to()); hour = hour.plusHours(1)) {
+                if (!isComplete(hour, now, ChronoUnit.HOURS, hourRetention)) {
+                    return null;
+                }
+                addSketch(parts, hours.get(hour));
+            }
+        }
+        for (RollupPlan.Range range : plan.getMinuteRanges()) {
+            if (isComplete(range.from(), now, ChronoUnit.MINUTES, minuteRetention)) {
+                for (LocalDateTime minute = range.from(); minute.isBefore(range.to()); minute = minute.plusMinutes(1)) {
+                    addSketch(parts, minutes.get(minute));
+                }
+            } else {
+                addExact(parts, exact, range.from(), range.to().minus(1, ChronoUnit.MICROS));
+            }
+        }
+        if (plan.getRawHead() != null) {
+            addExact(parts, exact, plan.getRawHead().from(), plan.getRawHead().to().minus(1, ChronoUnit.MICROS));
+        }
+        addExact(parts, exact, plan.getRawTail().from(), plan.getRawTail().to());
+
+        Set<Key> keys = new HashSet<>();
+        parts.forEach(part -> keys.addAll(part.counts().keySet()));
+        List<TopViewStats> result = new ArrayList<>(keys.size());
+        for (Key key : keys) {
+            long upper = 0;
+            long lower = 0;
+            for (Part part : parts) {
+                long[] counted = part.counts().get(key);
+                if (counted == null) {
+                    upper += part.missing();
+                } else {
+                    upper += counted[0];
+                    lower += counted[0] - counted[1];
+                }
+            }
+            result.add(TopViewStats.builder()
+                    .app(key.app())
+                    .uri(key.uri())
+                    .hits(upper)
+                    .error(upper - lower)
+                    .build());
+        }
+        return result.stream()
+                .sorted(Comparator.comparing(TopViewStats::getHits).reversed())
+                .limit(k)
+                .toList();
+    }
+
+    private void record(Map<LocalDateTime, SpaceSaving<Key>> windows, LocalDateTime window, Key key, LocalDateTime now,
+                        ChronoUnit unit, int retention) {
+        if (!isComplete(window, now, unit, retention)) {
+            return;
+        }
+        SpaceSaving<Key> sketch = windows.get(window);
+        if (sketch == null) {
+            sketch = windows.computeIfAbsent(window, w -> new SpaceSaving<>(capacity));
+            LocalDateTime oldest = now.truncatedTo(unit).minus(retention, unit);
+            windows.keySet().removeIf(w -> w.isBefore(oldest));
+        }
+        sketch.add(key, 1);
+    }
+
+    private boolean isComplete(LocalDateTime window, LocalDateTime now, ChronoUnit unit, int retention) {
+        return !window.isBefore(trackingSince) && !window.isBefore(now.truncatedTo(unit).minus(retention, unit));
+    }
+
+    private static void addSketch(List<Part> parts, SpaceSaving<Key> sketch) {
+        if (sketch == null) {
+            return;
+        }
+        Map<Key, long[]> counts = new HashMap<>();
+        sketch.entries().forEach(entry -> counts.put(entry.item(), new long[]{entry.count(), entry.error()}));
+        parts.add(new Part(counts, sketch.minCount()));
+    }
+
+    private static void addExact(List<Part> parts, Function<ViewsStatsRequest, List<ViewStats>> exact,
+                                 LocalDateTime from, LocalDateTime to) {
+        if (to.isBefore(from)) {
+            return;
+        }
+        Map<Key, long[]> counts = new HashMap<>();
+        exact.apply(ViewsStatsRequest.builder().start(from).end(to).uri(List.of()).build())
+                .forEach(stats -> counts.put(new Key(stats.getApp(), stats.getUri()), new long[]{stats.getHits(), 0}));
+        parts.add(new Part(counts, 0));
+    }
+
+    private record Key(String app, String uri) {
+    }
+
+    /**
+     * Слагаемое оценки: счетчик и ошибка по элементам; missing - верхняя граница для отсутствующих
+     **/
+    private record Part(Map<Key, long[]> counts, long missing) {
+    }
+}
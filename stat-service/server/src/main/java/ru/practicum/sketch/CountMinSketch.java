@@ -0,0 +1,51 @@
+package ru.practicum.sketch;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Скетч Count-Min для оценки частот: depth строк по width счетчиков, оценка - минимум по строкам.
+ * Оценка не меньше истинной частоты и превышает ее не больше чем на e / width * total с вероятностью 1 - exp(-depth).
+ * Безопасен для одновременных вызовов
+ **/
+public class CountMinSketch {
+    private final int width;
+    private final int depth;
+    private final AtomicLongArray counters;
+
+    public CountMinSketch(int width, int depth) {
+        if (width <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("Размеры скетча Count-Min должны быть положительными, получено "
+                    + width + "x" + depth);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.counters = new AtomicLongArray(width * depth);
+    }
+
+    /**
+     * Добавляет элемент и возвращает оценку его частоты с учетом добавления
+     **/
+    public long add(String item, long count) {
+        long hash = HyperLogLog.hash(item);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.addAndGet(index(hash, row), count));
+        }
+        return estimate;
+    }
+
+    public long estimate(String item) {
+        long hash = HyperLogLog.hash(item);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    private int index(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        return row * width + Math.floorMod(h1 + row * h2, width);
+    }
+}
@@ -0,0 +1,169 @@
+package ru.practicum.sketch;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Скетч HyperLogLog для приближенного подсчета уникальных значений.
+ * Стандартная ошибка оценки 1.04 / sqrt(2^precision): для precision = 14 это около 0.8%
+ **/
+public class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private static final byte DENSE = 1;
+    private static final byte SPARSE = 2;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Точность HyperLogLog должна быть от " + MIN_PRECISION
+                    + " до " + MAX_PRECISION + ", получено " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public static double standardError(int precision) {
+        return 1.04 / Math.sqrt(1 << precision);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void add(String value) {
+        addHash(hash(value));
+    }
+
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        long rest = (hash << precision) | (1L << (precision - 1));
+        int rank = Long.numberOfLeadingZeros(rest) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Объединяет скетчи. Если точности различаются, результат имеет меньшую из них
+     **/
+    public HyperLogLog merge(HyperLogLog other) {
+        HyperLogLog target = precision <= other.precision ? this : fold(other.precision);
+        HyperLogLog source = other.precision == target.precision ? other : other.fold(target.precision);
+        for (int i = 0; i < target.registers.length; i++) {
+            if (source.registers[i] > target.registers[i]) {
+                target.registers[i] = source.registers[i];
+            }
+        }
+        return target;
+    }
+
+    public HyperLogLog fold(int newPrecision) {
+        if (newPrecision > precision) {
+            throw new IllegalArgumentException("Нельзя повысить точность скетча с " + precision + " до " + newPrecision);
+        }
+        if (newPrecision == precision) {
+            return this;
+        }
+        HyperLogLog result = new HyperLogLog(newPrecision);
+        int shift = precision - newPrecision;
+        int lowMask = (1 << shift) - 1;
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] == 0) {
+                continue;
+            }
+            int low = i & lowMask;
+            int rank = low != 0 ? Integer.numberOfLeadingZeros(low) - (32 - shift) + 1 : shift + registers[i];
+            int index = i >>> shift;
+            if (rank > result.registers[index]) {
+                result.registers[index] = (byte) rank;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Разреженный формат (индекс и ранг ненулевых регистров) используется, пока он короче плотного
+     **/
+    public byte[] toBytes() {
+        int nonZero = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                nonZero++;
+            }
+        }
+        if (nonZero * 4 < registers.length) {
+            ByteBuffer buffer = ByteBuffer.allocate(2 + nonZero * 4);
+            buffer.put(SPARSE).put((byte) precision);
+            for (int i = 0; i < registers.length; i++) {
+                if (registers[i] != 0) {
+                    buffer.putInt((i << 8) | registers[i]);
+                }
+            }
+            return buffer.array();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(2 + registers.length);
+        buffer.put(DENSE).put((byte) precision).put(registers);
+        return buffer.array();
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte format = buffer.get();
+        HyperLogLog result = new HyperLogLog(buffer.get());
+        if (format == DENSE) {
+            buffer.get(result.registers);
+        } else if (format == SPARSE) {
+            while (buffer.hasRemaining()) {
+                int entry = buffer.getInt();
+                result.registers[entry >>> 8] = (byte) (entry & 0xFF);
+            }
+        } else {
+            throw new IllegalArgumentException("Неизвестный формат скетча HyperLogLog: " + format);
+        }
+        return result;
+    }
+
+    public static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static double alpha(int m) {
+        return switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+    }
+}
@@ -0,0 +1,121 @@
+package ru.practicum.sketch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Скетч Space-Saving для частых элементов: не больше capacity счетчиков независимо от числа разных элементов.
+ * Новый элемент при заполненном скетче вытесняет счетчик с наименьшим значением и наследует его как ошибку,
+ * поэтому истинная частота лежит в [count - error, count], а частота отсутствующего элемента не больше {@link #minCount()}
+ **/
+public class SpaceSaving<T> {
+    private final int capacity;
+    private final Map<T, Counter<T>> counters;
+    private final List<Counter<T>> heap;
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Размер скетча Space-Saving должен быть положительным, получено " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new ArrayList<>(capacity);
+    }
+
+    public synchronized void add(T item, long count) {
+        total += count;
+        Counter<T> counter = counters.get(item);
+        if (counter != null) {
+            counter.count += count;
+            siftDown(counter.index);
+            return;
+        }
+        if (heap.size() < capacity) {
+            counter = new Counter<>(item, count, 0, heap.size());
+            heap.add(counter);
+            counters.put(item, counter);
+            siftUp(counter.index);
+            return;
+        }
+        Counter<T> min = heap.get(0);
+        counters.remove(min.item);
+        min.item = item;
+        min.error = min.count;
+        min.count += count;
+        counters.put(item, min);
+        siftDown(0);
+    }
+
+    /**
+     * Верхняя граница частоты любого элемента, которого нет среди счетчиков
+     **/
+    public synchronized long minCount() {
+        return heap.size() < capacity ? 0 : heap.get(0).count;
+    }
+
+    public synchronized long total() {
+        return total;
+    }
+
+    public synchronized List<Entry<T>> entries() {
+        List<Entry<T>> entries = new ArrayList<>(heap.size());
+        heap.forEach(counter -> entries.add(new Entry<>(counter.item, counter.count, counter.error)));
+        return entries;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap.get(parent).count <= heap.get(index).count) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            for (int child = 2 * index + 1; child <= 2 * index + 2 && child < heap.size(); child++) {
+                if (heap.get(child).count < heap.get(smallest).count) {
+                    smallest = child;
+                }
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Counter<T> a = heap.get(i);
+        Counter<T> b = heap.get(j);
+        heap.set(i, b);
+        heap.set(j, a);
+        a.index = j;
+        b.index = i;
+    }
+
+    public record Entry<T>(T item, long count, long error) {
+    }
+
+    private static class Counter<T> {
+        private T item;
+        private long count;
+        private long error;
+        private int index;
+
+        Counter(T item, long count, long error, int index) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+DROP TABLE IF EXISTS stats;
+DROP TABLE IF EXISTS stats_minute;
+DROP TABLE IF EXISTS stats_hour;
+DROP TABLE IF EXISTS stats_hll;
+DROP TABLE IF EXISTS stats_ip_dict;
+DROP TABLE IF EXISTS stats_ip_bitmap;
+DROP TABLE IF EXISTS stats_app;
+DROP TABLE IF EXISTS stats_uri;
+
+CREATE TABLE IF NOT EXISTS stats_app (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(255) NOT NULL UNIQUE
+    );
+
+CREATE TABLE IF NOT EXISTS stats_uri (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    uri VARCHAR(255) NOT NULL UNIQUE
+    );
+
+CREATE TABLE IF NOT EXISTS stats (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    ip BYTEA NOT NULL,
+    created TIMESTAMP WITHOUT TIME ZONE NOT NULL
+    );
+
+CREATE INDEX IF NOT EXISTS stats_created_idx ON stats (created);
+CREATE INDEX IF NOT EXISTS stats_uri_created_idx ON stats (uri_id, created);
+
+CREATE TABLE IF NOT EXISTS stats_minute (
+    app VARCHAR(255) NOT NULL,
+    uri VARCHAR(255) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (app, uri, bucket)
+    );
+
+CREATE INDEX IF NOT EXISTS stats_minute_bucket_idx ON stats_minute (bucket);
+
+CREATE TABLE IF NOT EXISTS stats_hour (
+    app VARCHAR(255) NOT NULL,
+    uri VARCHAR(255) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (app, uri, bucket)
+    );
+
+CREATE INDEX IF NOT EXISTS stats_hour_bucket_idx ON stats_hour (bucket);
+
+CREATE TABLE IF NOT EXISTS stats_hll (
+    app VARCHAR(255) NOT NULL,
+    uri VARCHAR(255) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (app, uri, bucket)
+    );
+
+CREATE INDEX IF NOT EXISTS stats_hll_bucket_idx ON stats_hll (bucket);
+
+CREATE TABLE IF NOT EXISTS stats_ip_dict (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    ip VARCHAR(255) NOT NULL UNIQUE
+    );
+
+CREATE TABLE IF NOT EXISTS stats_ip_bitmap (
+    app VARCHAR(255) NOT NULL,
+    uri VARCHAR(255) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (app, uri, bucket)
+    );
+
+CREATE INDEX IF NOT EXISTS stats_ip_bitmap_bucket_idx ON stats_ip_bitmap (bucket);
@@ -0,0 +1,40 @@
+package ru.practicum;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.practicum.repository.SegmentStatsRepository;
+import ru.practicum.repository.StatsRepository;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+@SpringBootTest
+@ActiveProfiles("edge")
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class EdgeServerTests {
+    @TempDir
+    static Path directory;
+
+    private final ApplicationContext context;
+
+    @DynamicPropertySource
+    static void segmentProperties(DynamicPropertyRegistry registry) {
+        registry.add("stats.segment.dir", () -> directory.toString());
+    }
+
+    @Test
+    void contextLoadsWithoutDataSource() {
+        assertInstanceOf(SegmentStatsRepository.class, context.getBean(StatsRepository.class));
+        assertEquals(0, context.getBeanNamesForType(DataSource.class).length);
+    }
+}
@@ -0,0 +1,28 @@
+package ru.practicum;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import ru.practicum.repository.ShardedStatsRepository;
+import ru.practicum.repository.StatsRepository;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+@SpringBootTest(properties = {
+        "stats.repository=sharded",
+        "stats.sharding.shards=one=jdbc:h2:mem:sharded-server-one,two=jdbc:h2:mem:sharded-server-two",
+        "stats.sharding.username=sa"
+})
+@ActiveProfiles("test")
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class ShardedServerTests {
+    private final ApplicationContext context;
+
+    @Test
+    void contextLoadsWithShards() {
+        assertInstanceOf(ShardedStatsRepository.class, context.getBean(StatsRepository.class));
+    }
+}
@@ -0,0 +1,59 @@
+package ru.practicum.cold;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ColumnarFileTest {
+    @TempDir
+    private Path directory;
+
+    @Test
+    public void testScanReadsOnlyOverlappingBlocks() throws IOException {
+        List<ColumnarFile.Row> rows = new ArrayList<>();
+        for (int i = 0; i < 10 * ColumnarFile.BLOCK_ROWS; i++) {
+            rows.add(new ColumnarFile.Row(1_000_000L * i, "ewm-main-service", "/events/" + i % 50, "10.0.0." + i % 256));
+        }
+        Path path = directory.resolve("cold.col");
+        ColumnarFile.write(path, new ColumnarFile.Meta(0, 1_000_000L * rows.size(), 42), rows);
+
+        ColumnarFile file = ColumnarFile.open(path);
+        long from = 1_000_000L * (3 * ColumnarFile.BLOCK_ROWS + 10);
+        long to = 1_000_000L * (4 * ColumnarFile.BLOCK_ROWS + 10);
+        List<String> seen = new ArrayList<>();
+        int blocks = file.scan(from, to, List.of(), (time, app, uri, ip) -> seen.add(uri));
+
+        assertEquals(2, blocks);
+        assertEquals(ColumnarFile.BLOCK_ROWS, seen.size());
+        assertEquals("/events/" + (3 * ColumnarFile.BLOCK_ROWS + 10) % 50, seen.get(0));
+        assertEquals(new ColumnarFile.Meta(0, 1_000_000L * rows.size(), 42), file.getMeta());
+        assertTrue(file.overlaps(from, to));
+        assertFalse(file.overlaps(1_000_000L * rows.size(), Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testScanFiltersUris() throws IOException {
+        List<ColumnarFile.Row> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            rows.add(new ColumnarFile.Row(i, "app", "/events/" + i % 10, "2001:db8::" + Integer.toHexString(i)));
+        }
+        Path path = directory.resolve("cold.col");
+        ColumnarFile.write(path, new ColumnarFile.Meta(0, 1000, 1), rows);
+
+        List<String> ips = new ArrayList<>();
+        ColumnarFile file = ColumnarFile.open(path);
+        file.scan(0, 1000, List.of("/events/3", "/unknown"), (time, app, uri, ip) -> ips.add(ip));
+
+        assertEquals(100, ips.size());
+        assertEquals("2001:db8::3", ips.get(0));
+        assertEquals(0, file.scan(0, 1000, List.of("/unknown"), (time, app, uri, ip) -> ips.add(ip)));
+    }
+}
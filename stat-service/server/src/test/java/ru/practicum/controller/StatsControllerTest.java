@@ -2,6 +2,7 @@ package ru.practicum.controller;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletException;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,21 +11,34 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import ru.practicum.StatRequest;
 import ru.practicum.ViewStats;
 import ru.practicum.ViewsStatsRequest;
+import ru.practicum.exceptions.BadRequestException;
 import ru.practicum.service.StatsService;
 
+import java.io.InputStream;
+import java.io.Reader;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.internal.verification.VerificationModeFactory.times;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(StatsController.class)
@@ -57,6 +71,35 @@ class StatsControllerTest {
         verify(statsService, times(1)).saveHit(any(StatRequest.class));
     }
 
+    @Test
+    public void testHitBatch() throws Exception {
+        StatRequest statRequest = StatRequest.builder()
+                .timestamp(LocalDateTime.now())
+                .uri("/uri1")
+                .app("test-app")
+                .ip("127.0.0.1")
+                .build();
+
+        mockMvc.perform(post("/hit/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(statRequest, statRequest))))
+                .andExpect(status().isCreated());
+
+        verify(statsService, times(1)).saveHits(any(InputStream.class));
+    }
+
+    @Test
+    public void testHitBatchNdjson() throws Exception {
+        mockMvc.perform(post("/hit/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("{\"app\":\"test-app\",\"uri\":\"/uri1\",\"ip\":\"127.0.0.1\"}\n"))
+                .andExpect(status().isCreated());
+
+        verify(statsService, times(1)).saveHits(any(Reader.class));
+    }
+
     @Test
     public void testGetStats() throws Exception {
         ViewsStatsRequest viewsStatsRequest = ViewsStatsRequest.builder()
@@ -79,4 +122,100 @@ class StatsControllerTest {
 
         verify(statsService, times(1)).getViewStatsList(any(ViewsStatsRequest.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetStatsStreamNdjson() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<ViewStats> consumer = invocation.getArgument(1);
+            consumer.accept(ViewStats.builder().app("test-app").uri("/uri1").hits(2L).build());
+            consumer.accept(ViewStats.builder().app("test-app").uri("/uri2").hits(1L).build());
+            return null;
+        }).when(statsService).streamViewStats(any(ViewsStatsRequest.class), any());
+
+        MvcResult result = mockMvc.perform(get("/stats")
+                        .param("start", "2024-01-01 00:00:00")
+                        .param("end", "2024-01-02 00:00:00")
+                        .param("stream", "true")
+                        .param("limit", "2")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"app\":\"test-app\",\"uri\":\"/uri1\",\"hits\":2}\n"
+                        + "{\"app\":\"test-app\",\"uri\":\"/uri2\",\"hits\":1}\n"));
+    }
+
+    @Test
+    public void testGetStatsStreamJsonArray() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<ViewStats> consumer = invocation.getArgument(1);
+            consumer.accept(ViewStats.builder().app("test-app").uri("/uri1").hits(2L).build());
+            return null;
+        }).when(statsService).streamViewStats(any(ViewsStatsRequest.class), any());
+
+        MvcResult result = mockMvc.perform(get("/stats")
+                        .param("start", "2024-01-01 00:00:00")
+                        .param("end", "2024-01-02 00:00:00")
+                        .param("stream", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"app\":\"test-app\",\"uri\":\"/uri1\",\"hits\":2}]", true));
+    }
+
+    @Test
+    public void testGetStatsStreamBadIntervalRejectedBeforeStreaming() throws Exception {
+        doThrow(new BadRequestException("Начало интервала позже конца"))
+                .when(statsService).validate(any(ViewsStatsRequest.class));
+
+        mockMvc.perform(get("/stats")
+                        .param("start", "2024-01-02 00:00:00")
+                        .param("end", "2024-01-01 00:00:00")
+                        .param("stream", "true"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isBadRequest());
+        verify(statsService, never()).streamViewStats(any(ViewsStatsRequest.class), any());
+    }
+
+    @Test
+    public void testGetStatsStreamFailureBeforeFirstRow() throws Exception {
+        doThrow(new IllegalStateException("Ошибка чтения"))
+                .when(statsService).streamViewStats(any(ViewsStatsRequest.class), any());
+
+        MvcResult result = mockMvc.perform(get("/stats")
+                        .param("start", "2024-01-01 00:00:00")
+                        .param("end", "2024-01-02 00:00:00")
+                        .param("stream", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isInternalServerError());
+    }
+
+    @Test
+    public void testGetStatsStreamFailureAfterCommitAbortsResponse() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<ViewStats> consumer = invocation.getArgument(1);
+            for (int i = 0; i < 1000; i++) {
+                consumer.accept(ViewStats.builder().app("test-app").uri("/uri" + i).hits(1L).build());
+            }
+            throw new IllegalStateException("Ошибка чтения");
+        }).when(statsService).streamViewStats(any(ViewsStatsRequest.class), any());
+
+        MvcResult result = mockMvc.perform(get("/stats")
+                        .param("start", "2024-01-01 00:00:00")
+                        .param("end", "2024-01-02 00:00:00")
+                        .param("stream", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        assertThrows(ServletException.class, () -> mockMvc.perform(asyncDispatch(result)));
+        assertFalse(result.getResponse().getContentAsString().endsWith("]"));
+    }
+}
@@ -0,0 +1,100 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import ru.practicum.StatRequest;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewsStatsRequest;
+import ru.practicum.mapper.ViewStatsMapper;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToLongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@JdbcTest
+@TestPropertySource(properties = "stats.repository=bitmap")
+@Import({BitmapStatsRepository.class, ViewStatsMapper.class, SqlDialect.class, SketchStore.class,
+        DimensionDictionary.class, ColdStore.class, WriteWatermark.class, StatsRepositorySettings.class, IpEncoder.class})
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class BitmapStatsRepositoryTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 20, 0, 0);
+
+    private final BitmapStatsRepository statsRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ViewStatsMapper viewStatsMapper;
+    private final IpEncoder ipEncoder;
+
+    @Test
+    public void testGetUniqueStatsMatchesCountDistinct() {
+        Random random = new Random(7);
+        List<StatRequest> hits = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            String ip = random.nextInt(10) == 0 ? "2001:db8::" + random.nextInt(30) : "10.0." + random.nextInt(3) + "." + random.nextInt(60);
+            hits.add(StatRequest.builder()
+                    .app("ewm-main-service")
+                    .uri("/events/" + random.nextInt(4))
+                    .ip(ip)
+                    .timestamp(BASE.plusMinutes(random.nextInt(4 * 24 * 60)))
+                    .build());
+        }
+        statsRepository.saveHits(hits);
+
+        for (int i = 0; i < 20; i++) {
+            LocalDateTime start = BASE.plusMinutes(random.nextInt(24 * 60));
+            LocalDateTime end = start.plusMinutes(random.nextInt(3 * 24 * 60));
+            ViewsStatsRequest request = ViewsStatsRequest.builder()
+                    .start(start)
+                    .end(end)
+                    .uri(Collections.emptyList())
+                    .unique(true)
+                    .build();
+            List<ViewStats> expected = jdbcTemplate.query("SELECT a.name AS app, u.uri AS uri, COUNT (DISTINCT ip) AS hits FROM stats s "
+                    + "JOIN stats_app a ON a.id = s.app_id JOIN stats_uri u ON u.id = s.uri_id "
+                    + "WHERE (created >= ? AND created <= ?) GROUP BY a.name, u.uri", viewStatsMapper, start, end);
+
+            assertEquals(toSortedStrings(expected), toSortedStrings(statsRepository.getUniqueStats(request)));
+        }
+    }
+
+    @Test
+    public void testEncoderResolvesDictionaryIdsUpFront() {
+        List<String> ips = List.of("10.0.0.1", "2001:db8::1", "2001:db8::2", "2001:db8::1");
+
+        ToLongFunction<String> encoder = ipEncoder.encoder(ips);
+
+        assertEquals(0x0A000001L, encoder.applyAsLong("10.0.0.1"));
+        assertEquals(encoder.applyAsLong("2001:db8::1"), ipEncoder.encoder(List.of("2001:db8::1")).applyAsLong("2001:db8::1"));
+        assertTrue(encoder.applyAsLong("2001:db8::1") >= 1L << 32);
+        assertNotEquals(encoder.applyAsLong("2001:db8::1"), encoder.applyAsLong("2001:db8::2"));
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stats_ip_dict WHERE ip LIKE '2001:db8::%'",
+                Integer.class));
+    }
+
+    @Test
+    public void testParseIpv4() {
+        assertEquals(0x0A000001L, IpEncoder.parseIpv4("10.0.0.1"));
+        assertEquals(0xFFFFFFFFL, IpEncoder.parseIpv4("255.255.255.255"));
+        assertEquals(-1, IpEncoder.parseIpv4("256.0.0.1"));
+        assertEquals(-1, IpEncoder.parseIpv4("10.0.0"));
+        assertEquals(-1, IpEncoder.parseIpv4("2001:db8::1"));
+    }
+
+    private List<String> toSortedStrings(List<ViewStats> stats) {
+        return stats.stream()
+                .map(ViewStats::toString)
+                .sorted()
+                .toList();
+    }
+}
@@ -0,0 +1,159 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import ru.practicum.StatRequest;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewsStatsRequest;
+import ru.practicum.mapper.ViewStatsMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Slf4j
+@JdbcTest
+@TestPropertySource(properties = {"stats.cold.enabled=true", "stats.cold.age-days=21"})
+@Import({StatsRepositoryImpl.class, ViewStatsMapper.class, SqlDialect.class, SketchStore.class,
+        DimensionDictionary.class, ColdStore.class, WriteWatermark.class, StatsRepositorySettings.class})
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class ColdStoreTest {
+    private static final LocalDateTime OLD = LocalDate.now().minusDays(40).atStartOfDay().plusHours(9);
+    private static final LocalDateTime RECENT = LocalDate.now().minusDays(3).atStartOfDay();
+
+    @TempDir
+    static Path directory;
+
+    private final StatsRepositoryImpl statsRepository;
+    private final ColdStore coldStore;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Random random = new Random(12);
+
+    @DynamicPropertySource
+    static void coldProperties(DynamicPropertyRegistry registry) {
+        registry.add("stats.cold.dir", () -> directory.toString());
+    }
+
+    @Test
+    public void testCompactionKeepsQueryResults() throws IOException {
+        List<StatRequest> hits = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            hits.add(hit("/events/" + random.nextInt(30), "10.0." + random.nextInt(3) + "." + random.nextInt(200),
+                    OLD.plusSeconds(random.nextInt(5 * 24 * 3600))));
+        }
+        for (int i = 0; i < 2000; i++) {
+            hits.add(hit("/events/" + random.nextInt(30), "10.0.0." + random.nextInt(200),
+                    RECENT.plusSeconds(random.nextInt(24 * 3600))));
+        }
+        statsRepository.saveHits(hits);
+
+        List<ViewsStatsRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            LocalDateTime start = OLD.plusSeconds(random.nextInt(6 * 24 * 3600));
+            LocalDateTime end = i % 4 == 0 ? RECENT.plusDays(1) : start.plusSeconds(random.nextInt(2 * 24 * 3600));
+            requests.add(request(start, end, i % 3 == 0 ? List.of("/events/1", "/events/7") : Collections.emptyList()));
+        }
+        requests.add(request(OLD.plusHours(2).plusSeconds(17), OLD.plusHours(2).plusSeconds(50), Collections.emptyList()));
+        List<Map<String, Long>> before = query(requests);
+
+        coldStore.compact();
+
+        assertEquals(0, countHot(LocalDate.now().minusDays(21).atStartOfDay()));
+        assertEquals(2000, countHot(RECENT.plusDays(1)));
+        assertTrue(coldStore.covers(OLD));
+        assertFalse(coldStore.covers(RECENT));
+        assertEquals(before, query(requests));
+
+        long fileBytes;
+        try (Stream<Path> files = Files.list(directory)) {
+            fileBytes = files.mapToLong(path -> path.toFile().length()).sum();
+        }
+        log.info("Холодный ярус: {} байт на hit", (double) fileBytes / 20_000);
+
+        ViewsStatsRequest all = request(OLD.minusDays(1), RECENT.plusDays(1), Collections.emptyList());
+        statsRepository.saveHit(hit("/events/1", "192.168.0.1", OLD.plusDays(1).plusMinutes(3).plusSeconds(5)));
+        assertEquals(22_001, total(statsRepository.getStats(all)));
+
+        coldStore.compact();
+
+        assertEquals(0, countHot(LocalDate.now().minusDays(21).atStartOfDay()));
+        assertEquals(22_001, total(statsRepository.getStats(all)));
+        assertEquals(22_001, total(statsRepository.getStats(request(OLD.minusDays(1).plusSeconds(1),
+                RECENT.plusDays(1).minusSeconds(1), Collections.emptyList()))));
+    }
+
+    private List<Map<String, Long>> query(List<ViewsStatsRequest> requests) {
+        List<Map<String, Long>> result = new ArrayList<>();
+        for (ViewsStatsRequest request : requests) {
+            result.add(toMap(statsRepository.getStats(request)));
+            result.add(toMap(statsRepository.getUniqueStats(request)));
+            result.add(toMap(statsRepository.getApproxUniqueStats(request)));
+            List<ViewStats> streamed = new ArrayList<>();
+            statsRepository.streamStats(request, streamed::add);
+            result.add(toMap(streamed));
+            Map<String, Long> series = new HashMap<>();
+            statsRepository.getTimeSeries(request, ChronoUnit.HOURS).forEach(s -> s.getPoints().forEach(point ->
+                    series.merge(s.getApp() + s.getUri() + point.getBucket(), point.getHits() * 1000 + point.getUnique(),
+                            Long::sum)));
+            result.add(series);
+        }
+        return result;
+    }
+
+    private long countHot(LocalDateTime before) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stats WHERE created < ?", Long.class,
+                Timestamp.valueOf(before));
+    }
+
+    private long total(List<ViewStats> stats) {
+        return stats.stream().mapToLong(ViewStats::getHits).sum();
+    }
+
+    private StatRequest hit(String uri, String ip, LocalDateTime timestamp) {
+        return StatRequest.builder()
+                .app(uri.hashCode() % 2 == 0 ? "ewm-main-service" : "other-app")
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+
+    private Map<String, Long> toMap(List<ViewStats> stats) {
+        Map<String, Long> result = new HashMap<>();
+        stats.forEach(stat -> result.put(stat.getApp() + stat.getUri(), stat.getHits()));
+        return result;
+    }
+
+    private ViewsStatsRequest request(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return ViewsStatsRequest.builder()
+                .start(start)
+                .end(end)
+                .uri(uris)
+                .build();
+    }
+}
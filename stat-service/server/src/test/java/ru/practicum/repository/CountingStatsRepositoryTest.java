@@ -0,0 +1,158 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import ru.practicum.StatRequest;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewsStatsRequest;
+import ru.practicum.exceptions.BadRequestException;
+import ru.practicum.mapper.ViewStatsMapper;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Slf4j
+@JdbcTest
+@TestPropertySource(properties = {"stats.repository=counting", "stats.counting.flush-interval-ms=3600000"})
+@Import({CountingStatsRepository.class, ViewStatsMapper.class, SqlDialect.class, SketchStore.class,
+        DimensionDictionary.class, ColdStore.class, WriteWatermark.class, StatsRepositorySettings.class})
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class CountingStatsRepositoryTest {
+    private static final LocalDateTime BASE = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(1);
+    private static final int THREADS = 4;
+    private static final int HITS_PER_THREAD = 50_000;
+
+    private final CountingStatsRepository statsRepository;
+
+    @Test
+    public void testConcurrentIngestWithFlushesStaysExact() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<List<StatRequest>>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int seed = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                List<StatRequest> saved = new ArrayList<>();
+                for (int i = 0; i < HITS_PER_THREAD; i++) {
+                    StatRequest hit = hit("/events/" + random.nextInt(20), BASE.plusSeconds(random.nextInt(3 * 3600)));
+                    statsRepository.saveHit(hit);
+                    saved.add(hit);
+                }
+                return saved;
+            }));
+        }
+        while (futures.stream().anyMatch(future -> !future.isDone())) {
+            statsRepository.flush();
+        }
+        List<StatRequest> hits = new ArrayList<>();
+        for (Future<List<StatRequest>> future : futures) {
+            hits.addAll(future.get());
+        }
+        executor.shutdown();
+
+        Random random = new Random(3);
+        List<ViewsStatsRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            LocalDateTime start = BASE.plusSeconds(random.nextInt(3 * 3600));
+            requests.add(request(start, start.plusSeconds(random.nextInt(2 * 3600)),
+                    i % 3 == 0 ? List.of("/events/1", "/events/7") : Collections.emptyList()));
+        }
+        requests.add(request(BASE.minusDays(1), BASE.plusDays(1), Collections.emptyList()));
+        for (ViewsStatsRequest request : requests) {
+            assertEquals(expected(hits, request), toMap(statsRepository.getStats(request)));
+        }
+        statsRepository.flush();
+        for (ViewsStatsRequest request : requests) {
+            assertEquals(expected(hits, request), toMap(statsRepository.getStats(request)));
+        }
+        assertEquals(THREADS * HITS_PER_THREAD, toMap(statsRepository.getStats(requests.get(requests.size() - 1)))
+                .values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    public void testIngestThroughputByThreads() throws Exception {
+        int hits = 1_000_000;
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<StatRequest> prepared = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                prepared.add(hit("/events/" + i % 10, BASE.plusMinutes(i % 3)));
+            }
+            int perThread = hits / threads;
+            long started = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        statsRepository.saveHit(prepared.get(i % prepared.size()));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - started;
+            executor.shutdown();
+            log.info("Режим подсчета: {} потоков, {} hit/с", threads, (long) (perThread * threads * 1e9 / elapsed));
+        }
+    }
+
+    @Test
+    public void testUniqueStatsRejected() {
+        ViewsStatsRequest request = request(BASE, BASE.plusHours(1), Collections.emptyList());
+        assertThrows(BadRequestException.class, () -> statsRepository.getUniqueStats(request));
+        assertThrows(BadRequestException.class, () -> statsRepository.getTimeSeries(request, ChronoUnit.HOURS));
+    }
+
+    private Map<String, Long> expected(List<StatRequest> hits, ViewsStatsRequest request) {
+        Map<String, Long> result = new HashMap<>();
+        for (StatRequest hit : hits) {
+            LocalDateTime minute = hit.getTimestamp().truncatedTo(ChronoUnit.MINUTES);
+            if (!minute.isBefore(request.getStart()) && !minute.isAfter(request.getEnd())
+                    && (request.getUri().isEmpty() || request.getUri().contains(hit.getUri()))) {
+                result.merge(hit.getApp() + hit.getUri(), 1L, Long::sum);
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Long> toMap(List<ViewStats> stats) {
+        Map<String, Long> result = new HashMap<>();
+        stats.forEach(stat -> result.put(stat.getApp() + stat.getUri(), stat.getHits()));
+        return result;
+    }
+
+    private StatRequest hit(String uri, LocalDateTime timestamp) {
+        return StatRequest.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip("10.0.0.1")
+                .timestamp(timestamp)
+                .build();
+    }
+
+    private ViewsStatsRequest request(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return ViewsStatsRequest.builder()
+                .start(start)
+                .end(end)
+                .uri(uris)
+                .build();
+    }
+}
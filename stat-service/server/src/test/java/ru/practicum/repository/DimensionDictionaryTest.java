@@ -0,0 +1,61 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({DimensionDictionary.class, SqlDialect.class})
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class DimensionDictionaryTest {
+    private final DimensionDictionary dimensions;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM stats_uri WHERE uri LIKE '/dictionary/%'");
+    }
+
+    @Test
+    public void testRolledBackIdIsNotCached() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            dimensions.uriId("/dictionary/rollback");
+            status.setRollbackOnly();
+        });
+
+        int id = transaction.execute(status -> dimensions.uriId("/dictionary/rollback"));
+
+        assertEquals(id, jdbcTemplate.queryForObject("SELECT id FROM stats_uri WHERE uri = ?", Integer.class,
+                "/dictionary/rollback"));
+    }
+
+    @Test
+    public void testResolvesManyNewValuesAtOnce() {
+        List<String> uris = IntStream.range(0, 1200).mapToObj(i -> "/dictionary/" + i % 1100).toList();
+
+        Map<String, Integer> ids = new TransactionTemplate(transactionManager)
+                .execute(status -> dimensions.uriIds(uris));
+
+        assertEquals(1100, ids.size());
+        assertEquals(1100, new HashSet<>(ids.values()).size());
+        assertEquals(ids, dimensions.uriIds(uris));
+    }
+}
@@ -0,0 +1,39 @@
+package ru.practicum.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class IpCodecTest {
+
+    @Test
+    public void testRoundTripKeepsOriginalString() {
+        for (String ip : List.of("10.0.0.1", "0.0.0.0", "255.255.255.255", "010.0.0.1", "2001:db8::1", "::", "::1",
+                "fe80::1:0:0:0:1", "2001:DB8::1", "2001:0db8::1", "1:2:3:4:5:6:7:8", "::ffff:10.0.0.1", "unknown", "")) {
+            assertEquals(ip, IpCodec.decode(IpCodec.encode(ip)));
+        }
+    }
+
+    @Test
+    public void testCanonicalAddressesAreBinary() {
+        assertEquals(5, IpCodec.encode("192.168.0.1").length);
+        assertEquals(17, IpCodec.encode("2001:db8::1").length);
+        assertEquals(1 + "010.0.0.1".length(), IpCodec.encode("010.0.0.1").length);
+        assertEquals(1 + "2001:0db8::1".length(), IpCodec.encode("2001:0db8::1").length);
+    }
+
+    @Test
+    public void testFormatIpv6() {
+        assertEquals("2001:db8::1", IpCodec.formatIpv6(new int[]{0x2001, 0xdb8, 0, 0, 0, 0, 0, 1}));
+        assertEquals("1:0:2::", IpCodec.formatIpv6(new int[]{1, 0, 2, 0, 0, 0, 0, 0}));
+        assertEquals("1:0:2:3:4:5:6:7", IpCodec.formatIpv6(new int[]{1, 0, 2, 3, 4, 5, 6, 7}));
+        assertArrayEquals(new int[]{0, 0, 0, 0, 0, 0, 0, 1}, IpCodec.parseIpv6("::1"));
+        assertNull(IpCodec.parseIpv6("1::2::3"));
+        assertNull(IpCodec.parseIpv6("1:2:3:4:5:6:7"));
+        assertNull(IpCodec.parseIpv6("12345::"));
+    }
+}
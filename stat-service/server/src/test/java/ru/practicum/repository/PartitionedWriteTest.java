@@ -0,0 +1,76 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.StatRequest;
+import ru.practicum.mapper.ViewStatsMapper;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({StatsRepositoryImpl.class, ViewStatsMapper.class, SqlDialect.class, SketchStore.class,
+        DimensionDictionary.class, ColdStore.class, WriteWatermark.class, StatsRepositorySettings.class})
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class PartitionedWriteTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2036, 11, 30, 23, 0, 0);
+
+    private final StatsRepositoryImpl statsRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private StatsPartitionManager partitionManager;
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM stats WHERE created >= ?", BASE);
+        for (String table : List.of("stats_minute", "stats_hour", "stats_hll")) {
+            jdbcTemplate.update("DELETE FROM " + table + " WHERE bucket >= ?", BASE.minusDays(1));
+        }
+    }
+
+    @Test
+    public void testMultiChunkBatchIntoUncreatedMonthDoesNoDdl() {
+        List<List<StatRequest>> chunks = List.of(hits(BASE, 100), hits(BASE.plusHours(2), 100),
+                hits(BASE.plusMonths(1).plusHours(2), 100));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> new TransactionTemplate(transactionManager)
+                .executeWithoutResult(status -> chunks.forEach(statsRepository::saveHits)));
+
+        assertEquals(300, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stats WHERE created >= ?", Long.class,
+                Timestamp.valueOf(BASE)));
+        verifyNoInteractions(partitionManager);
+    }
+
+    private List<StatRequest> hits(LocalDateTime from, int count) {
+        List<StatRequest> hits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            hits.add(StatRequest.builder()
+                    .app("ewm-main-service")
+                    .uri("/partition/" + i % 5)
+                    .ip("10.2.0." + i % 30)
+                    .timestamp(from.plusSeconds(i))
+                    .build());
+        }
+        return hits;
+    }
+}
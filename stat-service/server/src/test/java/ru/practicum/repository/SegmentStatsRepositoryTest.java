@@ -0,0 +1,191 @@
+package ru.practicum.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.StatRequest;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewStatsPoint;
+import ru.practicum.ViewsStatsRequest;
+import ru.practicum.segment.Segment;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Slf4j
+public class SegmentStatsRepositoryTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0, 0);
+
+    @TempDir
+    private Path directory;
+
+    private final Random random = new Random(11);
+    private final List<SegmentStatsRepository> opened = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        for (SegmentStatsRepository repository : opened) {
+            repository.close();
+        }
+    }
+
+    @Test
+    public void testStatsMatchBruteForce() throws IOException {
+        SegmentStatsRepository repository = open(5000);
+        List<StatRequest> hits = randomHits(30_000);
+        for (int i = 0; i < hits.size(); i += 1000) {
+            repository.saveHits(hits.subList(i, i + 1000));
+        }
+        repository.saveHit(hit("/events/1", "10.0.0.1", BASE.plusMinutes(5)));
+        hits.add(hit("/events/1", "10.0.0.1", BASE.plusMinutes(5)));
+
+        for (int i = 0; i < 30; i++) {
+            LocalDateTime start = BASE.plusMinutes(random.nextInt(24 * 60));
+            LocalDateTime end = start.plusMinutes(random.nextInt(24 * 60));
+            List<String> uris = i % 3 == 0 ? List.of("/events/1", "/events/3", "/unknown") : Collections.emptyList();
+
+            assertEquals(expected(hits, start, end, uris, false), toMap(repository.getStats(request(start, end, uris))));
+            assertEquals(expected(hits, start, end, uris, true),
+                    toMap(repository.getUniqueStats(request(start, end, uris))));
+            Map<String, Long> sums = new HashMap<>();
+            repository.getTimeSeries(request(start, end, uris), ChronoUnit.HOURS).forEach(series -> sums.put(
+                    series.getApp() + series.getUri(), series.getPoints().stream().mapToLong(ViewStatsPoint::getHits).sum()));
+            assertEquals(expected(hits, start, end, uris, false), sums);
+        }
+    }
+
+    @Test
+    public void testRecoveryTruncatesTornRecords() throws IOException {
+        SegmentStatsRepository repository = open(1000);
+        List<StatRequest> hits = randomHits(2500);
+        repository.saveHits(hits);
+        repository.flush();
+        opened.remove(repository);
+        ViewsStatsRequest all = request(BASE, BASE.plusDays(3), Collections.emptyList());
+        List<ViewStats> before = repository.getStats(all);
+
+        Path last;
+        try (Stream<Path> files = Files.list(directory)) {
+            last = files.filter(path -> path.getFileName().toString().endsWith(".seg")).max(Path::compareTo).orElseThrow();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(last.toFile(), "rw")) {
+            file.seek(500L * Segment.RECORD_SIZE);
+            file.writeLong(BASE.plusMinutes(1).toEpochSecond(ZoneOffset.UTC) * 1000);
+            file.writeInt(1);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("dictionary.dat").toFile(), "rw")) {
+            file.seek(file.length());
+            file.writeInt(100);
+            file.write(new byte[]{1, 2, 3});
+        }
+
+        SegmentStatsRepository recovered = open(1000);
+
+        assertEquals(toMap(before), toMap(recovered.getStats(all)));
+        assertEquals(500L * Segment.RECORD_SIZE, Files.size(last));
+
+        recovered.saveHits(hits.subList(0, 10));
+        assertEquals(2510, recovered.getStats(all).stream().mapToLong(ViewStats::getHits).sum());
+    }
+
+    @Test
+    public void testIngestThroughput() throws IOException {
+        SegmentStatsRepository repository = open(1 << 20);
+        List<StatRequest> hits = randomHits(100_000);
+        int rounds = 20;
+        repository.saveHits(hits);
+
+        long started = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < hits.size(); i += 10_000) {
+                repository.saveHits(hits.subList(i, i + 10_000));
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+        log.info("Запись в сегменты: {} hit/с", (long) rounds * hits.size() * 1_000_000_000L / elapsed);
+
+        long total = repository.getStats(request(BASE, BASE.plusDays(3), Collections.emptyList())).stream()
+                .mapToLong(ViewStats::getHits)
+                .sum();
+        assertEquals((rounds + 1L) * hits.size(), total);
+        assertTrue(elapsed > 0);
+    }
+
+    private SegmentStatsRepository open(int recordsPerSegment) throws IOException {
+        SegmentStatsRepository repository = new SegmentStatsRepository(directory.toString(), recordsPerSegment, 3_600_000);
+        repository.open();
+        opened.add(repository);
+        return repository;
+    }
+
+    private List<StatRequest> randomHits(int count) {
+        List<StatRequest> hits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            hits.add(hit("/events/" + random.nextInt(20), "10.0." + random.nextInt(4) + "." + random.nextInt(100),
+                    BASE.plusSeconds(random.nextInt(2 * 24 * 3600))));
+        }
+        return hits;
+    }
+
+    private StatRequest hit(String uri, String ip, LocalDateTime timestamp) {
+        return StatRequest.builder()
+                .app(uri.hashCode() % 2 == 0 ? "ewm-main-service" : "other-app")
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+
+    private Map<String, Long> expected(List<StatRequest> hits, LocalDateTime start, LocalDateTime end,
+                                      List<String> uris, boolean unique) {
+        Map<String, Set<String>> ips = new HashMap<>();
+        Map<String, Long> counts = new HashMap<>();
+        for (StatRequest hit : hits) {
+            if (hit.getTimestamp().isBefore(start) || hit.getTimestamp().isAfter(end)
+                    || (!uris.isEmpty() && !uris.contains(hit.getUri()))) {
+                continue;
+            }
+            String key = hit.getApp() + hit.getUri();
+            counts.merge(key, 1L, Long::sum);
+            ips.computeIfAbsent(key, k -> new HashSet<>()).add(hit.getIp());
+        }
+        if (unique) {
+            Map<String, Long> result = new HashMap<>();
+            ips.forEach((key, set) -> result.put(key, (long) set.size()));
+            return result;
+        }
+        return counts;
+    }
+
+    private Map<String, Long> toMap(List<ViewStats> stats) {
+        Map<String, Long> result = new HashMap<>();
+        stats.forEach(stat -> result.put(stat.getApp() + stat.getUri(), stat.getHits()));
+        return result;
+    }
+
+    private ViewsStatsRequest request(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return ViewsStatsRequest.builder()
+                .start(start)
+                .end(end)
+                .uri(uris)
+                .build();
+    }
+}
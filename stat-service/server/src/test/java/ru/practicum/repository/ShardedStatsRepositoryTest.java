@@ -0,0 +1,183 @@
+package ru.practicum.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.StatRequest;
+import ru.practicum.StatsQuery;
+import ru.practicum.StatsQueryResult;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewsStatsRequest;
+import ru.practicum.mapper.ViewStatsMapper;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardedStatsRepositoryTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 3, 1, 10, 0, 0);
+
+    private final String database = "shards-" + UUID.randomUUID();
+    private final StatsShardFactory shardFactory = new StatsShardFactory(new ViewStatsMapper(),
+            new StatsRepositorySettings(true, 14, 1000, 1000), "sa", "", true, false, 2, 0);
+    private final List<ShardedStatsRepository> repositories = new ArrayList<>();
+    private final List<StatRequest> written = new ArrayList<>();
+    private final Random random = new Random(23);
+
+    @AfterEach
+    public void tearDown() {
+        ShardedStatsRepository last = repositories.get(repositories.size() - 1);
+        last.getShards().forEach(shard -> shard.getJdbcTemplate().execute("SHUTDOWN"));
+        repositories.forEach(ShardedStatsRepository::close);
+    }
+
+    @Test
+    public void testScatterGatherMatchesExactCounts() {
+        ShardedStatsRepository repository = repository("a", "b", "c");
+        write(repository, 3000);
+
+        Map<String, Set<String>> placement = placement(repository);
+        assertEquals(3, placement.size());
+        Set<String> seen = new HashSet<>();
+        placement.values().forEach(uris -> uris.forEach(uri -> assertTrue(seen.add(uri), uri)));
+
+        assertMatchesExpected(repository);
+    }
+
+    @Test
+    public void testRebalanceAfterAddingShard() {
+        ShardedStatsRepository before = repository("a", "b");
+        write(before, 3000);
+        before.close();
+
+        ShardedStatsRepository after = repository("a", "b", "c");
+        assertTrue(after.isRebalancing());
+        long moved = new ShardRebalancer(after, false, 100).rebalance();
+
+        assertTrue(moved > 0);
+        placement(after).forEach((shard, uris) ->
+                uris.forEach(uri -> assertEquals(shard, after.shardFor(uri).getName(), uri)));
+        assertMatchesExpected(after);
+        assertEquals(0, new ShardRebalancer(after, false, 100).rebalance());
+        assertFalse(after.isRebalancing());
+        after.close();
+        assertFalse(repository("a", "b", "c").isRebalancing());
+    }
+
+    @Test
+    public void testReadsAllShardsBeforeRebalance() {
+        ShardedStatsRepository before = repository("a", "b");
+        write(before, 3000);
+        assertFalse(before.isRebalancing());
+        before.close();
+
+        ShardedStatsRepository after = repository("a", "b", "c");
+
+        assertTrue(after.isRebalancing());
+        assertMatchesExpected(after);
+    }
+
+    private void assertMatchesExpected(ShardedStatsRepository repository) {
+        for (int i = 0; i < 20; i++) {
+            LocalDateTime start = i == 0 ? BASE.plusHours(1) : BASE.plusSeconds(random.nextInt(4 * 3600));
+            LocalDateTime end = i == 0 ? BASE.plusHours(4) : start.plusSeconds(random.nextInt(3 * 3600));
+            List<String> uris = i % 3 == 0 ? List.of() : List.of("/events/1", "/events/7", "/events/22", "/events/31");
+            ViewsStatsRequest request = ViewsStatsRequest.builder().start(start).end(end).uri(uris).build();
+
+            assertEquals(expected(start, end, uris, false), toMap(repository.getStats(request)));
+            assertEquals(expected(start, end, uris, true), toMap(repository.getUniqueStats(request)));
+            List<ViewStats> top = repository.getStats(request.toBuilder().limit(3).build());
+            assertEquals(repository.getStats(request).stream().limit(3).map(ViewStats::getHits).toList(),
+                    top.stream().map(ViewStats::getHits).toList());
+        }
+
+        List<StatsQuery> queries = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            LocalDateTime start = BASE.plusSeconds(random.nextInt(4 * 3600));
+            queries.add(StatsQuery.builder()
+                    .uri("/events/" + random.nextInt(45))
+                    .start(start)
+                    .end(start.plusSeconds(random.nextInt(3 * 3600)))
+                    .unique(i % 2 == 0)
+                    .build());
+        }
+        List<StatsQueryResult> results = repository.getBatchStats(queries);
+        for (int i = 0; i < queries.size(); i++) {
+            StatsQuery query = queries.get(i);
+            long hits = expected(query.getStart(), query.getEnd(), List.of(query.getUri()), query.getUnique())
+                    .values().stream().mapToLong(Long::longValue).sum();
+            assertEquals(hits, results.get(i).getHits(), query.toString());
+        }
+    }
+
+    private ShardedStatsRepository repository(String... names) {
+        List<String> shards = Arrays.stream(names)
+                .map(name -> name + "=jdbc:h2:mem:" + database + "-" + name + ";DB_CLOSE_DELAY=-1")
+                .toList();
+        ShardedStatsRepository repository = new ShardedStatsRepository(shardFactory, shards, 64);
+        repositories.add(repository);
+        return repository;
+    }
+
+    private void write(ShardedStatsRepository repository, int count) {
+        List<StatRequest> hits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            hits.add(StatRequest.builder()
+                    .app(i % 5 == 0 ? "other-app" : "ewm-main-service")
+                    .uri("/events/" + random.nextInt(40))
+                    .ip("10.0.0." + random.nextInt(30))
+                    .timestamp(BASE.plusSeconds(random.nextInt(5 * 3600)))
+                    .build());
+        }
+        for (int i = 0; i < count - 10; i += 500) {
+            repository.saveHits(hits.subList(i, Math.min(i + 500, count - 10)));
+        }
+        hits.subList(count - 10, count).forEach(repository::saveHit);
+        written.addAll(hits);
+    }
+
+    private Map<String, Set<String>> placement(ShardedStatsRepository repository) {
+        Map<String, Set<String>> placement = new HashMap<>();
+        for (StatsShard shard : repository.getShards()) {
+            List<String> uris = shard.getJdbcTemplate().queryForList(
+                    "SELECT DISTINCT u.uri FROM stats AS h JOIN stats_uri u ON u.id = h.uri_id", String.class);
+            if (!uris.isEmpty()) {
+                placement.put(shard.getName(), new HashSet<>(uris));
+            }
+        }
+        return placement;
+    }
+
+    private Map<String, Long> expected(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        Map<String, Set<String>> ips = new HashMap<>();
+        Map<String, Long> hits = new HashMap<>();
+        for (StatRequest hit : written) {
+            if (!hit.getTimestamp().isBefore(start) && !hit.getTimestamp().isAfter(end)
+                    && (uris.isEmpty() || uris.contains(hit.getUri()))) {
+                String key = hit.getApp() + hit.getUri();
+                ips.computeIfAbsent(key, k -> new HashSet<>()).add(hit.getIp());
+                hits.merge(key, 1L, Long::sum);
+            }
+        }
+        if (unique) {
+            ips.forEach((key, set) -> hits.put(key, (long) set.size()));
+        }
+        return hits;
+    }
+
+    private Map<String, Long> toMap(List<ViewStats> stats) {
+        Map<String, Long> result = new HashMap<>();
+        stats.forEach(stat -> result.put(stat.getApp() + stat.getUri(), stat.getHits()));
+        return result;
+    }
+}
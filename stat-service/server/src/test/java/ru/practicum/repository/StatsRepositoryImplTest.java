@@ -0,0 +1,238 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.StatRequest;
+import ru.practicum.StatsQuery;
+import ru.practicum.StatsQueryResult;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewStatsPoint;
+import ru.practicum.ViewStatsSeries;
+import ru.practicum.ViewsStatsRequest;
+import ru.practicum.mapper.ViewStatsMapper;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Slf4j
+@JdbcTest
+@Import({StatsRepositoryImpl.class, ViewStatsMapper.class, SqlDialect.class, SketchStore.class,
+        DimensionDictionary.class, ColdStore.class, WriteWatermark.class, StatsRepositorySettings.class})
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class StatsRepositoryImplTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 10, 0, 0);
+
+    private final StatsRepositoryImpl statsRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ViewStatsMapper viewStatsMapper;
+
+    private final Random random = new Random(42);
+
+    @BeforeEach
+    public void setUp() {
+        List<StatRequest> hits = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            hits.add(StatRequest.builder()
+                    .app(i % 7 == 0 ? "other-app" : "ewm-main-service")
+                    .uri("/events/" + random.nextInt(5))
+                    .ip("10.0.0." + random.nextInt(20))
+                    .timestamp(BASE.plusSeconds(random.nextInt(5 * 3600)))
+                    .build());
+        }
+        statsRepository.saveHits(hits.subList(0, 1990));
+        hits.subList(1990, hits.size()).forEach(statsRepository::saveHit);
+    }
+
+    @Test
+    public void testGetStatsMatchesRawQuery() {
+        for (int i = 0; i < 50; i++) {
+            LocalDateTime start = BASE.plusSeconds(random.nextInt(5 * 3600));
+            LocalDateTime end = start.plusSeconds(random.nextInt(4 * 3600));
+            List<String> uris = i % 2 == 0 ? Collections.emptyList() : List.of("/events/1", "/events/3");
+
+            assertSameStats(rawStats(start, end, uris), statsRepository.getStats(request(start, end, uris)));
+        }
+    }
+
+    @Test
+    public void testGetStatsOnBucketBoundaries() {
+        LocalDateTime start = BASE.plusHours(1);
+        LocalDateTime end = BASE.plusHours(3);
+
+        List<ViewStats> result = statsRepository.getStats(request(start, end, Collections.emptyList()));
+
+        assertTrue(RollupPlan.of(start, end).usesRollups());
+        assertSameStats(rawStats(start, end, Collections.emptyList()), result);
+    }
+
+    @Test
+    public void testGetApproxUniqueStatsWithinErrorBound() {
+        LocalDateTime start = BASE.plusMinutes(10);
+        LocalDateTime end = BASE.plusHours(4).plusMinutes(20);
+        List<ViewStats> exact = statsRepository.getUniqueStats(request(start, end, Collections.emptyList()));
+
+        List<ViewStats> approx = statsRepository.getApproxUniqueStats(request(start, end, Collections.emptyList()));
+
+        assertEquals(exact.size(), approx.size());
+        for (ViewStats expected : exact) {
+            ViewStats actual = approx.stream()
+                    .filter(stats -> stats.getApp().equals(expected.getApp()) && stats.getUri().equals(expected.getUri()))
+                    .findFirst()
+                    .orElseThrow();
+            assertTrue(Math.abs(actual.getHits() - expected.getHits()) <= Math.max(1, expected.getHits() * 0.03));
+        }
+    }
+
+    @Test
+    public void testGetStatsWithLargeUriLists() {
+        LocalDateTime start = BASE.plusMinutes(10);
+        LocalDateTime end = BASE.plusHours(4).plusMinutes(20);
+        for (int size : List.of(1, 100, 10_000)) {
+            List<String> uris = IntStream.range(0, size)
+                    .mapToObj(i -> "/events/" + (i * 3 + 1))
+                    .toList();
+
+            long started = System.nanoTime();
+            List<ViewStats> stats = statsRepository.getStats(request(start, end, uris));
+            List<ViewStats> unique = statsRepository.getUniqueStats(request(start, end, uris));
+            List<ViewStats> approx = statsRepository.getApproxUniqueStats(request(start, end, uris));
+            log.info("{} uri: {} мс", size, (System.nanoTime() - started) / 1_000_000);
+
+            assertSameStats(rawStats(start, end, uris), stats);
+            assertEquals(toSortedUris(unique), toSortedUris(stats));
+            assertEquals(toSortedUris(approx), toSortedUris(stats));
+        }
+    }
+
+    @Test
+    public void testStreamStatsMatchesListAndAppliesLimit() {
+        LocalDateTime start = BASE.plusMinutes(10);
+        LocalDateTime end = BASE.plusHours(4).plusMinutes(20);
+        for (boolean unique : List.of(false, true)) {
+            ViewsStatsRequest request = request(start, end, Collections.emptyList()).toBuilder().unique(unique).build();
+            List<ViewStats> expected = unique ? statsRepository.getUniqueStats(request) : statsRepository.getStats(request);
+            List<ViewStats> streamed = new ArrayList<>();
+
+            statsRepository.streamStats(request, streamed::add);
+
+            assertSameStats(expected, streamed);
+
+            ViewsStatsRequest limited = request.toBuilder().limit(3).build();
+            List<ViewStats> top = unique ? statsRepository.getUniqueStats(limited) : statsRepository.getStats(limited);
+            assertEquals(3, top.size());
+            assertEquals(expected.subList(0, 3).stream().map(ViewStats::getHits).toList(),
+                    top.stream().map(ViewStats::getHits).toList());
+        }
+        ViewsStatsRequest approx = request(start, end, Collections.emptyList()).toBuilder()
+                .unique(true)
+                .approximate(true)
+                .limit(2)
+                .build();
+        assertEquals(2, statsRepository.getApproxUniqueStats(approx).size());
+    }
+
+    @Test
+    public void testTimeSeriesSumsMatchStats() {
+        for (ChronoUnit bucket : List.of(ChronoUnit.MINUTES, ChronoUnit.HOURS, ChronoUnit.DAYS)) {
+            LocalDateTime start = BASE.plusSeconds(random.nextInt(3600));
+            LocalDateTime end = start.plusSeconds(random.nextInt(4 * 3600));
+            ViewsStatsRequest request = request(start, end, List.of("/events/1", "/events/2"));
+
+            List<ViewStatsSeries> series = statsRepository.getTimeSeries(request, bucket);
+
+            Map<String, Long> sums = new HashMap<>();
+            series.forEach(s -> sums.put(s.getApp() + s.getUri(),
+                    s.getPoints().stream().mapToLong(ViewStatsPoint::getHits).sum()));
+            Map<String, Long> totals = new HashMap<>();
+            statsRepository.getStats(request).forEach(stats -> totals.put(stats.getApp() + stats.getUri(), stats.getHits()));
+            assertEquals(totals, sums);
+            series.forEach(s -> s.getPoints().forEach(point -> {
+                assertEquals(point.getBucket().truncatedTo(bucket), point.getBucket());
+                assertTrue(point.getUnique() <= point.getHits());
+            }));
+        }
+        ViewsStatsRequest day = request(BASE, BASE.plusHours(5), Collections.emptyList());
+        Map<String, Long> unique = new HashMap<>();
+        statsRepository.getTimeSeries(day, ChronoUnit.DAYS).forEach(s -> unique.put(s.getApp() + s.getUri(),
+                s.getPoints().get(0).getUnique()));
+        Map<String, Long> expected = new HashMap<>();
+        statsRepository.getUniqueStats(day).forEach(stats -> expected.put(stats.getApp() + stats.getUri(), stats.getHits()));
+        assertEquals(expected, unique);
+    }
+
+    @Test
+    public void testBatchStatsMatchSingleQueries() {
+        List<StatsQuery> queries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            LocalDateTime start = BASE.plusSeconds(random.nextInt(5 * 3600));
+            queries.add(StatsQuery.builder()
+                    .uri("/events/" + random.nextInt(7))
+                    .start(start)
+                    .end(start.plusSeconds(random.nextInt(4 * 3600)))
+                    .unique(i % 2 == 0)
+                    .build());
+        }
+
+        List<StatsQueryResult> results = statsRepository.getBatchStats(queries);
+
+        assertEquals(queries.size(), results.size());
+        for (int i = 0; i < queries.size(); i++) {
+            StatsQueryResult expected = statsRepository.getQueryStats(queries.get(i));
+            assertEquals(expected.toString(), results.get(i).toString());
+        }
+        assertTrue(results.stream().anyMatch(result -> result.getHits() > 0 && result.getUnique()));
+        assertTrue(results.stream().anyMatch(result -> result.getHits() == 0));
+    }
+
+    private ViewsStatsRequest request(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return ViewsStatsRequest.builder()
+                .start(start)
+                .end(end)
+                .uri(uris)
+                .unique(false)
+                .build();
+    }
+
+    private List<ViewStats> rawStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        String query = "SELECT a.name AS app, u.uri AS uri, COUNT (ip) AS hits FROM stats s "
+                + "JOIN stats_app a ON a.id = s.app_id JOIN stats_uri u ON u.id = s.uri_id "
+                + "WHERE (created >= ? AND created <= ?) GROUP BY a.name, u.uri";
+        return jdbcTemplate.query(query, viewStatsMapper, start, end).stream()
+                .filter(stats -> uris.isEmpty() || uris.contains(stats.getUri()))
+                .toList();
+    }
+
+    private List<String> toSortedUris(List<ViewStats> stats) {
+        return stats.stream()
+                .map(stat -> stat.getApp() + stat.getUri())
+                .sorted()
+                .toList();
+    }
+
+    private void assertSameStats(List<ViewStats> expected, List<ViewStats> actual) {
+        assertEquals(toSortedStrings(expected), toSortedStrings(actual));
+    }
+
+    private List<String> toSortedStrings(List<ViewStats> stats) {
+        return stats.stream()
+                .map(ViewStats::toString)
+                .sorted()
+                .toList();
+    }
+}
@@ -0,0 +1,189 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.StatRequest;
+import ru.practicum.mapper.ViewStatsMapper;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = "stats.changes.wait-ms=200")
+@Import({StatsRepositoryImpl.class, ViewStatsMapper.class, SqlDialect.class, SketchStore.class,
+        DimensionDictionary.class, ColdStore.class, WriteWatermark.class, StatsRepositorySettings.class})
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class WriteWatermarkTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2031, 3, 1, 10, 0, 0);
+
+    private final StatsRepositoryImpl statsRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final DimensionDictionary dimensions;
+
+    private final Random random = new Random(17);
+    private long startId;
+
+    @BeforeEach
+    public void setUp() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM stats", Long.class);
+        startId = maxId == null ? 0 : maxId;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM stats WHERE id > ?", startId);
+        for (String table : List.of("stats_minute", "stats_hour", "stats_hll")) {
+            jdbcTemplate.update("DELETE FROM " + table + " WHERE bucket >= ?", BASE.minusDays(1));
+        }
+    }
+
+    @Test
+    public void testPagesCoverEveryHitOnce() {
+        Map<String, Long> expected = new HashMap<>();
+        for (int i = 0; i < 5; i++) {
+            statsRepository.saveHits(hits(200, expected));
+        }
+
+        Map<String, Long> seen = new HashMap<>();
+        long cursor = startId;
+        ChangePage page;
+        int pages = 0;
+        do {
+            page = statsRepository.getChanges(cursor, 150);
+            assertTrue(page.cursor() >= cursor);
+            cursor = page.cursor();
+            page.changes().forEach(stats -> seen.merge(stats.getUri(), stats.getHits(), Long::sum));
+            pages++;
+        } while (page.hasMore());
+
+        assertEquals(expected, seen);
+        assertEquals(7, pages);
+        ChangePage empty = statsRepository.getChanges(cursor, 150);
+        assertEquals(cursor, empty.cursor());
+        assertTrue(empty.changes().isEmpty());
+        assertFalse(empty.hasMore());
+    }
+
+    @Test
+    public void testConcurrentWritersNeitherLostNorDuplicated() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Map<String, Long>>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String prefix = "/changes/" + t + "/";
+            futures.add(executor.submit(() -> {
+                Map<String, Long> written = new HashMap<>();
+                for (int i = 0; i < 40; i++) {
+                    List<StatRequest> batch;
+                    synchronized (random) {
+                        batch = hits(prefix, 1 + random.nextInt(20), written);
+                    }
+                    statsRepository.saveHits(batch);
+                }
+                return written;
+            }));
+        }
+        Map<String, Long> seen = new HashMap<>();
+        long cursor = startId;
+        while (futures.stream().anyMatch(future -> !future.isDone())) {
+            ChangePage page = statsRepository.getChanges(cursor, 50);
+            cursor = page.cursor();
+            page.changes().forEach(stats -> seen.merge(stats.getUri(), stats.getHits(), Long::sum));
+        }
+        Map<String, Long> expected = new HashMap<>();
+        for (Future<Map<String, Long>> future : futures) {
+            future.get().forEach((uri, hits) -> expected.merge(uri, hits, Long::sum));
+        }
+        executor.shutdown();
+        ChangePage page;
+        do {
+            page = statsRepository.getChanges(cursor, 50);
+            cursor = page.cursor();
+            page.changes().forEach(stats -> seen.merge(stats.getUri(), stats.getHits(), Long::sum));
+        } while (page.hasMore());
+
+        assertEquals(expected, seen);
+    }
+
+    @Test
+    public void testOpenTransactionHoldsCursor() throws Exception {
+        Map<String, Long> expected = new HashMap<>();
+        List<StatRequest> slow = hits("/changes/slow/", 30, expected);
+        List<StatRequest> fast = hits("/changes/fast/", 20, expected);
+        dimensions.appIds(List.of("ewm-main-service"));
+        dimensions.uriIds(Stream.concat(slow.stream(), fast.stream()).map(StatRequest::getUri).toList());
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> writer = executor.submit(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            statsRepository.saveHits(slow);
+            written.countDown();
+            try {
+                commit.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        ChangePage held;
+        try {
+            written.await();
+            statsRepository.saveHits(fast);
+            held = statsRepository.getChanges(startId, 1000);
+        } finally {
+            commit.countDown();
+        }
+        writer.get();
+        assertTrue(held.changes().isEmpty());
+        assertEquals(startId, held.cursor());
+
+        executor.shutdown();
+        Map<String, Long> seen = new HashMap<>();
+        statsRepository.getChanges(held.cursor(), 1000).changes()
+                .forEach(stats -> seen.merge(stats.getUri(), stats.getHits(), Long::sum));
+        assertEquals(expected, seen);
+    }
+
+    private List<StatRequest> hits(int count, Map<String, Long> expected) {
+        return hits("/changes/", count, expected);
+    }
+
+    private List<StatRequest> hits(String prefix, int count, Map<String, Long> expected) {
+        List<StatRequest> hits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String uri = prefix + random.nextInt(8);
+            hits.add(StatRequest.builder()
+                    .app("ewm-main-service")
+                    .uri(uri)
+                    .ip("10.1.0." + random.nextInt(50))
+                    .timestamp(BASE.plusSeconds(random.nextInt(3600)))
+                    .build());
+            expected.merge(uri, 1L, Long::sum);
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,55 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.StatRequest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DuplicateHitFilterTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void testSavedIdsRejectedUntilForgotten() {
+        DuplicateHitFilter filter = new DuplicateHitFilter(meterRegistry, true, 100);
+        List<StatRequest> saved = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            StatRequest hit = hit("id-" + i);
+            assertTrue(filter.accept(hit));
+            saved.add(hit);
+        }
+        assertTrue(filter.accept(hit("id-1")));
+
+        filter.onHitsSaved(new HitsSavedEvent(saved));
+
+        saved.forEach(hit -> assertFalse(filter.accept(hit)));
+        assertTrue(filter.accept(hit(null)));
+        assertTrue(filter.accept(hit("id-50")));
+        assertEquals(50, meterRegistry.get("stats.filter.hits").tag("result", "duplicate").counter().count());
+
+        List<StatRequest> later = new ArrayList<>();
+        for (int i = 100; i < 200; i++) {
+            later.add(hit("id-" + i));
+        }
+        filter.onHitsSaved(new HitsSavedEvent(later));
+
+        assertTrue(filter.accept(hit("id-1")));
+        assertFalse(filter.accept(hit("id-199")));
+    }
+
+    private StatRequest hit(String hitId) {
+        return StatRequest.builder()
+                .app("ewm-main-service")
+                .uri("/events/1")
+                .ip("10.0.0.1")
+                .timestamp(LocalDateTime.of(2024, 6, 1, 12, 0, 0))
+                .hitId(hitId)
+                .build();
+    }
+}
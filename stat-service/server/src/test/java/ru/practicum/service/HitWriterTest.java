@@ -0,0 +1,79 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import ru.practicum.StatRequest;
+import ru.practicum.exceptions.ServiceUnavailableException;
+import ru.practicum.repository.StatsRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+public class HitWriterTest {
+    private final StatsRepository statsRepository = mock(StatsRepository.class);
+    private HitWriter hitWriter;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        hitWriter.stop();
+    }
+
+    @Test
+    public void testWriteWithFlushAck() throws InterruptedException {
+        hitWriter = new HitWriter(statsRepository, event -> { }, new SimpleMeterRegistry(), "async", "flush",
+                10, 5, 20, 50, 5000);
+        hitWriter.start();
+
+        hitWriter.write(hit("/events/1"));
+
+        verify(statsRepository, times(1)).saveHits(anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWriteBatchesHits() throws InterruptedException {
+        hitWriter = new HitWriter(statsRepository, event -> { }, new SimpleMeterRegistry(), "async", "enqueue",
+                10, 3, 1000, 50, 5000);
+        CountDownLatch flushed = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            flushed.countDown();
+            return null;
+        }).when(statsRepository).saveHits(anyList());
+        hitWriter.start();
+
+        hitWriter.write(hit("/events/1"));
+        hitWriter.write(hit("/events/2"));
+        hitWriter.write(hit("/events/3"));
+        flushed.await();
+
+        ArgumentCaptor<List<StatRequest>> captor = ArgumentCaptor.forClass(List.class);
+        verify(statsRepository, times(1)).saveHits(captor.capture());
+        assertEquals(3, captor.getValue().size());
+    }
+
+    @Test
+    public void testWriteRejectsWhenQueueIsFull() {
+        hitWriter = new HitWriter(statsRepository, event -> { }, new SimpleMeterRegistry(), "async", "enqueue",
+                1, 1, 200, 10, 5000);
+
+        hitWriter.write(hit("/events/1"));
+
+        assertThrows(ServiceUnavailableException.class, () -> hitWriter.write(hit("/events/2")));
+    }
+
+    private StatRequest hit(String uri) {
+        return StatRequest.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip("127.0.0.1")
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,123 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.StatRequest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RateHitFilterTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 6, 1, 12, 0, 0);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Random random = new Random(11);
+
+    @Test
+    public void testScraperLimitedOrganicTrafficKept() {
+        RateHitFilter filter = filter("drop");
+        int organicPassed = 0;
+        int scraperPassed = 0;
+        for (int i = 0; i < 7000; i++) {
+            LocalDateTime time = BASE.plusNanos(i * 60_000_000_000L / 7000);
+            if (i % 7 < 5) {
+                int user = random.nextInt(1000);
+                organicPassed += offer(filter, hit("10.1." + (user >> 8) + "." + (user & 0xFF),
+                        "/events/" + random.nextInt(50), time));
+            } else {
+                scraperPassed += offer(filter, hit("10.6.6.6", "/events/" + random.nextInt(200), time));
+            }
+        }
+
+        assertEquals(5000, organicPassed);
+        assertTrue(scraperPassed <= 100 && scraperPassed >= 90, "прошло " + scraperPassed);
+        assertEquals(2000 - scraperPassed, count("dropped"));
+        assertEquals(5000 + scraperPassed, count("passed"));
+    }
+
+    @Test
+    public void testIpUriLimitAndWindowSlides() {
+        RateHitFilter filter = filter("drop");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1, offer(filter, hit("10.0.0.1", "/events/1", BASE.plusSeconds(i))));
+        }
+        assertFalse(filter.accept(hit("10.0.0.1", "/events/1", BASE.plusSeconds(10))));
+        assertTrue(filter.accept(hit("10.0.0.1", "/events/2", BASE.plusSeconds(10))));
+
+        assertTrue(filter.accept(hit("10.0.0.1", "/events/1", BASE.plusSeconds(70))));
+    }
+
+    @Test
+    public void testSampleKeepsShareOfExcess() {
+        RateHitFilter filter = filter("sample");
+        for (int i = 0; i < 20_000; i++) {
+            offer(filter, hit("10.6.6.6", "/events/" + (i % 1000), BASE.plusNanos(i * 1_000_000L)));
+        }
+
+        double sampled = count("sampled");
+        assertEquals(100, count("passed"));
+        assertEquals(19_900, sampled + count("dropped"));
+        assertTrue(Math.abs(sampled - 1990) < 200, "выборка " + sampled);
+        assertThrows(IllegalArgumentException.class, () -> filter("block"));
+    }
+
+    @Test
+    public void testShadowCountsExcessButKeepsHits() {
+        RateHitFilter filter = filter("shadow");
+        int passed = 0;
+        for (int i = 0; i < 300; i++) {
+            passed += offer(filter, hit("10.6.6.6", "/events/" + (i % 100), BASE.plusNanos(i * 100_000_000L)));
+        }
+
+        assertEquals(300, passed);
+        assertEquals(100, count("passed"));
+        assertEquals(200, count("shadowed"));
+    }
+
+    @Test
+    public void testOnlySavedHitsCount() {
+        RateHitFilter filter = filter("drop");
+        for (int i = 0; i < 50; i++) {
+            assertTrue(filter.accept(hit("10.0.0.1", "/events/1", BASE.plusSeconds(i))));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1, offer(filter, hit("10.0.0.1", "/events/1", BASE.plusSeconds(50 + i))));
+        }
+        assertFalse(filter.accept(hit("10.0.0.1", "/events/1", BASE.plusSeconds(59))));
+    }
+
+    /**
+     * Проверка фильтром и запись принятого hit, как при успешной фиксации пачки
+     **/
+    private int offer(RateHitFilter filter, StatRequest hit) {
+        if (!filter.accept(hit)) {
+            return 0;
+        }
+        filter.onHitsSaved(new HitsSavedEvent(List.of(hit)));
+        return 1;
+    }
+
+    private RateHitFilter filter(String action) {
+        return new RateHitFilter(meterRegistry, true, 60, 6, 100, 10, action, 0.1, 4096, 4);
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("stats.filter.hits").tag("result", result).counter().count();
+    }
+
+    private StatRequest hit(String ip, String uri, LocalDateTime timestamp) {
+        return StatRequest.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+}
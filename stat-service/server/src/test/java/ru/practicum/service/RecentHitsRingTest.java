@@ -0,0 +1,132 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.StatRequest;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewsStatsRequest;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecentHitsRingTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 1, 12, 30, 20);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Random random = new Random(5);
+    private final List<StatRequest> stored = new ArrayList<>();
+    private LocalDateTime now = NOW.minusHours(1);
+    private final Clock clock = new Clock() {
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now.toInstant(ZoneOffset.UTC);
+        }
+    };
+
+    @Test
+    public void testRecentRangesMatchStore() {
+        RecentHitsRing ring = new RecentHitsRing(meterRegistry, true, 15, clock);
+        now = NOW;
+        for (int i = 0; i < 20_000; i++) {
+            stored.add(hit("/events/" + random.nextInt(30), NOW.minusSeconds(random.nextInt(40 * 60))));
+        }
+        for (int i = 0; i < stored.size(); i += 500) {
+            ring.onHitsSaved(new HitsSavedEvent(stored.subList(i, i + 500)));
+        }
+
+        for (int i = 0; i < 50; i++) {
+            LocalDateTime end = i % 2 == 0
+                    ? NOW.plusSeconds(1)
+                    : NOW.minusSeconds(random.nextInt(10 * 60)).withNano(random.nextInt(1000) * 1000);
+            ViewsStatsRequest request = ViewsStatsRequest.builder()
+                    .start(end.minusSeconds(random.nextInt(30 * 60)))
+                    .end(end)
+                    .uri(i % 4 == 0 ? List.of("/events/3", "/events/11") : List.of())
+                    .limit(i % 5 == 0 ? 7 : null)
+                    .build();
+            List<ViewStats> recent = ring.getStats(request, this::exact);
+            if (recent == null) {
+                continue;
+            }
+            List<ViewStats> expected = exact(request.toBuilder().limit(null).build());
+            if (request.getLimit() == null) {
+                assertEquals(toMap(expected), toMap(recent), request.toString());
+            } else {
+                assertEquals(expected.stream().limit(request.getLimit()).map(ViewStats::getHits).toList(),
+                        recent.stream().map(ViewStats::getHits).toList(), request.toString());
+            }
+        }
+        assertTrue(meterRegistry.get("stats.ring.served.ratio").gauge().value() >= 0.5);
+        assertTrue(meterRegistry.get("stats.ring.memory").gauge().value() > 0);
+    }
+
+    @Test
+    public void testLaterHitInLastMinuteFallsBackToStore() {
+        RecentHitsRing ring = new RecentHitsRing(meterRegistry, true, 15, clock);
+        now = NOW;
+        stored.add(hit("/events/1", NOW.minusSeconds(5)));
+        ring.onHitsSaved(new HitsSavedEvent(stored));
+        ViewsStatsRequest request = ViewsStatsRequest.builder()
+                .start(NOW.minusMinutes(5))
+                .end(NOW.minusSeconds(10))
+                .uri(List.of())
+                .build();
+
+        assertNull(ring.getStats(request, this::exact));
+        assertEquals(1, ring.getStats(request.toBuilder().end(NOW).build(), this::exact).get(0).getHits());
+        assertNull(ring.getStats(request.toBuilder().end(NOW.plusMinutes(30)).build(), this::exact));
+        assertNull(ring.getStats(request.toBuilder().start(NOW.minusHours(3)).end(NOW.minusHours(2)).build(),
+                this::exact));
+    }
+
+    private List<ViewStats> exact(ViewsStatsRequest request) {
+        Map<String, Long> hits = new HashMap<>();
+        for (StatRequest hit : stored) {
+            if (!hit.getTimestamp().isBefore(request.getStart()) && !hit.getTimestamp().isAfter(request.getEnd())
+                    && (request.getUri().isEmpty() || request.getUri().contains(hit.getUri()))) {
+                hits.merge(hit.getUri(), 1L, Long::sum);
+            }
+        }
+        return hits.entrySet().stream()
+                .map(e -> ViewStats.builder().app("ewm-main-service").uri(e.getKey()).hits(e.getValue()).build())
+                .sorted((a, b) -> Long.compare(b.getHits(), a.getHits()))
+                .toList();
+    }
+
+    private Map<String, Long> toMap(List<ViewStats> stats) {
+        Map<String, Long> result = new HashMap<>();
+        stats.forEach(stat -> result.put(stat.getUri(), stat.getHits()));
+        return result;
+    }
+
+    private StatRequest hit(String uri, LocalDateTime timestamp) {
+        return StatRequest.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip("10.0.0.1")
+                .timestamp(timestamp)
+                .build();
+    }
+}
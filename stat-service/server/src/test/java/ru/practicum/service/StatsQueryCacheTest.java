@@ -0,0 +1,136 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewsStatsRequest;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class StatsQueryCacheTest {
+    private static final List<ViewStats> RESULT = List.of(ViewStats.builder().app("app").uri("/uri1").hits(1L).build());
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void testNormalizedRequestsShareEntry() {
+        StatsQueryCache cache = new StatsQueryCache(meterRegistry, true, 100, 60_000, 60_000);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0, 0);
+        LocalDateTime future = LocalDateTime.now().plusSeconds(1);
+
+        cache.get(request(start, future, List.of("/uri2", "/uri1")), this::load);
+        cache.get(request(start, future.plusNanos(1_000_000), List.of("/uri1", "/uri2", "/uri1")), this::load);
+
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    public void testPastRangeKeyedExactly() {
+        StatsQueryCache cache = new StatsQueryCache(meterRegistry, true, 100, 60_000, 5000);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 0, 3);
+        ViewsStatsRequest request = request(start, start.plusSeconds(1), List.of("/uri1"));
+
+        assertEquals(request, cache.key(request));
+
+        cache.get(request, this::load);
+        cache.get(request(start, start.plusSeconds(2), List.of("/uri1")), this::load);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testRequestsMomentsApartShareLoad() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 6, 1, 12, 0, 1, 100_000_000);
+        StatsQueryCache cache = new StatsQueryCache(meterRegistry, true, 100, 60_000, 5000, clockAt(end));
+        List<ViewsStatsRequest> loaded = new ArrayList<>();
+
+        cache.get(request(start, end, List.of("/uri1")), key -> {
+            loaded.add(key);
+            return load(key);
+        });
+        cache.get(request(start, end.plusNanos(300_000_000), List.of("/uri1")), this::load);
+        cache.get(request(start, end.plusNanos(700_000_000), List.of("/uri1")), this::load);
+
+        assertEquals(1, loads.get());
+        assertEquals(List.of(request(start, end, List.of("/uri1"))), loaded);
+    }
+
+    @Test
+    public void testConcurrentRequestsLoadOnce() throws Exception {
+        StatsQueryCache cache = new StatsQueryCache(meterRegistry, true, 100, 60_000, 1000);
+        ViewsStatsRequest request = request(LocalDateTime.of(2024, 1, 1, 0, 0, 0),
+                LocalDateTime.of(2024, 1, 2, 0, 0, 0), List.of("/uri1"));
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<ViewStats>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> cache.get(request, key -> {
+                    await(release);
+                    return load(key);
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<List<ViewStats>> result : results) {
+                assertEquals(RESULT, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testDisabledCacheAlwaysLoads() {
+        StatsQueryCache cache = new StatsQueryCache(meterRegistry, false, 100, 60_000, 1000);
+        ViewsStatsRequest request = request(LocalDateTime.of(2024, 1, 1, 0, 0, 0),
+                LocalDateTime.of(2024, 1, 2, 0, 0, 0), List.of("/uri1"));
+
+        cache.get(request, this::load);
+        cache.get(request, this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    private List<ViewStats> load(ViewsStatsRequest request) {
+        loads.incrementAndGet();
+        return RESULT;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Clock clockAt(LocalDateTime time) {
+        return Clock.fixed(time.toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+    }
+
+    private ViewsStatsRequest request(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return ViewsStatsRequest.builder()
+                .start(start)
+                .end(end)
+                .uri(uris)
+                .unique(false)
+                .build();
+    }
+}
@@ -1,21 +1,41 @@
 package ru.practicum.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import ru.practicum.StatRequest;
+import ru.practicum.StatsChanges;
+import ru.practicum.StatsQuery;
+import ru.practicum.TopViewStats;
 import ru.practicum.ViewStats;
+import ru.practicum.ViewStatsPoint;
+import ru.practicum.ViewStatsSeries;
 import ru.practicum.ViewsStatsRequest;
+import ru.practicum.exceptions.BadRequestException;
+import ru.practicum.exceptions.BatchItemError;
+import ru.practicum.exceptions.BatchValidationException;
+import ru.practicum.repository.ChangePage;
 import ru.practicum.repository.StatsRepository;
 
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -24,7 +44,30 @@ public class StatsServiceImplTest {
     @Mock
     private StatsRepository statsRepository;
 
-    @InjectMocks
+    @Mock
+    private HitWriter hitWriter;
+
+    @Spy
+    private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Spy
+    private StatsQueryCache queryCache = new StatsQueryCache(new SimpleMeterRegistry(), false, 100, 5000, 1000);
+
+    @Mock
+    private TopHitsTracker topHitsTracker;
+
+    @Spy
+    private RecentHitsRing recentHitsRing = new RecentHitsRing(new SimpleMeterRegistry(), false, 15);
+
+    @Spy
+    private List<HitFilter> hitFilters = new ArrayList<>();
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     private StatsServiceImpl statsService;
 
     private StatRequest statRequest;
@@ -33,6 +76,8 @@ public class StatsServiceImplTest {
 
     @BeforeEach
     public void setUp() {
+        statsService = new StatsServiceImpl(statsRepository, hitWriter, validator, objectMapper, queryCache,
+                topHitsTracker, recentHitsRing, hitFilters, eventPublisher, 1000, 10000, 10000, 1000);
         statRequest = StatRequest.builder()
                 .app("ewm-main-service")
                 .uri("test-uri/1")
@@ -54,6 +99,104 @@ public class StatsServiceImplTest {
         statsService.saveHit(statRequest);
 
         verify(statsRepository, times(1)).saveHit(statRequest);
+        verify(eventPublisher, times(1)).publishEvent(new HitsSavedEvent(List.of(statRequest)));
+    }
+
+    @Test
+    public void testSaveHitAsync() {
+        when(hitWriter.isEnabled()).thenReturn(true);
+
+        statsService.saveHit(statRequest);
+
+        verify(hitWriter, times(1)).write(statRequest);
+        verify(statsRepository, never()).saveHit(any());
+    }
+
+    @Test
+    public void testFilteredHitsAreNotSaved() {
+        StatRequest bot = statRequest.toBuilder().ip("10.6.6.6").build();
+        hitFilters.add(hit -> !hit.getIp().equals(bot.getIp()));
+
+        statsService.saveHit(bot);
+        statsService.saveHits(List.of(statRequest, bot, statRequest));
+
+        verify(statsRepository, never()).saveHit(any());
+        verify(statsRepository, times(1)).saveHits(List.of(statRequest, statRequest));
+    }
+
+    @Test
+    public void testSaveHits() {
+        statsService.saveHits(List.of(statRequest, statRequest));
+
+        verify(statsRepository, times(1)).saveHits(List.of(statRequest, statRequest));
+    }
+
+    @Test
+    public void testSaveHitsReportsInvalidPositions() {
+        StatRequest invalid = statRequest.toBuilder().ip(null).build();
+
+        BatchValidationException e = assertThrows(BatchValidationException.class,
+                () -> statsService.saveHits(List.of(statRequest, invalid, statRequest, invalid)));
+
+        assertEquals(2, e.getErrors().size());
+        assertEquals(1, e.getErrors().get(0).getIndex());
+        assertEquals(3, e.getErrors().get(1).getIndex());
+        verify(statsRepository, never()).saveHits(anyList());
+    }
+
+    @Test
+    public void testSaveHitsFromNdjson() throws Exception {
+        String ndjson = """
+                {"app":"ewm-main-service","uri":"/events/1","ip":"127.0.0.1","timestamp":"2024-01-01 10:00:00"}
+
+                {"app":"ewm-main-service","uri":"/events/2","ip":"127.0.0.1","timestamp":"2024-01-01 10:00:01"}
+                """;
+
+        statsService.saveHits(new StringReader(ndjson));
+
+        verify(statsRepository, times(1)).saveHits(argThat(hits -> hits.size() == 2));
+    }
+
+    @Test
+    public void testSaveHitsFromNdjsonReportsMalformedLine() {
+        String ndjson = """
+                {"app":"ewm-main-service","uri":"/events/1","ip":"127.0.0.1","timestamp":"2024-01-01 10:00:00"}
+                {"app":"ewm-main-service","uri":
+                """;
+
+        BatchValidationException e = assertThrows(BatchValidationException.class,
+                () -> statsService.saveHits(new StringReader(ndjson)));
+
+        assertEquals(1, e.getErrors().size());
+        assertEquals(1, e.getErrors().get(0).getIndex());
+    }
+
+    @Test
+    public void testSaveHitsFromJsonArray() throws Exception {
+        String json = """
+                [{"app":"ewm-main-service","uri":"/events/1","ip":"127.0.0.1","timestamp":"2024-01-01 10:00:00"},
+                 {"app":"ewm-main-service","uri":"/events/2","ip":"127.0.0.1","timestamp":"2024-01-01 10:00:01"}]
+                """;
+
+        statsService.saveHits(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        verify(statsRepository, times(1)).saveHits(argThat(hits -> hits.size() == 2));
+    }
+
+    @Test
+    public void testSaveHitsFromJsonArrayReportsElementIndex() {
+        String json = """
+                [{"app":"ewm-main-service","uri":"/events/1","ip":"127.0.0.1","timestamp":"2024-01-01 10:00:00"},
+                 {"app":"ewm-main-service","uri":"/events/2","ip":"127.0.0.1","timestamp":"01.01.2024"},
+                 null,
+                 {"app":"ewm-main-service","uri":
+                """;
+
+        BatchValidationException e = assertThrows(BatchValidationException.class,
+                () -> statsService.saveHits(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))));
+
+        assertEquals(List.of(1, 2, 3), e.getErrors().stream().map(BatchItemError::getIndex).toList());
+        verify(statsRepository, never()).saveHits(anyList());
     }
 
     @Test
@@ -82,4 +225,88 @@ public class StatsServiceImplTest {
         assertEquals(viewStatsList, result);
         verify(statsRepository, times(1)).getUniqueStats(viewsStatsRequest);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetViewStatsListWithApproximateUnique() {
+        viewsStatsRequest.setUnique(true);
+        viewsStatsRequest.setApproximate(true);
+        when(statsRepository.getApproxUniqueStats(viewsStatsRequest)).thenReturn(Collections.emptyList());
+
+        statsService.getViewStatsList(viewsStatsRequest);
+
+        verify(statsRepository, times(1)).getApproxUniqueStats(viewsStatsRequest);
+        verify(statsRepository, never()).getUniqueStats(any());
+    }
+
+    @Test
+    public void testGetTopStatsFallsBackToExactQuery() {
+        viewsStatsRequest.setUri(List.of());
+        viewsStatsRequest.setLimit(5);
+        when(statsRepository.getStats(viewsStatsRequest)).thenReturn(List.of(
+                ViewStats.builder().app("ewm-main-service").uri("/events/1").hits(7L).build()));
+        when(topHitsTracker.top(any(), any(), eq(5), any())).thenReturn(null);
+
+        List<TopViewStats> result = statsService.getTopStats(viewsStatsRequest, false);
+
+        assertEquals(1, result.size());
+        assertEquals(7L, result.get(0).getHits());
+        assertEquals(0L, result.get(0).getError());
+        verify(topHitsTracker, times(1)).top(any(), any(), eq(5), any());
+    }
+
+    @Test
+    public void testGetTimeSeriesFillsEmptyBuckets() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15, 0);
+        viewsStatsRequest.setStart(start);
+        viewsStatsRequest.setEnd(start.plusHours(3));
+        when(statsRepository.getTimeSeries(viewsStatsRequest, ChronoUnit.HOURS)).thenReturn(List.of(ViewStatsSeries.builder()
+                .app("ewm-main-service")
+                .uri("/uri")
+                .points(List.of(ViewStatsPoint.builder().bucket(start.plusHours(1).withMinute(0)).hits(5L).unique(2L).build()))
+                .build()));
+
+        List<ViewStatsSeries> result = statsService.getTimeSeries(viewsStatsRequest, ChronoUnit.HOURS);
+
+        assertEquals(List.of(0L, 5L, 0L, 0L), result.get(0).getPoints().stream().map(ViewStatsPoint::getHits).toList());
+        assertEquals(start.withMinute(0), result.get(0).getPoints().get(0).getBucket());
+    }
+
+    @Test
+    public void testGetTimeSeriesRejectsTooManyBuckets() {
+        viewsStatsRequest.setEnd(viewsStatsRequest.getStart().plusYears(1));
+
+        assertThrows(BadRequestException.class, () -> statsService.getTimeSeries(viewsStatsRequest, ChronoUnit.MINUTES));
+    }
+
+    @Test
+    public void testChangesCursorRoundTrip() {
+        when(statsRepository.getChanges(0, 500)).thenReturn(new ChangePage(42, true, List.of()));
+        when(statsRepository.getChanges(42, 10000)).thenReturn(new ChangePage(42, false, List.of()));
+
+        StatsChanges first = statsService.getChanges(null, 500);
+        StatsChanges next = statsService.getChanges(first.getCursor(), 1_000_000);
+
+        assertEquals(true, first.getHasMore());
+        assertEquals(first.getCursor(), next.getCursor());
+        assertThrows(BadRequestException.class, () -> statsService.getChanges("not-a-cursor", null));
+        assertThrows(BadRequestException.class, () -> statsService.getChanges(first.getCursor(), 0));
+    }
+
+    @Test
+    public void testGetBatchStatsReportsInvalidQueries() {
+        StatsQuery valid = StatsQuery.builder()
+                .uri("/events/1")
+                .start(LocalDateTime.now().minusDays(1))
+                .end(LocalDateTime.now())
+                .unique(true)
+                .build();
+        StatsQuery reversed = valid.toBuilder().start(valid.getEnd().plusHours(1)).build();
+        StatsQuery blank = valid.toBuilder().uri(" ").build();
+
+        BatchValidationException e = assertThrows(BatchValidationException.class,
+                () -> statsService.getBatchStats(List.of(valid, reversed, valid, blank)));
+
+        assertEquals(List.of(1, 3), e.getErrors().stream().map(BatchItemError::getIndex).toList());
+        verify(statsRepository, never()).getBatchStats(anyList());
+    }
+}
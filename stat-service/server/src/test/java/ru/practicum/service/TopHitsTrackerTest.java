@@ -0,0 +1,84 @@
+package ru.practicum.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.StatRequest;
+import ru.practicum.TopViewStats;
+import ru.practicum.ViewStats;
+import ru.practicum.ViewsStatsRequest;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TopHitsTrackerTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 5, 1, 0, 0, 0);
+
+    private final TopHitsTracker tracker = new TopHitsTracker(true, 200, 24 * 60, 48,
+            Clock.fixed(BASE.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+    private final Random random = new Random(13);
+    private final List<StatRequest> hits = new ArrayList<>();
+
+    @Test
+    public void testTopWithinErrorBounds() {
+        for (int i = 0; i < 200_000; i++) {
+            int rank = (int) Math.min(5000, 1 / Math.pow(random.nextDouble() + 1e-9, 0.8));
+            hits.add(StatRequest.builder()
+                    .app("ewm-main-service")
+                    .uri("/events/" + rank)
+                    .ip("10.0.0.1")
+                    .timestamp(BASE.plusSeconds(random.nextInt(10 * 3600)))
+                    .build());
+        }
+        for (int i = 0; i < hits.size(); i += 1000) {
+            tracker.onHitsSaved(new HitsSavedEvent(hits.subList(i, i + 1000)));
+        }
+        LocalDateTime start = BASE.plusHours(1).plusMinutes(20).plusSeconds(13);
+        LocalDateTime end = BASE.plusHours(8).plusMinutes(5).plusSeconds(2);
+
+        List<TopViewStats> top = tracker.top(start, end, 20, this::exact);
+
+        Map<String, Long> truth = new HashMap<>();
+        exact(ViewsStatsRequest.builder().start(start).end(end).build())
+                .forEach(stats -> truth.put(stats.getUri(), stats.getHits()));
+        assertEquals(20, top.size());
+        for (TopViewStats stats : top) {
+            long actual = truth.getOrDefault(stats.getUri(), 0L);
+            assertTrue(actual <= stats.getHits() && actual >= stats.getHits() - stats.getError(), stats.toString());
+        }
+        List<String> expectedTop = truth.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(10)
+                .map(Map.Entry::getKey)
+                .toList();
+        assertTrue(top.stream().map(TopViewStats::getUri).toList().containsAll(expectedTop));
+    }
+
+    @Test
+    public void testTopNotCoveredBySketches() {
+        assertNull(tracker.top(BASE.minusHours(3), BASE.plusHours(2), 10, this::exact));
+        assertNull(tracker.top(BASE, BASE.plusHours(2), 201, this::exact));
+    }
+
+    private List<ViewStats> exact(ViewsStatsRequest request) {
+        Map<String, Long> counts = new HashMap<>();
+        for (StatRequest hit : hits) {
+            if (!hit.getTimestamp().isBefore(request.getStart()) && !hit.getTimestamp().isAfter(request.getEnd())) {
+                counts.merge(hit.getUri(), 1L, Long::sum);
+            }
+        }
+        return counts.entrySet().stream()
+                .map(e -> ViewStats.builder().app("ewm-main-service").uri(e.getKey()).hits(e.getValue()).build())
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .toList();
+    }
+}
@@ -0,0 +1,46 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CountMinSketchTest {
+
+    @Test
+    public void testEstimateNeverBelowTrueCountAndWithinBound() {
+        CountMinSketch sketch = new CountMinSketch(2048, 4);
+        Random random = new Random(3);
+        long[] counts = new long[10_000];
+        long total = 0;
+        for (int i = 0; i < 200_000; i++) {
+            int item = random.nextInt(100) < 20 ? random.nextInt(10) : random.nextInt(counts.length);
+            counts[item]++;
+            total++;
+            sketch.add("10.0." + (item >> 8) + "." + (item & 0xFF), 1);
+        }
+
+        double bound = Math.E / 2048 * total;
+        int outside = 0;
+        for (int item = 0; item < counts.length; item++) {
+            long estimate = sketch.estimate("10.0." + (item >> 8) + "." + (item & 0xFF));
+            assertTrue(estimate >= counts[item]);
+            if (estimate - counts[item] > bound) {
+                outside++;
+            }
+        }
+        assertTrue(outside <= counts.length * Math.exp(-4));
+    }
+
+    @Test
+    public void testAddReturnsEstimate() {
+        CountMinSketch sketch = new CountMinSketch(64, 3);
+        assertEquals(5, sketch.add("a", 5));
+        assertEquals(7, sketch.add("a", 2));
+        assertEquals(7, sketch.estimate("a"));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(0, 3));
+    }
+}
@@ -0,0 +1,79 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void testEstimateWithinErrorBound() {
+        HyperLogLog sketch = new HyperLogLog(14);
+        int distinct = 100_000;
+        for (int i = 0; i < distinct; i++) {
+            sketch.add("10." + (i >> 16) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF));
+            sketch.add("10." + (i >> 16) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF));
+        }
+
+        assertWithinBound(distinct, sketch.estimate(), 14);
+    }
+
+    @Test
+    public void testSmallCardinalityIsExact() {
+        HyperLogLog sketch = new HyperLogLog(14);
+        for (int i = 0; i < 20; i++) {
+            sketch.add("192.168.0." + i);
+        }
+
+        assertEquals(20, sketch.estimate());
+    }
+
+    @Test
+    public void testMergeEqualsUnion() {
+        HyperLogLog first = new HyperLogLog(12);
+        HyperLogLog second = new HyperLogLog(12);
+        HyperLogLog union = new HyperLogLog(12);
+        for (int i = 0; i < 30_000; i++) {
+            String ip = "ip-" + i;
+            (i % 2 == 0 ? first : second).add(ip);
+            union.add(ip);
+        }
+
+        assertEquals(union.estimate(), first.merge(second).estimate());
+    }
+
+    @Test
+    public void testMergeWithDifferentPrecisionFolds() {
+        HyperLogLog precise = new HyperLogLog(14);
+        HyperLogLog coarse = new HyperLogLog(10);
+        for (int i = 0; i < 50_000; i++) {
+            (i % 2 == 0 ? precise : coarse).add("ip-" + i);
+        }
+
+        HyperLogLog merged = precise.merge(coarse);
+
+        assertEquals(10, merged.getPrecision());
+        assertWithinBound(50_000, merged.estimate(), 10);
+    }
+
+    @Test
+    public void testSerializationRoundTrip() {
+        HyperLogLog sparse = new HyperLogLog(14);
+        sparse.add("127.0.0.1");
+        HyperLogLog dense = new HyperLogLog(14);
+        for (int i = 0; i < 100_000; i++) {
+            dense.add("ip-" + i);
+        }
+
+        assertTrue(sparse.toBytes().length < 16);
+        assertEquals(sparse.estimate(), HyperLogLog.fromBytes(sparse.toBytes()).estimate());
+        assertEquals(dense.estimate(), HyperLogLog.fromBytes(dense.toBytes()).estimate());
+    }
+
+    private void assertWithinBound(long expected, long actual, int precision) {
+        double error = Math.abs(actual - expected) / (double) expected;
+        assertTrue(error < 3 * HyperLogLog.standardError(precision),
+                "Оценка " + actual + " вне границ ошибки для " + expected);
+    }
+}